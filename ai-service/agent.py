@@ -1,10 +1,11 @@
 """健康管理智能体 - 基于 Function Calling 的真正智能体架构"""
-from typing import List, Dict, Optional, Any
+from typing import List, Dict, Optional, Any, AsyncIterator
 import dashscope
 from dashscope import Generation, MultiModalConversation
 from config import settings
 from tools import TOOLS, ToolExecutor
 import json
+import asyncio
 
 # 设置 API Key
 dashscope.api_key = settings.dashscope_api_key
@@ -66,30 +67,34 @@ class HealthAgent:
         user_profile: Optional[Dict] = None,
         medical_records: Optional[List[Dict]] = None,
         history: Optional[List[Dict]] = None,
-        image_url: Optional[str] = None
+        image_url: Optional[str] = None,
+        history_summary: Optional[str] = None,
+        medical_records_ref: Optional[Dict] = None,
+        model_tier: Optional[str] = None
     ) -> str:
-        """处理用户消息 - 智能体主循环"""
+        """处理用户消息 - 智能体主循环（fast 档位用小模型且不带工具，一次调用即返回）"""
         try:
             # 如果有直接传入的图片 URL，直接分析
             if image_url:
                 return await self._analyze_image_direct(message, image_url, user_profile)
             
             # 初始化工具执行器
-            tool_executor = ToolExecutor(user_profile, medical_records)
+            tool_executor = ToolExecutor(user_profile, medical_records, medical_records_ref)
             tool_executor.set_image_analyzer(self._analyze_image_direct)
             
             # 构建消息历史
-            messages = self._build_messages(message, history)
+            messages = self._build_messages(message, history, history_summary)
+            model, tool_args = self._model_and_tools(model_tier)
             
             # 智能体循环（ReAct 模式）
             for iteration in range(self.max_iterations):
-                print(f"\n=== 智能体迭代 {iteration + 1} ===")
+                print(f"\n=== 智能体迭代 {iteration + 1}（{model}）===")
                 
                 # 调用 LLM
                 response = Generation.call(
-                    model=settings.model_name,
+                    model=model,
                     messages=messages,
-                    tools=TOOLS,
+                    **tool_args,
                     result_format='message'
                 )
                 
@@ -139,13 +144,115 @@ class HealthAgent:
             traceback.print_exc()
             return f"抱歉，处理您的请求时出现错误: {str(e)}"
     
-    def _build_messages(self, message: str, history: Optional[List[Dict]] = None) -> List[Dict]:
+    async def chat_stream(
+        self,
+        message: str,
+        user_profile: Optional[Dict] = None,
+        medical_records: Optional[List[Dict]] = None,
+        history: Optional[List[Dict]] = None,
+        history_summary: Optional[str] = None,
+        medical_records_ref: Optional[Dict] = None,
+        model_tier: Optional[str] = None
+    ) -> AsyncIterator[str]:
+        """流式处理用户消息 - 逐段产出回复文本，工具调用在流中累积后执行"""
+        tool_executor = ToolExecutor(user_profile, medical_records, medical_records_ref)
+        tool_executor.set_image_analyzer(self._analyze_image_direct)
+        
+        messages = self._build_messages(message, history, history_summary)
+        model, tool_args = self._model_and_tools(model_tier)
+        
+        for iteration in range(self.max_iterations):
+            print(f"\n=== 智能体流式迭代 {iteration + 1}（{model}）===")
+            
+            responses = Generation.call(
+                model=model,
+                messages=messages,
+                **tool_args,
+                result_format='message',
+                stream=True,
+                incremental_output=True
+            )
+            
+            content_parts = []
+            tool_calls: Dict[int, Dict] = {}
+            
+            while True:
+                # dashscope 的流是同步迭代器，放到线程池中读取，避免阻塞事件循环
+                chunk = await asyncio.to_thread(next, responses, None)
+                if chunk is None:
+                    break
+                
+                if chunk.status_code != 200:
+                    print(f"API 调用失败: {chunk.code} - {chunk.message}")
+                    yield f"抱歉，服务暂时不可用。错误代码: {chunk.code}"
+                    return
+                
+                delta_message = chunk.output.choices[0].message
+                delta = delta_message.get('content')
+                if delta:
+                    content_parts.append(delta)
+                    yield delta
+                
+                for tool_call in delta_message.get('tool_calls') or []:
+                    entry = tool_calls.setdefault(tool_call.get('index', 0), {
+                        "id": "",
+                        "type": "function",
+                        "function": {"name": "", "arguments": ""}
+                    })
+                    if tool_call.get('id'):
+                        entry["id"] = tool_call['id']
+                    function = tool_call.get('function') or {}
+                    if function.get('name'):
+                        entry["function"]["name"] = function['name']
+                    if function.get('arguments'):
+                        entry["function"]["arguments"] += function['arguments']
+            
+            if not tool_calls:
+                return
+            
+            # 执行累积的工具调用，继续下一轮
+            messages.append({
+                "role": "assistant",
+                "content": "".join(content_parts),
+                "tool_calls": list(tool_calls.values())
+            })
+            for tool_call in tool_calls.values():
+                function_name = tool_call['function']['name']
+                function_args = json.loads(tool_call['function']['arguments'] or "{}")
+                print(f"📞 调用工具: {function_name}")
+                tool_result = await tool_executor.execute(function_name, function_args)
+                messages.append({
+                    "role": "tool",
+                    "content": tool_result,
+                    "tool_call_id": tool_call['id']
+                })
+        
+        yield "抱歉，处理您的请求时遇到了复杂情况，请尝试简化您的问题。"
+    
+    @staticmethod
+    def _model_and_tools(model_tier: Optional[str]):
+        """按档位选择模型；fast 档位是后端判定为无需工具的短句，不带工具定义以减少输入和往返"""
+        return settings.model_for_tier(model_tier), ({} if model_tier == "fast" else {"tools": TOOLS})
+    
+    def _build_messages(
+        self,
+        message: str,
+        history: Optional[List[Dict]] = None,
+        history_summary: Optional[str] = None
+    ) -> List[Dict]:
         """构建消息列表"""
         messages = [{"role": "system", "content": self.system_prompt}]
         
-        # 添加历史消息
+        # 更早对话的滚动摘要（由后端增量维护）
+        if history_summary:
+            messages.append({
+                "role": "system",
+                "content": f"以下是本次对话较早内容的摘要，供参考：\n{history_summary}"
+            })
+        
+        # 添加历史消息（窗口大小由后端按 token 预算控制）
         if history:
-            for msg in history[-10:]:  # 最多保留10条历史
+            for msg in history:
                 messages.append({
                     "role": msg["role"],
                     "content": msg["content"]
@@ -160,44 +267,54 @@ class HealthAgent:
         self,
         message: str,
         image_url: str,
-        user_profile: Optional[Dict] = None
+        user_profile: Optional[Dict] = None,
+        model: Optional[str] = None
     ) -> str:
-        """直接分析图片（使用视觉模型）"""
+        """直接分析图片（使用视觉模型），失败时返回提示文本"""
         try:
-            # 构建上下文
-            context = ""
-            if user_profile:
-                context = f"\n\n用户信息：性别={user_profile.get('gender', '未知')}, 年龄={user_profile.get('birthDate', '未知')}"
-            
-            full_message = f"{message}{context}"
-            
-            # 构建多模态消息
-            messages = [
-                {
-                    "role": "user",
-                    "content": [
-                        {"image": image_url},
-                        {"text": full_message}
-                    ]
-                }
-            ]
-            
-            # 调用视觉模型
-            response = MultiModalConversation.call(
-                model='qwen-vl-plus',
-                messages=messages
-            )
-            
-            if response.status_code == 200:
-                return response.output.choices[0].message.content[0]["text"]
-            else:
-                print(f"视觉模型调用失败: {response.code} - {response.message}")
-                return f"抱歉，图片分析服务暂时不可用。错误代码: {response.code}"
-                
+            return await self.call_vision_model(message, image_url, user_profile, model)
         except Exception as e:
             print(f"图片分析出错: {e}")
             return f"抱歉，图片分析时出现错误: {str(e)}"
     
+    async def call_vision_model(
+        self,
+        message: str,
+        image_url: str,
+        user_profile: Optional[Dict] = None,
+        model: Optional[str] = None
+    ) -> str:
+        """调用视觉模型分析图片，失败时抛出异常（调用方据此决定是否缓存结果）"""
+        # 构建上下文
+        context = ""
+        if user_profile:
+            context = f"\n\n用户信息：性别={user_profile.get('gender', '未知')}, 年龄={user_profile.get('birthDate', '未知')}"
+        
+        full_message = f"{message}{context}"
+        
+        # 构建多模态消息
+        messages = [
+            {
+                "role": "user",
+                "content": [
+                    {"image": image_url},
+                    {"text": full_message}
+                ]
+            }
+        ]
+        
+        # 调用视觉模型
+        response = MultiModalConversation.call(
+            model=model or settings.vision_model_name,
+            messages=messages
+        )
+        
+        if response.status_code == 200:
+            return response.output.choices[0].message.content[0]["text"]
+        
+        print(f"视觉模型调用失败: {response.code} - {response.message}")
+        raise RuntimeError(f"图片分析服务暂时不可用。错误代码: {response.code}")
+    
     async def analyze_image(self, image_url: str, user_profile: Optional[Dict] = None) -> str:
         """分析医疗图片（公开方法）"""
         prompt = """请仔细分析这张医疗相关的图片，提供以下分析：
@@ -0,0 +1,43 @@
+"""后端内部工具接口客户端 - 智能体按需查询病历"""
+from typing import List, Dict, Optional, Any
+import httpx
+from config import settings
+
+TOOL_TOKEN_HEADER = "X-Tool-Token"
+
+# 复用连接池
+_client = httpx.AsyncClient(base_url=settings.backend_url, timeout=settings.backend_timeout)
+
+
+class BackendClient:
+    """使用对话时签发的工具令牌访问后端 /api/internal/tools 接口"""
+    
+    def __init__(self, tool_token: str):
+        self.headers = {TOOL_TOKEN_HEADER: tool_token}
+    
+    async def list_records(self, record_type: Optional[str] = None, limit: Optional[int] = None) -> List[Dict]:
+        """病历列表（按创建时间倒序）"""
+        params = {}
+        if record_type:
+            params["recordType"] = record_type
+        if limit:
+            params["limit"] = limit
+        return await self._get("/api/internal/tools/records", params) or []
+    
+    async def get_record(self, record_id: int) -> Optional[Dict]:
+        """单个病历（含全部图片）"""
+        return await self._get(f"/api/internal/tools/records/{record_id}")
+    
+    async def search_records(self, keyword: Optional[str] = None, hospital: Optional[str] = None,
+                             record_type: Optional[str] = None, year: Optional[str] = None) -> List[Dict]:
+        """搜索病历"""
+        params = {"keyword": keyword, "hospital": hospital, "recordType": record_type, "year": year}
+        params = {k: v for k, v in params.items() if v}
+        return await self._get("/api/internal/tools/records/search", params) or []
+    
+    async def _get(self, path: str, params: Optional[Dict] = None) -> Any:
+        response = await _client.get(path, params=params, headers=self.headers)
+        body = response.json()
+        if response.status_code != 200 or not body.get("success"):
+            raise RuntimeError(body.get("message") or f"后端返回状态码 {response.status_code}")
+        return body.get("data")
@@ -11,9 +11,15 @@ class Settings(BaseSettings):
     host: str = os.getenv("HOST", "0.0.0.0")
     port: int = int(os.getenv("PORT", "8001"))
     
-    # 模型配置
+    # 后端内部工具接口（智能体按需查询病历）
+    backend_url: str = os.getenv("BACKEND_URL", "http://localhost:8081")
+    backend_timeout: float = float(os.getenv("BACKEND_TIMEOUT", "10"))
+    
+    # 模型配置（对话按后端传来的 modelTier 分级：fast / standard / large，standard 即 MODEL_NAME）
     model_name: str = os.getenv("MODEL_NAME", "qwen-plus")
-    vision_model_name: str = "qwen-vl-plus"
+    fast_model_name: str = os.getenv("MODEL_NAME_FAST", "qwen-turbo")
+    large_model_name: str = os.getenv("MODEL_NAME_LARGE", "qwen-max")
+    vision_model_name: str = os.getenv("VISION_MODEL_NAME", "qwen-vl-plus")
     
     # 温度参数
     temperature: float = 0.7
@@ -23,4 +29,12 @@ class Settings(BaseSettings):
         env_file = ".env"
         case_sensitive = False
 
+    def model_for_tier(self, tier: str = None) -> str:
+        """模型档位 -> 模型名，未知或未传档位时用 MODEL_NAME"""
+        if tier == "fast":
+            return self.fast_model_name
+        if tier == "large":
+            return self.large_model_name
+        return self.model_name
+
 settings = Settings()
@@ -1,12 +1,15 @@
 """AI 服务主入口 - 基于 Function Calling 的智能体架构"""
-from fastapi import FastAPI, HTTPException, File, UploadFile, Form
+from fastapi import FastAPI, HTTPException, File, UploadFile, Form, Depends, Request
 from fastapi.middleware.cors import CORSMiddleware
+from fastapi.responses import StreamingResponse
 from typing import Optional, List, Dict
 import uvicorn
 import base64
+import json
 
 from config import settings
 from agent import health_agent
+from protocol import request_body, respond
 
 app = FastAPI(
     title="健康管理 AI 智能体",
@@ -52,12 +55,14 @@ async def health_check():
         "status": "healthy",
         "service": "health-ai-agent",
         "version": "2.0.0",
-        "model": settings.model_name
+        "model": settings.model_name,
+        "fast_model": settings.fast_model_name,
+        "large_model": settings.large_model_name
     }
 
 
 @app.post("/api/chat")
-async def chat(request: dict):
+async def chat(http_request: Request, request: dict = Depends(request_body)):
     """
     AI 智能体对话接口
     
@@ -71,6 +76,7 @@ async def chat(request: dict):
         message = request.get("message", "")
         user_profile = request.get("userProfile")
         medical_records = request.get("medicalRecords")
+        medical_records_ref = request.get("medicalRecordsRef")  # 病历引用：数量 + 工具令牌，按需查询
         history = request.get("history")
         image_url = request.get("imageUrl")  # 可选的图片 URL
         
@@ -79,7 +85,8 @@ async def chat(request: dict):
         
         print(f"\n{'='*50}")
         print(f"📨 收到用户消息: {message}")
-        print(f"📋 病历记录数: {len(medical_records) if medical_records else 0}")
+        record_count = len(medical_records) if medical_records else (medical_records_ref or {}).get("count", 0)
+        print(f"📋 病历记录数: {record_count}")
         print(f"👤 用户档案: {'有' if user_profile else '无'}")
         print(f"{'='*50}")
         
@@ -88,19 +95,58 @@ async def chat(request: dict):
             user_profile=user_profile,
             medical_records=medical_records,
             history=history,
-            image_url=image_url
+            image_url=image_url,
+            history_summary=request.get("historySummary"),
+            medical_records_ref=medical_records_ref,
+            model_tier=request.get("modelTier")
         )
         
-        return {"response": response, "success": True}
+        return respond(http_request, {"response": response, "success": True,
+                                      "model": settings.model_for_tier(request.get("modelTier"))})
         
     except Exception as e:
         print(f"智能体处理错误: {e}")
         import traceback
         traceback.print_exc()
-        return {
+        return respond(http_request, {
             "response": f"抱歉，处理您的请求时出现错误: {str(e)}",
             "success": False
-        }
+        })
+
+
+@app.post("/api/chat/stream")
+async def chat_stream(request: dict = Depends(request_body)):
+    """
+    AI 智能体流式对话接口（SSE）
+    
+    事件格式：data: {"delta": "..."}，出错时 data: {"error": "..."}，结束时 data: [DONE]
+    """
+    message = request.get("message", "")
+    if not message or not message.strip():
+        raise HTTPException(status_code=400, detail="消息内容不能为空")
+    
+    print(f"\n{'='*50}")
+    print(f"📨 收到用户消息(流式): {message}")
+    print(f"{'='*50}")
+    
+    async def event_stream():
+        try:
+            async for delta in health_agent.chat_stream(
+                message=message,
+                user_profile=request.get("userProfile"),
+                medical_records=request.get("medicalRecords"),
+                history=request.get("history"),
+                history_summary=request.get("historySummary"),
+                medical_records_ref=request.get("medicalRecordsRef"),
+                model_tier=request.get("modelTier")
+            ):
+                yield f"data: {json.dumps({'delta': delta}, ensure_ascii=False)}\n\n"
+        except Exception as e:
+            print(f"智能体流式处理错误: {e}")
+            yield f"data: {json.dumps({'error': str(e)}, ensure_ascii=False)}\n\n"
+        yield "data: [DONE]\n\n"
+    
+    return StreamingResponse(event_stream(), media_type="text/event-stream")
 
 
 @app.post("/api/analyze-image")
@@ -136,7 +182,7 @@ async def analyze_image(
 
 
 @app.post("/api/analyze-image-url")
-async def analyze_image_url(request: dict):
+async def analyze_image_url(http_request: Request, request: dict = Depends(request_body)):
     """
     通过 URL 分析图片
     """
@@ -144,20 +190,21 @@ async def analyze_image_url(request: dict):
         image_url = request.get("imageUrl")
         message = request.get("message", "请分析这张医疗图片")
         user_profile = request.get("userProfile")
+        model = request.get("model") or settings.vision_model_name  # 后端按模型区分分析结果缓存
         
         if not image_url:
             raise HTTPException(status_code=400, detail="需要提供图片 URL")
         
-        response = await health_agent._chat_with_image(message, image_url, user_profile, None)
+        response = await health_agent.call_vision_model(message, image_url, user_profile, model)
         
-        return {"response": response, "success": True}
+        return respond(http_request, {"response": response, "success": True, "model": model})
         
     except Exception as e:
         print(f"图片分析错误: {e}")
-        return {
+        return respond(http_request, {
             "response": f"抱歉，图片分析时出现错误: {str(e)}",
             "success": False
-        }
+        })
 
 
 @app.post("/api/analyze")
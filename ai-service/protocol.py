@@ -0,0 +1,34 @@
+"""后端请求协议 - 请求体按 Content-Type 解码（JSON / CBOR），同步响应按 Accept 编码
+
+后端配置 ai.gateway.encoding=cbor 时以 application/cbor 发送请求；未安装 cbor2 时返回 415，后端自动退回 JSON。
+"""
+from fastapi import HTTPException, Request
+from fastapi.responses import JSONResponse, Response
+
+try:
+    import cbor2
+except ImportError:  # 可选依赖
+    cbor2 = None
+
+CBOR = "application/cbor"
+
+
+async def request_body(request: Request) -> dict:
+    """FastAPI 依赖：解码请求体"""
+    content_type = request.headers.get("content-type", "")
+    if content_type.startswith(CBOR):
+        if cbor2 is None:
+            raise HTTPException(status_code=415, detail="未安装 cbor2，仅支持 application/json")
+        body = cbor2.loads(await request.body())
+    else:
+        body = await request.json()
+    if not isinstance(body, dict):
+        raise HTTPException(status_code=400, detail="请求体必须是对象")
+    return body
+
+
+def respond(request: Request, payload: dict) -> Response:
+    """客户端接受 CBOR 时以 CBOR 返回，否则返回 JSON"""
+    if cbor2 is not None and CBOR in request.headers.get("accept", ""):
+        return Response(content=cbor2.dumps(payload), media_type=CBOR)
+    return JSONResponse(content=payload)
@@ -0,0 +1,114 @@
+"""本地 AI 替身服务 - 不调用大模型，按固定节奏返回/流式输出 token，用于离线联调和压测
+
+用法：
+    python stub_server.py --port 8001 --latency-ms 200 --tokens 80 --token-delay-ms 30
+
+模拟模型分级时用 --fast-latency-ms / --large-latency-ms 为 fast / large 档位（请求体 modelTier）设置不同的首 token 延迟。
+模拟多副本时可在不同端口各启动一个，并用 --fail-rate / --latency-jitter-ms 制造故障副本和慢副本；
+/health 返回本副本已处理的请求数（served），用于观察负载分布。
+
+与真实 AI 服务接口保持一致：/health、/api/chat、/api/chat/stream、/api/analyze-image-url
+"""
+import argparse
+import asyncio
+import json
+import os
+import random
+
+import uvicorn
+from fastapi import Depends, FastAPI, Request
+from fastapi.responses import JSONResponse, StreamingResponse
+
+from protocol import request_body, respond
+
+app = FastAPI(title="健康管理 AI 替身服务", version="stub")
+
+# 可通过命令行参数或环境变量调整
+config = {
+    "latency_ms": int(os.getenv("STUB_LATENCY_MS", "200")),        # 首个 token / 同步响应前的等待
+    "tokens": int(os.getenv("STUB_TOKENS", "80")),                 # 每个回复的 token 数
+    "token_delay_ms": int(os.getenv("STUB_TOKEN_DELAY_MS", "30")),  # token 之间的间隔
+    "latency_jitter_ms": int(os.getenv("STUB_LATENCY_JITTER_MS", "0")),  # 额外的随机延迟上限
+    "fail_rate": float(os.getenv("STUB_FAIL_RATE", "0")),           # 返回 503 的比例（含健康检查）
+    "fast_latency_ms": int(os.getenv("STUB_FAST_LATENCY_MS", "-1")),    # fast 档位的等待，-1 表示同 latency_ms
+    "large_latency_ms": int(os.getenv("STUB_LARGE_LATENCY_MS", "-1")),  # large 档位的等待，-1 表示同 latency_ms
+}
+
+served = {"count": 0}
+
+SAMPLE_TOKENS = ["根据", "您的", "描述", "，", "建议", "保持", "规律", "作息", "，", "适量", "运动", "。"]
+
+
+def _tokens():
+    return [SAMPLE_TOKENS[i % len(SAMPLE_TOKENS)] for i in range(config["tokens"])]
+
+
+def _latency_ms(tier: str = None) -> int:
+    base = config.get(f"{tier}_latency_ms", -1) if tier in ("fast", "large") else -1
+    if base < 0:
+        base = config["latency_ms"]
+    return base + random.randint(0, config["latency_jitter_ms"])
+
+
+async def _full_reply(tier: str = None) -> str:
+    await asyncio.sleep((_latency_ms(tier) + config["tokens"] * config["token_delay_ms"]) / 1000)
+    return "".join(_tokens())
+
+
+@app.middleware("http")
+async def inject_failures(request: Request, call_next):
+    if random.random() < config["fail_rate"]:
+        return JSONResponse({"detail": "stub failure"}, status_code=503)
+    if request.url.path != "/health":
+        served["count"] += 1
+    return await call_next(request)
+
+
+@app.get("/health")
+async def health_check():
+    return {"status": "healthy", "service": "health-ai-stub", "version": "stub", "model": "stub",
+            "served": served["count"]}
+
+
+@app.post("/api/chat")
+async def chat(http_request: Request, request: dict = Depends(request_body)):
+    tier = request.get("modelTier")
+    return respond(http_request, {"response": await _full_reply(tier), "success": True, "model": f"stub-{tier}"})
+
+
+@app.post("/api/chat/stream")
+async def chat_stream(request: dict = Depends(request_body)):
+    async def event_stream():
+        await asyncio.sleep(_latency_ms(request.get("modelTier")) / 1000)
+        for token in _tokens():
+            yield f"data: {json.dumps({'delta': token}, ensure_ascii=False)}\n\n"
+            await asyncio.sleep(config["token_delay_ms"] / 1000)
+        yield "data: [DONE]\n\n"
+
+    return StreamingResponse(event_stream(), media_type="text/event-stream")
+
+
+@app.post("/api/analyze-image-url")
+async def analyze_image_url(http_request: Request, request: dict = Depends(request_body)):
+    return respond(http_request, {"response": "（替身服务）图片分析结果：" + await _full_reply(), "success": True,
+                                  "model": request.get("model", "stub")})
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="AI 替身服务")
+    parser.add_argument("--host", default="0.0.0.0")
+    parser.add_argument("--port", type=int, default=8001)
+    parser.add_argument("--latency-ms", type=int, default=config["latency_ms"])
+    parser.add_argument("--tokens", type=int, default=config["tokens"])
+    parser.add_argument("--token-delay-ms", type=int, default=config["token_delay_ms"])
+    parser.add_argument("--latency-jitter-ms", type=int, default=config["latency_jitter_ms"])
+    parser.add_argument("--fail-rate", type=float, default=config["fail_rate"])
+    parser.add_argument("--fast-latency-ms", type=int, default=config["fast_latency_ms"])
+    parser.add_argument("--large-latency-ms", type=int, default=config["large_latency_ms"])
+    args = parser.parse_args()
+
+    config.update(latency_ms=args.latency_ms, tokens=args.tokens, token_delay_ms=args.token_delay_ms,
+                  latency_jitter_ms=args.latency_jitter_ms, fail_rate=args.fail_rate,
+                  fast_latency_ms=args.fast_latency_ms, large_latency_ms=args.large_latency_ms)
+    print(f"🧪 AI 替身服务启动: http://{args.host}:{args.port} {config}")
+    uvicorn.run(app, host=args.host, port=args.port, log_level="warning")
@@ -1,5 +1,6 @@
 """智能体工具定义"""
 from typing import List, Dict, Optional, Any
+from backend_client import BackendClient
 
 # 工具定义（符合 OpenAI Function Calling 格式）
 TOOLS = [
@@ -377,13 +378,47 @@ TOOLS = [
 ]
 
 
+# 需要完整病历列表的工具（首次调用时从后端加载一次）
+RECORD_LIST_TOOLS = {
+    "get_medical_records", "analyze_all_images", "get_medical_record_stats",
+    "compare_medical_records", "generate_health_summary", "suggest_followup",
+}
+
+
 class ToolExecutor:
-    """工具执行器"""
+    """工具执行器
+    
+    病历默认不随对话请求下发，只带引用 medicalRecordsRef（数量 + 工具令牌），
+    工具真正需要病历时才通过后端内部工具接口查询；兼容直接传入 medical_records 的旧调用方式。
+    """
     
-    def __init__(self, user_profile: Optional[Dict] = None, medical_records: Optional[List[Dict]] = None):
+    def __init__(self, user_profile: Optional[Dict] = None, medical_records: Optional[List[Dict]] = None,
+                 records_ref: Optional[Dict] = None):
         self.user_profile = user_profile or {}
-        self.medical_records = medical_records or []
         self.image_analyzer = None  # 会在运行时设置
+        
+        records_ref = records_ref or {}
+        self.records_client = BackendClient(records_ref["toolToken"]) if records_ref.get("toolToken") else None
+        self.record_count = len(medical_records) if medical_records is not None else records_ref.get("count", 0)
+        self.medical_records = medical_records or []
+        self._records_loaded = medical_records is not None or self.record_count == 0 or self.records_client is None
+    
+    async def _ensure_records(self):
+        """按需加载完整病历列表（每次对话最多一次）"""
+        if self._records_loaded:
+            return
+        self.medical_records = await self.records_client.list_records()
+        self.record_count = len(self.medical_records)
+        self._records_loaded = True
+    
+    async def _find_record(self, record_id: int) -> Optional[Dict]:
+        """按 ID 获取单个病历"""
+        if self._records_loaded:
+            return next((r for r in self.medical_records if r.get('id') == record_id), None)
+        try:
+            return await self.records_client.get_record(record_id)
+        except Exception:
+            return None
     
     def set_image_analyzer(self, analyzer):
         """设置图片分析器"""
@@ -392,6 +427,9 @@ class ToolExecutor:
     async def execute(self, tool_name: str, arguments: Dict[str, Any]) -> str:
         """执行工具并返回结果"""
         try:
+            if tool_name in RECORD_LIST_TOOLS:
+                await self._ensure_records()
+            
             if tool_name == "get_medical_records":
                 return self._get_medical_records(arguments.get("record_type"))
             elif tool_name == "analyze_medical_image":
@@ -455,7 +493,7 @@ class ToolExecutor:
             elif tool_name == "suggest_followup":
                 return self._suggest_followup(arguments.get("record_type"))
             elif tool_name == "search_medical_records":
-                return self._search_medical_records(
+                return await self._search_medical_records(
                     arguments.get("keyword"),
                     arguments.get("hospital"),
                     arguments.get("record_type"),
@@ -508,11 +546,7 @@ class ToolExecutor:
             return "图片分析服务未初始化"
         
         # 查找对应的病历
-        record = None
-        for r in self.medical_records:
-            if r.get('id') == record_id:
-                record = r
-                break
+        record = await self._find_record(record_id)
         
         if not record:
             return f"未找到 ID 为 {record_id} 的病历记录"
@@ -521,6 +555,10 @@ class ToolExecutor:
         if not image_url:
             return f"病历「{record.get('title', '未命名')}」没有上传图片"
         
+        # 没有指定分析重点时直接使用上传后的预分析结果
+        if not analysis_focus and record.get('analysis'):
+            return f"🔍 **{record.get('title', '病历')}** 分析结果：\n\n{record['analysis']}"
+        
         # 调用图片分析
         prompt = f"请详细分析这张医疗图片（{record.get('recordType', '检查报告')}）"
         if analysis_focus:
@@ -535,17 +573,24 @@ class ToolExecutor:
         if not self.image_analyzer:
             return "图片分析服务未初始化"
         
-        if not self.medical_records:
+        if not self.record_count:
             return "📋 您目前没有病历记录。请先在「病历管理」中上传检查报告、化验单等。"
         
         # 根据位置获取病历
         position_map = {"latest": 0, "second": 1, "third": 2}
         index = position_map.get(position, 0)
         
-        if index >= len(self.medical_records):
-            return f"📋 您只有 {len(self.medical_records)} 份病历，无法查看第 {index + 1} 份。"
+        if index >= self.record_count:
+            return f"📋 您只有 {self.record_count} 份病历，无法查看第 {index + 1} 份。"
         
-        record = self.medical_records[index]
+        if self._records_loaded:
+            record = self.medical_records[index]
+        else:
+            # 只取到目标位置为止的病历，再单独获取含全部图片的详情
+            latest = await self.records_client.list_records(limit=index + 1)
+            if index >= len(latest):
+                return f"📋 您只有 {len(latest)} 份病历，无法查看第 {index + 1} 份。"
+            record = await self._find_record(latest[index]['id']) or latest[index]
         title = record.get('title', '未命名')
         record_type = record.get('recordType', '病历')
         record_date = record.get('recordDate', '')
@@ -561,7 +606,10 @@ class ToolExecutor:
             
             for i, img in enumerate(images[:5], 1):  # 最多分析5张
                 img_url = img.get('filePath')
-                if img_url:
+                if img.get('analysis'):
+                    # 上传后已预分析
+                    results.append(f"### 图片 {i}\n{img['analysis']}\n")
+                elif img_url:
                     try:
                         prompt = f"请详细分析这张{record_type}图片，指出所有关键信息和指标。"
                         analysis = await self.image_analyzer(prompt, img_url, None)
@@ -570,6 +618,9 @@ class ToolExecutor:
                         results.append(f"### 图片 {i}\n分析失败: {str(e)}\n")
             
             return "\n".join(results)
+        elif image_url and record.get('analysis'):
+            # 单张图片，上传后已预分析
+            return f"📋 **{title}** ({record_type})" + (f" - {record_date}" if record_date else "") + f"\n\n{record['analysis']}"
         elif image_url:
             # 单张图片
             try:
@@ -766,8 +817,8 @@ class ToolExecutor:
         
         if advice_type in ['followup', 'general']:
             advice.append("### 🏥 复查建议")
-            if self.medical_records:
-                advice.append(f"- 您有 {len(self.medical_records)} 份病历记录")
+            if self.record_count:
+                advice.append(f"- 您有 {self.record_count} 份病历记录")
                 advice.append("- 建议每年进行一次全面体检")
                 advice.append("- 异常指标应按医嘱定期复查")
             else:
@@ -1419,13 +1470,17 @@ class ToolExecutor:
         
         return "\n".join(result)
     
-    def _search_medical_records(self, keyword: str = None, hospital: str = None,
-                                record_type: str = None, year: str = None) -> str:
+    async def _search_medical_records(self, keyword: str = None, hospital: str = None,
+                                      record_type: str = None, year: str = None) -> str:
         """搜索病历记录"""
-        if not self.medical_records:
+        if not self.record_count:
             return "📋 您目前没有病历记录。"
         
-        results = self.medical_records.copy()
+        if self._records_loaded:
+            results = self.medical_records.copy()
+        else:
+            # 由后端按条件查询，下面的本地筛选只是对同一条件的再次确认
+            results = await self.records_client.search_records(keyword, hospital, record_type, year)
         
         # 应用筛选条件
         if keyword:
@@ -0,0 +1,230 @@
+package com.health.client;
+
+import com.health.config.AiAdmissionProperties;
+import com.health.exception.AiOverloadedException;
+import com.health.exception.AiServiceException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * AI 调用准入调度器 - 位于 AI 网关之前，按用户公平分配模型并发
+ *
+ * 同时进行的调用不超过 max-concurrent；超出的请求按用户分别排队，用差额轮询（DRR）出队：
+ * 每轮给排在队首的用户增加 quantum 额度，额度足够支付其队首请求的代价（按操作区分）时放行。
+ * 因此一个用户连续提交大量图片分析只会占用自己的队列，不会挤占其他用户的轮次。
+ * 全局或单用户队列已满、排队超时时抛出 AiOverloadedException（HTTP 429，附带 Retry-After 估计）。
+ */
+@Component
+@Slf4j
+public class AiAdmissionScheduler {
+    
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+    private static final double HOLD_TIME_SMOOTHING = 0.2;
+    
+    private final AiAdmissionProperties properties;
+    private final MeterRegistry meterRegistry;
+    
+    // 以下状态均由 this 锁保护
+    private final Map<Long, UserQueue> queues = new HashMap<>();
+    private final Deque<UserQueue> activeUsers = new ArrayDeque<>();
+    private int running;
+    private int queued;
+    private double averageHoldNanos;
+    
+    public AiAdmissionScheduler(AiAdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("ai.admission.queue", this, scheduler -> scheduler.snapshot(false))
+                .description("排队等待 AI 调用的请求数")
+                .register(meterRegistry);
+        Gauge.builder("ai.admission.running", this, scheduler -> scheduler.snapshot(true))
+                .description("正在进行的 AI 调用数")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 获取调用许可，必要时排队等待；调用结束后必须关闭许可
+     */
+    public Permit acquire(Long userId, AiOperation operation) {
+        if (!properties.isEnabled()) {
+            return new Permit(System.nanoTime());
+        }
+        long start = System.nanoTime();
+        Waiter waiter;
+        synchronized (this) {
+            // 没有人排队时直接放行，避免空闲时的调度开销
+            if (queued == 0 && running < properties.getMaxConcurrent()) {
+                running++;
+                recordWait(operation, "immediate", 0);
+                return new Permit(start);
+            }
+            UserQueue queue = queues.get(userId);
+            if (queued >= properties.getMaxQueueSize()) {
+                throw reject(operation, "queue_full", "AI 服务繁忙，请稍后再试");
+            }
+            if (queue != null && queue.waiters.size() >= properties.getMaxQueuePerUser()) {
+                throw reject(operation, "user_queue_full", "您的 AI 请求过多，请等待当前请求完成后再试");
+            }
+            if (queue == null) {
+                queue = new UserQueue(userId);
+                queues.put(userId, queue);
+                activeUsers.addLast(queue);
+            }
+            waiter = new Waiter(properties.costOf(operation.getTag()));
+            queue.waiters.addLast(waiter);
+            queued++;
+            dispatch();
+        }
+        
+        try {
+            waiter.granted.get(properties.getMaxQueueTime().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            synchronized (this) {
+                if (!waiter.granted.isDone() && cancel(userId, waiter)) {
+                    recordWait(operation, "timeout", System.nanoTime() - start);
+                    throw reject(operation, "timeout", "AI 服务繁忙，排队超时，请稍后再试");
+                }
+            }
+            // 超时的同时刚好被放行，按正常获取处理
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                if (!waiter.granted.isDone() && cancel(userId, waiter)) {
+                    throw new AiServiceException("AI 调用排队被中断", e);
+                }
+            }
+            // 中断的同时已被放行：保留中断标记，照常返回许可由调用方归还
+        } catch (ExecutionException e) {
+            throw new AiServiceException("AI 调用排队失败", e.getCause());
+        }
+        long now = System.nanoTime();
+        recordWait(operation, "queued", now - start);
+        return new Permit(now);
+    }
+    
+    /**
+     * 差额轮询：依次给排队用户增加额度，额度足够时放行其队首请求，直到并发占满或队列清空
+     */
+    private void dispatch() {
+        while (running < properties.getMaxConcurrent() && !activeUsers.isEmpty()) {
+            UserQueue queue = activeUsers.pollFirst();
+            queue.deficit += properties.getQuantum();
+            while (!queue.waiters.isEmpty()
+                    && queue.waiters.peekFirst().cost <= queue.deficit
+                    && running < properties.getMaxConcurrent()) {
+                Waiter waiter = queue.waiters.pollFirst();
+                queue.deficit -= waiter.cost;
+                queued--;
+                running++;
+                waiter.granted.complete(null);
+            }
+            if (queue.waiters.isEmpty()) {
+                // 队列清空的用户不保留额度，避免空闲后突发占用
+                queues.remove(queue.userId);
+            } else {
+                activeUsers.addLast(queue);
+            }
+        }
+    }
+    
+    private boolean cancel(Long userId, Waiter waiter) {
+        UserQueue queue = queues.get(userId);
+        if (queue == null || !queue.waiters.remove(waiter)) {
+            return false;
+        }
+        queued--;
+        if (queue.waiters.isEmpty()) {
+            queues.remove(userId);
+            activeUsers.remove(queue);
+        }
+        return true;
+    }
+    
+    private synchronized void release(long heldNanos) {
+        running--;
+        averageHoldNanos = averageHoldNanos == 0
+                ? heldNanos
+                : averageHoldNanos + HOLD_TIME_SMOOTHING * (heldNanos - averageHoldNanos);
+        dispatch();
+    }
+    
+    /**
+     * 按平均占用时间和当前排队长度估算多久后可重试
+     */
+    private long estimateRetryAfterSeconds() {
+        double waves = (double) queued / properties.getMaxConcurrent() + 1;
+        long seconds = (long) Math.ceil(averageHoldNanos * waves / TimeUnit.SECONDS.toNanos(1));
+        return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+    }
+    
+    private AiOverloadedException reject(AiOperation operation, String reason, String message) {
+        meterRegistry.counter("ai.admission.rejected", "operation", operation.getTag(), "reason", reason).increment();
+        log.warn("AI 调用准入被拒绝 [{}]: {}（排队 {}，进行中 {}）", operation.getTag(), reason, queued, running);
+        return new AiOverloadedException(message, estimateRetryAfterSeconds());
+    }
+    
+    private void recordWait(AiOperation operation, String outcome, long waitNanos) {
+        Timer.builder("ai.admission.wait")
+                .description("AI 调用排队等待时间")
+                .tag("operation", operation.getTag())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private synchronized int snapshot(boolean runningCount) {
+        return runningCount ? running : queued;
+    }
+    
+    /**
+     * 调用许可，关闭时归还（可重复关闭）
+     */
+    public class Permit implements AutoCloseable {
+        
+        private final long acquiredAt;
+        private final AtomicBoolean released = new AtomicBoolean();
+        
+        private Permit(long acquiredAt) {
+            this.acquiredAt = acquiredAt;
+        }
+        
+        @Override
+        public void close() {
+            if (properties.isEnabled() && released.compareAndSet(false, true)) {
+                release(System.nanoTime() - acquiredAt);
+            }
+        }
+    }
+    
+    private static class UserQueue {
+        private final Long userId;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private int deficit;
+        
+        UserQueue(Long userId) {
+            this.userId = userId;
+        }
+    }
+    
+    private static class Waiter {
+        private final int cost;
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+        
+        Waiter(int cost) {
+            this.cost = cost;
+        }
+    }
+}
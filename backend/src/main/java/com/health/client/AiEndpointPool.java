@@ -0,0 +1,200 @@
+package com.health.client;
+
+import com.health.config.AiGatewayProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI 服务副本池 - 客户端负载均衡
+ *
+ * ai.service.urls 配置多个副本（逗号分隔，未配置时使用 ai.service.url），每次调用选择在途请求最少的可用副本。
+ * 副本不可用的判断有两种：
+ * - 主动：定时 GET /health，失败即标记为不健康，恢复后重新加入
+ * - 被动：调用连续失败 eject-after-failures 次后摘除 ejection-time
+ * 所有副本都不可用时仍选在途最少的一个，交给熔断器决定是否快速失败
+ */
+@Component
+@Slf4j
+public class AiEndpointPool {
+
+    private final HttpClient httpClient;
+    private final AiGatewayProperties properties;
+    private final List<Endpoint> endpoints;
+    private ScheduledExecutorService healthChecker;
+
+    public AiEndpointPool(HttpClient aiHttpClient, AiGatewayProperties properties, MeterRegistry meterRegistry,
+                          @Value("${ai.service.urls:}") List<String> urls,
+                          @Value("${ai.service.url:http://localhost:8001}") String url) {
+        this.httpClient = aiHttpClient;
+        this.properties = properties;
+        List<String> configured = urls.stream()
+                .map(String::trim)
+                .filter(u -> !u.isEmpty())
+                .map(u -> u.endsWith("/") ? u.substring(0, u.length() - 1) : u)
+                .distinct()
+                .toList();
+        this.endpoints = (configured.isEmpty() ? List.of(url) : configured).stream()
+                .map(Endpoint::new)
+                .toList();
+        for (Endpoint endpoint : endpoints) {
+            Gauge.builder("ai.gateway.endpoint.outstanding", endpoint, e -> e.outstanding.get())
+                    .description("副本的在途请求数")
+                    .tag("endpoint", endpoint.url)
+                    .register(meterRegistry);
+            Gauge.builder("ai.gateway.endpoint.available", endpoint, e -> e.isAvailable(System.nanoTime()) ? 1 : 0)
+                    .description("副本是否可用（健康且未被摘除）")
+                    .tag("endpoint", endpoint.url)
+                    .register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        log.info("AI 服务副本: {}", endpoints.stream().map(Endpoint::getUrl).toList());
+        if (endpoints.size() < 2) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-endpoint-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getHealthCheckInterval().toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    public int size() {
+        return endpoints.size();
+    }
+
+    /**
+     * 选择在途请求最少的可用副本（不占用名额，每次发起 HTTP 交换时再 acquire）
+     *
+     * @param exclude 不参与选择的副本（对冲时排除首发副本），为 null 时不排除
+     * @return 选中的副本；排除后没有其他可用副本时返回 null（仅 exclude 非空时）
+     */
+    public Endpoint select(Endpoint exclude) {
+        long now = System.nanoTime();
+        Endpoint chosen = leastOutstanding(exclude, now, true);
+        if (chosen == null && exclude == null) {
+            chosen = leastOutstanding(null, now, false);
+        }
+        return chosen;
+    }
+
+    /**
+     * 为一次 HTTP 交换占用副本的一个在途名额；交换结束（包括被取消）后必须 release
+     */
+    public void acquire(Endpoint endpoint) {
+        endpoint.outstanding.incrementAndGet();
+    }
+
+    /**
+     * 归还在途名额并记录结果；调用方取消不计为失败
+     */
+    public void release(Endpoint endpoint, Throwable failure) {
+        endpoint.outstanding.decrementAndGet();
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause == null) {
+            endpoint.consecutiveFailures.set(0);
+            return;
+        }
+        if (cause instanceof CancellationException) {
+            return;
+        }
+        int failures = endpoint.consecutiveFailures.incrementAndGet();
+        if (failures >= properties.getEjectAfterFailures() && endpoints.size() > 1) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.ejectedUntil = System.nanoTime() + properties.getEjectionTime().toNanos();
+            endpoint.ejected = true;
+            log.warn("AI 服务副本 {} 连续失败 {} 次，摘除 {}s", endpoint.url, failures,
+                    properties.getEjectionTime().toSeconds());
+        }
+    }
+
+    /**
+     * 从随机位置开始扫描，在途数相同的副本之间随机分摊
+     */
+    private Endpoint leastOutstanding(Endpoint exclude, long now, boolean availableOnly) {
+        int size = endpoints.size();
+        int offset = size > 1 ? ThreadLocalRandom.current().nextInt(size) : 0;
+        Endpoint best = null;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = endpoints.get((offset + i) % size);
+            if (endpoint == exclude || (availableOnly && !endpoint.isAvailable(now))) {
+                continue;
+            }
+            if (best == null || endpoint.outstanding.get() < best.outstanding.get()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    private void checkHealth() {
+        for (Endpoint endpoint : endpoints) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint.url + "/health"))
+                    .timeout(properties.getHealthCheckTimeout())
+                    .GET()
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, ex) -> {
+                        boolean healthy = ex == null && response.statusCode() == 200;
+                        if (healthy != endpoint.healthy) {
+                            log.warn("AI 服务副本 {} 健康检查{}", endpoint.url, healthy ? "恢复" : "失败，暂停分配请求");
+                        }
+                        endpoint.healthy = healthy;
+                    });
+        }
+    }
+
+    /**
+     * 一个 AI 服务副本
+     */
+    public static class Endpoint {
+
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile boolean ejected;
+        private volatile long ejectedUntil;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        boolean isAvailable(long now) {
+            return healthy && (!ejected || now - ejectedUntil >= 0);
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package com.health.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.health.config.AiGatewayProperties;
+import com.health.dto.ai.AiResponse;
+import com.health.exception.AiServiceException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * AI 网关客户端 - 所有对 Python AI 服务的调用统一经过这里
+ *
+ * 提供：复用的 keep-alive 连接、按操作区分的超时、并发舱壁、熔断快速失败、延迟与错误指标（ai.gateway.requests）
+ *
+ * 多个 AI 服务副本时按在途请求最少分配（见 AiEndpointPool），可选对冲慢请求。
+ * 请求体为类型化的 AiRequest，由流式生成器直接编码；ai.gateway.encoding=cbor 时以 application/cbor 发送，
+ * AI 服务返回 415 时自动退回 JSON。同步响应按 AI 服务返回的 Content-Type 解析
+ */
+@Component
+@Slf4j
+public class AiGatewayClient {
+
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE_MARKER = "[DONE]";
+    private static final String JSON = "application/json";
+    private static final String CBOR = "application/cbor";
+    private static final String ACCEPT_CBOR = CBOR + ", " + JSON + ";q=0.9";
+    private static final int INITIAL_BODY_SIZE = 4096;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final AiGatewayProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final AtomicBoolean cborAccepted = new AtomicBoolean(true);
+    private final AiEndpointPool endpointPool;
+    private final Map<AiOperation, LatencyWindow> latencyWindows = new ConcurrentHashMap<>();
+
+    public AiGatewayClient(HttpClient aiHttpClient, ObjectMapper objectMapper, AiGatewayProperties properties,
+                           AiEndpointPool endpointPool, MeterRegistry meterRegistry) {
+        this.httpClient = aiHttpClient;
+        this.endpointPool = endpointPool;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .waitDurationInOpenState(properties.getWaitInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedCallsInHalfOpenState())
+                .build());
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(properties.getMaxConcurrentCalls())
+                .maxWaitDuration(properties.getMaxWait())
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("ai-service");
+        this.bulkhead = bulkheadRegistry.bulkhead("ai-service");
+
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+    }
+
+    /**
+     * 同步调用，返回类型化响应
+     */
+    public AiResponse post(AiOperation operation, AiRequest request) {
+        CompletableFuture<AiResponse> future = execute(operation, exchanges -> sendBalanced(exchanges, operation, request));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new AiServiceException("AI 调用被中断", e);
+        } catch (ExecutionException e) {
+            throw translate(e.getCause());
+        }
+    }
+    
+    /**
+     * 流式调用（SSE），每段增量文本回调 onDelta；流结束时完成，值为完整回复
+     * 流式调用不对冲（增量已发给客户端，无法切换副本）
+     */
+    public CompletableFuture<String> stream(AiOperation operation, AiRequest request, Consumer<String> onDelta) {
+        return execute(operation, exchanges -> {
+            AiEndpointPool.Endpoint endpoint = endpointPool.select(null);
+            return sendStream(exchanges, endpoint, operation, request, useCbor(), onDelta);
+        });
+    }
+    
+    /**
+     * 选择在途最少的副本发送；启用对冲时，超过近期耗时分位数仍未返回则向另一个副本再发一次，取先成功的结果，
+     * 并取消落败一方的底层 HTTP 交换（对冲只增加尾部的少量请求，不会让上游负载翻倍）
+     */
+    private CompletableFuture<AiResponse> sendBalanced(Exchanges exchanges, AiOperation operation, AiRequest request) {
+        boolean cbor = useCbor();
+        AiEndpointPool.Endpoint primary = endpointPool.select(null);
+        Exchanges firstExchanges = exchanges.attempt();
+        CompletableFuture<AiResponse> first = sendTo(firstExchanges, primary, operation, request, cbor);
+        long hedgeDelay = hedgeDelayNanos(operation);
+        if (hedgeDelay <= 0) {
+            return first;
+        }
+        
+        CompletableFuture<AiResponse> result = new CompletableFuture<>();
+        List<Exchanges> attempts = new CopyOnWriteArrayList<>(List.of(firstExchanges));
+        AtomicInteger inFlight = new AtomicInteger(1);
+        BiConsumer<AiResponse, Throwable> settle = (response, ex) -> {
+            if (ex == null) {
+                result.complete(response);
+            } else if (inFlight.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        };
+        first.whenComplete(settle);
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            inFlight.incrementAndGet();
+            AiEndpointPool.Endpoint secondary = endpointPool.select(primary);
+            if (secondary == null) {
+                settle.accept(null, new AiServiceException("没有可用于对冲的 AI 服务副本"));
+                return;
+            }
+            meterRegistry.counter("ai.gateway.hedged", "operation", operation.getTag()).increment();
+            Exchanges hedgeExchanges = exchanges.attempt();
+            attempts.add(hedgeExchanges);
+            if (result.isDone()) {
+                // 与胜出方的取消交错：之后登记的交换立即取消
+                hedgeExchanges.cancel();
+            }
+            sendTo(hedgeExchanges, secondary, operation, request, cbor).whenComplete(settle);
+        });
+        // 先完成的一方胜出后取消其余请求的底层交换（副本名额在各自的交换 future 上归还）
+        result.whenComplete((response, ex) -> attempts.forEach(Exchanges::cancel));
+        return result;
+    }
+    
+    private CompletableFuture<AiResponse> sendTo(Exchanges exchanges, AiEndpointPool.Endpoint endpoint,
+                                                 AiOperation operation, AiRequest request, boolean cbor) {
+        long start = System.nanoTime();
+        return send(exchanges, endpoint, operation, request, cbor)
+                .whenComplete((response, ex) -> {
+                    if (ex == null) {
+                        latencyWindow(operation).record(System.nanoTime() - start);
+                    }
+                });
+    }
+    
+    private CompletableFuture<AiResponse> send(Exchanges exchanges, AiEndpointPool.Endpoint endpoint,
+                                               AiOperation operation, AiRequest request, boolean cbor) {
+        HttpRequest httpRequest = buildRequest(endpoint, operation, request, cbor, cbor ? ACCEPT_CBOR : JSON);
+        return exchange(exchanges, endpoint, httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenCompose(response -> {
+                    if (cbor && response.statusCode() == 415) {
+                        disableCbor();
+                        return send(exchanges, endpoint, operation, request, false);
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new AiServiceException("AI 服务返回状态码 " + response.statusCode());
+                    }
+                    return CompletableFuture.completedFuture(parse(response));
+                });
+    }
+    
+    private CompletableFuture<String> sendStream(Exchanges exchanges, AiEndpointPool.Endpoint endpoint,
+                                                 AiOperation operation, AiRequest request, boolean cbor,
+                                                 Consumer<String> onDelta) {
+        HttpRequest httpRequest = buildRequest(endpoint, operation, request, cbor, "text/event-stream");
+        SseLineSubscriber subscriber = new SseLineSubscriber(onDelta);
+        return exchange(exchanges, endpoint, httpRequest, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber))
+                .thenCompose(response -> {
+                    if (cbor && response.statusCode() == 415) {
+                        disableCbor();
+                        return sendStream(exchanges, endpoint, operation, request, false, onDelta);
+                    }
+                    if (response.statusCode() != 200) {
+                        throw new AiServiceException("AI 服务返回状态码 " + response.statusCode());
+                    }
+                    if (subscriber.error != null) {
+                        throw new AiServiceException(subscriber.error);
+                    }
+                    return CompletableFuture.completedFuture(subscriber.content.toString());
+                });
+    }
+    
+    /**
+     * 向副本发起一次 HTTP 交换：占用一个在途名额，在 sendAsync 返回的 future 上归还。
+     * 交换被取消时这个 future 同样会完成，因此名额不会泄漏（派生阶段被取消则不会传到这里）。
+     * 流式响应在整个响应体读完后才完成；流内返回的错误属于模型调用，不计入副本失败
+     */
+    private <R> CompletableFuture<HttpResponse<R>> exchange(Exchanges exchanges, AiEndpointPool.Endpoint endpoint,
+                                                           HttpRequest request, HttpResponse.BodyHandler<R> handler) {
+        endpointPool.acquire(endpoint);
+        CompletableFuture<HttpResponse<R>> raw;
+        try {
+            raw = httpClient.sendAsync(request, handler);
+        } catch (RuntimeException e) {
+            endpointPool.release(endpoint, e);
+            throw e;
+        }
+        raw.whenComplete((response, ex) -> endpointPool.release(endpoint, ex != null ? ex : statusFailure(response)));
+        return exchanges.track(raw);
+    }
+    
+    /**
+     * 非 200 的响应计为副本失败（415 为编码协商，不计）
+     */
+    private static Throwable statusFailure(HttpResponse<?> response) {
+        int status = response.statusCode();
+        return status == 200 || status == 415 ? null : new AiServiceException("AI 服务返回状态码 " + status);
+    }
+    
+    /**
+     * 对冲等待时间：该操作近期成功调用耗时的分位数（不低于 hedge-min-delay）；
+     * 未启用、只有一个副本或样本不足时返回 0（不对冲）
+     */
+    private long hedgeDelayNanos(AiOperation operation) {
+        if (!properties.isHedgeEnabled() || endpointPool.size() < 2) {
+            return 0;
+        }
+        long percentile = latencyWindow(operation).percentile(properties.getHedgePercentile());
+        if (percentile <= 0) {
+            return 0;
+        }
+        return Math.max(percentile, properties.getHedgeMinDelay().toNanos());
+    }
+    
+    private LatencyWindow latencyWindow(AiOperation operation) {
+        return latencyWindows.computeIfAbsent(operation, op -> new LatencyWindow(properties.getHedgeWindowSize()));
+    }
+    
+    /**
+     * 配置为 CBOR 且 AI 服务未拒绝过时使用 CBOR 编码请求体
+     */
+    private boolean useCbor() {
+        return CBOR.equals(properties.getEncoding()) && cborAccepted.get();
+    }
+    
+    /**
+     * AI 服务返回 415（未安装 CBOR 支持的旧版本）：本进程内退回 JSON
+     */
+    private void disableCbor() {
+        if (cborAccepted.compareAndSet(true, false)) {
+            log.warn("AI 服务不支持 CBOR 请求体，退回 JSON 编码");
+        }
+    }
+    
+    private AiResponse parse(HttpResponse<byte[]> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse(JSON);
+        try {
+            ObjectMapper mapper = contentType.startsWith(CBOR) ? cborMapper : objectMapper;
+            return mapper.readValue(response.body(), AiResponse.class);
+        } catch (Exception e) {
+            throw new AiServiceException("AI 服务响应解析失败", e);
+        }
+    }
+    
+    /**
+     * 用流式生成器把请求体直接写成字节，不构建中间对象树
+     */
+    byte[] encode(AiRequest request, boolean cbor) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_BODY_SIZE);
+        JsonFactory factory = cbor ? cborMapper.getFactory() : objectMapper.getFactory();
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            request.writeTo(generator);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * 熔断 → 舱壁 → 调用 → 记录结果与耗时
+     */
+    private <T> CompletableFuture<T> execute(AiOperation operation, Function<Exchanges, CompletableFuture<T>> call) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            record(operation, "circuit_open", 0);
+            return CompletableFuture.failedFuture(new AiServiceException("AI 服务暂时不可用，请稍后再试"));
+        }
+        if (!bulkhead.tryAcquirePermission()) {
+            circuitBreaker.releasePermission();
+            record(operation, "rejected", 0);
+            return CompletableFuture.failedFuture(new AiServiceException("AI 服务繁忙，请稍后再试"));
+        }
+
+        long start = System.nanoTime();
+        Exchanges exchanges = new Exchanges();
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(exchanges);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        // 记账挂在由 sendAsync 派生的内部 future 上，而不是返回给调用方的 result：调用方取消 result 后，
+        // 底层交换随之取消，内部 future 仍会完成，舱壁许可和（半开状态的）熔断许可总会归还
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, ex) -> {
+            bulkhead.onComplete();
+            long elapsed = System.nanoTime() - start;
+            if (ex == null) {
+                circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                record(operation, "success", elapsed);
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(ex);
+            if (exchanges.isCancelled()) {
+                // 调用方主动取消不计入熔断失败率
+                circuitBreaker.releasePermission();
+                record(operation, "cancelled", elapsed);
+            } else {
+                circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS, cause);
+                record(operation, cause instanceof HttpTimeoutException ? "timeout" : "error", elapsed);
+                log.warn("AI 调用失败 [{}]: {}", operation.getTag(), cause.getMessage());
+            }
+            result.completeExceptionally(cause);
+        });
+        // 调用方取消（如 SSE 客户端断开）时直接取消 sendAsync 返回的 future，HttpClient 随之中止底层 HTTP 交换；
+        // 取消派生阶段不会传到 sendAsync
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                exchanges.cancel();
+            }
+        });
+        return result;
+    }
+
+    private HttpRequest buildRequest(AiEndpointPool.Endpoint endpoint, AiOperation operation, AiRequest request, boolean cbor, String accept) {
+        try {
+            return HttpRequest.newBuilder(URI.create(endpoint.getUrl() + operation.getPath()))
+                    .timeout(timeoutFor(operation))
+                    .header("Content-Type", cbor ? CBOR : JSON)
+                    .header("Accept", accept)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(encode(request, cbor)))
+                    .build();
+        } catch (Exception e) {
+            throw new AiServiceException("AI 请求构建失败", e);
+        }
+    }
+    
+    private Duration timeoutFor(AiOperation operation) {
+        return switch (operation) {
+            case CHAT -> properties.getChatTimeout();
+            case CHAT_STREAM -> properties.getStreamTimeout();
+            case IMAGE_ANALYSIS -> properties.getImageAnalysisTimeout();
+        };
+    }
+
+    private void record(AiOperation operation, String outcome, long elapsedNanos) {
+        Timer.builder("ai.gateway.requests")
+                .description("AI 服务调用耗时")
+                .tag("operation", operation.getTag())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        while (ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    private static AiServiceException translate(Throwable ex) {
+        Throwable cause = unwrap(ex);
+        if (cause instanceof AiServiceException aiServiceException) {
+            return aiServiceException;
+        }
+        if (cause instanceof HttpTimeoutException) {
+            return new AiServiceException("AI 服务响应超时", cause);
+        }
+        return new AiServiceException("AI 服务调用失败: " + cause.getMessage(), cause);
+    }
+
+    /**
+     * 一次网关调用发出的全部 sendAsync future（含 415 重发、对冲）；取消后再登记的交换立即取消。
+     * 对冲的每次尝试是一个子集（attempt），落败时只取消该尝试的交换
+     */
+    private static class Exchanges {
+
+        private final Exchanges parent;
+        private final List<CompletableFuture<?>> raw = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        Exchanges() {
+            this(null);
+        }
+
+        private Exchanges(Exchanges parent) {
+            this.parent = parent;
+        }
+
+        Exchanges attempt() {
+            return new Exchanges(this);
+        }
+
+        <R> CompletableFuture<R> track(CompletableFuture<R> exchange) {
+            raw.add(exchange);
+            if (parent != null) {
+                parent.track(exchange);
+            }
+            if (cancelled) {
+                exchange.cancel(true);
+            }
+            return exchange;
+        }
+
+        void cancel() {
+            cancelled = true;
+            raw.forEach(exchange -> exchange.cancel(true));
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * 解析 SSE 行：data: {"delta": "..."} / data: {"error": "..."} / data: [DONE]
+     */
+    private class SseLineSubscriber implements Flow.Subscriber<String> {
+
+        private final Consumer<String> onDelta;
+        private final StringBuilder content = new StringBuilder();
+        private volatile String error;
+
+        SseLineSubscriber(Consumer<String> onDelta) {
+            this.onDelta = onDelta;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith(DATA_PREFIX)) {
+                return;
+            }
+            String data = line.substring(DATA_PREFIX.length()).trim();
+            if (data.isEmpty() || DONE_MARKER.equals(data)) {
+                return;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(data);
+                if (node.hasNonNull("error")) {
+                    error = node.get("error").asText();
+                } else if (node.hasNonNull("delta")) {
+                    String delta = node.get("delta").asText();
+                    content.append(delta);
+                    onDelta.accept(delta);
+                }
+            } catch (Exception e) {
+                log.warn("无法解析 AI 流式数据: {}", data);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.debug("AI 流式响应中断: {}", throwable.getMessage());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * 最近 N 次成功调用的耗时（环形缓冲），用于计算对冲阈值
+     */
+    private static class LatencyWindow {
+        
+        private static final int MIN_SAMPLES = 20;
+        
+        private final long[] samples;
+        private final AtomicInteger next = new AtomicInteger();
+        
+        LatencyWindow(int size) {
+            this.samples = new long[Math.max(MIN_SAMPLES, size)];
+        }
+        
+        void record(long nanos) {
+            samples[Math.floorMod(next.getAndIncrement(), samples.length)] = nanos;
+        }
+        
+        /**
+         * 样本不足时返回 0
+         */
+        long percentile(double p) {
+            int count = Math.min(next.get(), samples.length);
+            if (count < MIN_SAMPLES) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) (count * p))];
+        }
+    }
+}
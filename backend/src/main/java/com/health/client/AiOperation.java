@@ -0,0 +1,27 @@
+package com.health.client;
+
+/**
+ * AI 服务操作类型（决定路径和超时，也是指标的 operation 标签）
+ */
+public enum AiOperation {
+    
+    CHAT("chat", "/api/chat"),
+    CHAT_STREAM("chat_stream", "/api/chat/stream"),
+    IMAGE_ANALYSIS("image_analysis", "/api/analyze-image-url");
+    
+    private final String tag;
+    private final String path;
+    
+    AiOperation(String tag, String path) {
+        this.tag = tag;
+        this.path = path;
+    }
+    
+    public String getTag() {
+        return tag;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,34 @@
+package com.health.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * 发往 AI 服务的请求体
+ *
+ * 由 AiGatewayClient 用 Jackson 流式生成器直接写出（JSON 或 CBOR），不经过中间 Map，也不走反射序列化
+ */
+public interface AiRequest {
+    
+    void writeTo(JsonGenerator generator) throws IOException;
+    
+    /**
+     * 写出可为空的字符串字段（null 写为 JSON null，与原 Map 请求体保持一致）
+     */
+    static void writeString(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        } else {
+            generator.writeNullField(name);
+        }
+    }
+    
+    static void writeNumber(JsonGenerator generator, String name, Double value) throws IOException {
+        if (value != null) {
+            generator.writeNumberField(name, value);
+        } else {
+            generator.writeNullField(name);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.health.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）：同一个键同时只有一次调用在途，并发到达的相同请求等待并共享这次调用的结果
+ *
+ * 只合并"同时在途"的请求，调用结束即移除，不缓存结果。
+ * 指标：ai.singleflight.calls{name, role=leader|collapsed}
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter collapsed;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaders = Counter.builder("ai.singleflight.calls")
+                .description("实际发起的调用次数（leader）与被合并的调用次数（collapsed）")
+                .tag("name", name)
+                .tag("role", "leader")
+                .register(meterRegistry);
+        this.collapsed = Counter.builder("ai.singleflight.calls")
+                .description("实际发起的调用次数（leader）与被合并的调用次数（collapsed）")
+                .tag("name", name)
+                .tag("role", "collapsed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行调用；已有相同键的调用在途时等待其结果（包括异常）
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            collapsed.increment();
+            return await(existing);
+        }
+
+        leaders.increment();
+        try {
+            V value = call.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 当前在途的调用数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待合并请求结果时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.health.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AI 调用准入配置（全局并发、按用户公平排队、排队上限与等待时间）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.admission")
+public class AiAdmissionProperties {
+    
+    private boolean enabled = true;
+    
+    // 同时进行的 AI 调用上限（应不大于网关舱壁 max-concurrent-calls）
+    private int maxConcurrent = 16;
+    
+    // 全局排队上限与单个用户的排队上限，超出时返回 429
+    private int maxQueueSize = 200;
+    private int maxQueuePerUser = 5;
+    
+    // 排队最长等待时间，超时返回 429
+    private Duration maxQueueTime = Duration.ofSeconds(15);
+    
+    // 差额轮询每轮给每个排队用户增加的额度
+    private int quantum = 1;
+    
+    // 各操作占用的额度（按 AiOperation 标签），图片分析比普通对话更耗模型配额
+    private Map<String, Integer> costs = new HashMap<>(Map.of(
+            "chat", 1,
+            "chat_stream", 1,
+            "image_analysis", 2));
+    
+    public int costOf(String operationTag) {
+        return Math.max(1, costs.getOrDefault(operationTag, 1));
+    }
+}
@@ -0,0 +1,50 @@
+package com.health.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * AI 网关配置（连接、超时、舱壁、熔断）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.gateway")
+public class AiGatewayProperties {
+    
+    // 建立连接超时
+    private Duration connectTimeout = Duration.ofSeconds(3);
+    
+    // 各操作的响应超时（流式为等待响应头的时间）
+    private Duration chatTimeout = Duration.ofSeconds(120);
+    private Duration imageAnalysisTimeout = Duration.ofSeconds(90);
+    private Duration streamTimeout = Duration.ofSeconds(30);
+    
+    // 舱壁：同时在途的 AI 调用上限，以及获取许可的最长等待
+    private int maxConcurrentCalls = 20;
+    private Duration maxWait = Duration.ofMillis(500);
+    
+    // 熔断：滑动窗口内失败率超过阈值后打开，打开状态持续一段时间后半开试探
+    private int slidingWindowSize = 20;
+    private int minimumNumberOfCalls = 10;
+    private float failureRateThreshold = 50;
+    private Duration waitInOpenState = Duration.ofSeconds(30);
+    private int permittedCallsInHalfOpenState = 3;
+    
+    // 请求体编码：json 或 cbor（AI 服务不支持 CBOR 时自动退回 json）
+    private String encoding = "json";
+    
+    // 多副本：主动健康检查（GET /health）的间隔与超时；连续失败次数达到阈值后摘除一段时间
+    private Duration healthCheckInterval = Duration.ofSeconds(10);
+    private Duration healthCheckTimeout = Duration.ofSeconds(2);
+    private int ejectAfterFailures = 3;
+    private Duration ejectionTime = Duration.ofSeconds(30);
+    
+    // 对冲：同步调用超过近期耗时分位数仍未返回时，向另一个副本再发一次，取先成功的结果
+    private boolean hedgeEnabled = false;
+    private double hedgePercentile = 0.95;
+    private Duration hedgeMinDelay = Duration.ofSeconds(1);
+    private int hedgeWindowSize = 200;
+}
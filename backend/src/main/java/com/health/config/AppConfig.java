@@ -2,27 +2,26 @@ package com.health.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.net.http.HttpClient;
 
 /**
  * 应用配置
  */
 @Configuration
+@EnableScheduling
 public class AppConfig {
     
+    /**
+     * 访问 AI 服务的 HTTP 客户端
+     * JDK HttpClient 自带 keep-alive 连接池，同一实例在所有调用间复用；并发上限由 AI 网关舱壁控制
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpClient aiHttpClient(AiGatewayProperties properties) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.getConnectTimeout())
+                .build();
     }
 }
-
-
-
-
-
-
-
-
-
-
-
@@ -0,0 +1,31 @@
+package com.health.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 冷会话归档配置（按最后消息时间把整段会话移出 chat_histories）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.archive")
+public class ChatArchiveProperties {
+    
+    // 关闭时只刷新热表大小指标，不归档；已归档的会话仍可正常读取和恢复
+    private boolean enabled = false;
+    
+    // 最后一条消息早于该时长的会话视为冷会话
+    private Duration coldAfter = Duration.ofDays(90);
+    
+    // 被恢复（继续对话）的会话至少在热表中保留该时长，避免刚恢复又被归档
+    private Duration restoredRetention = Duration.ofDays(30);
+    
+    // 每轮最多归档的会话数，每个会话一个独立短事务
+    private int batchSize = 200;
+    
+    // 单个会话超过该消息数时跳过（payload 过大，留在热表）
+    private int maxMessagesPerSession = 5000;
+}
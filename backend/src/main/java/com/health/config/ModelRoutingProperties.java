@@ -0,0 +1,40 @@
+package com.health.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对话模型分级路由配置（各档位对应的模型名由 AI 服务的 MODEL_NAME_FAST / MODEL_NAME / MODEL_NAME_LARGE 决定）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai.routing")
+public class ModelRoutingProperties {
+
+    // 关闭时所有对话都走 standard
+    private boolean enabled = true;
+
+    // 不超过该字数、全部由 small-talk 短语组成、会话较短的消息走 fast
+    private int fastMaxChars = 20;
+
+    // 上下文窗口超过该条数（或已有滚动摘要）时不走 fast：长会话里的短句往往依赖前文
+    private int fastMaxHistory = 6;
+
+    // 超过该字数的消息走 large
+    private int largeMinChars = 200;
+
+    // 寒暄短语白名单：fast 档不带工具，只有去掉标点后完全由这些短语拼成的消息（如"好的，谢谢！"）才走 fast，
+    // "我头疼""血压130/80"这类短句可能需要查询或记录数据，一律走 standard
+    private List<String> smallTalkPhrases = new ArrayList<>(List.of(
+            "谢谢", "谢谢你", "谢谢医生", "多谢", "感谢", "好的", "好", "好滴", "行", "可以", "嗯", "哦", "噢",
+            "你好", "您好", "在吗", "早上好", "中午好", "晚上好", "晚安", "再见", "拜拜",
+            "知道了", "明白了", "明白", "懂了", "收到", "没事了", "没问题", "哈哈", "啊", "呀", "啦", "ok", "okay", "thanks", "hi", "hello"));
+
+    // 命中任一关键词说明需要多步推理或看图（多份病历对比、综合评估、图片），走 large
+    private List<String> largeKeywords = new ArrayList<>(List.of(
+            "对比", "比较", "综合", "所有病历", "全部病历", "每份", "图片", "片子", "影像", "详细分析"));
+}
@@ -1,15 +1,19 @@
 package com.health.controller;
 
 import com.health.dto.ApiResponse;
+import com.health.dto.chat.ChatHistoryPage;
 import com.health.dto.chat.ChatRequest;
 import com.health.dto.chat.ChatResponse;
+import com.health.exception.AiOverloadedException;
 import com.health.security.UserPrincipal;
 import com.health.service.ChatService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -34,6 +38,21 @@ public class ChatController {
         return ResponseEntity.ok(ApiResponse.success(response));
     }
     
+    /**
+     * 发送消息（SSE 流式返回）
+     * 事件：session → delta* → done（失败时在 done 之前发送 error）
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(
+            @AuthenticationPrincipal UserPrincipal user,
+            @Valid @RequestBody ChatRequest request) {
+        SseEmitter emitter = chatService.chatStream(user.getId(), request);
+        // 禁止 Nginx 缓冲，保证增量内容及时下发
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+    
     /**
      * 分析病历图片
      */
@@ -48,20 +67,27 @@ public class ChatController {
                     : "请详细分析这张医疗图片的内容";
             ChatResponse response = chatService.analyzeRecordImage(user.getId(), recordId, message);
             return ResponseEntity.ok(ApiResponse.success(response));
+        } catch (AiOverloadedException e) {
+            // 交给全局异常处理返回 429 + Retry-After
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
     
     /**
-     * 获取对话历史
+     * 获取对话历史（游标分页，默认最新在前；order=asc 时从最早开始）
      */
     @GetMapping("/history/{sessionId}")
-    public ResponseEntity<ApiResponse<List<ChatResponse>>> getChatHistory(
+    public ResponseEntity<ApiResponse<ChatHistoryPage>> getChatHistory(
             @AuthenticationPrincipal UserPrincipal user,
-            @PathVariable String sessionId) {
-        List<ChatResponse> history = chatService.getChatHistory(user.getId(), sessionId);
-        return ResponseEntity.ok(ApiResponse.success(history));
+            @PathVariable String sessionId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "desc") String order) {
+        ChatHistoryPage page = chatService.getChatHistory(
+                user.getId(), sessionId, cursor, limit, "asc".equalsIgnoreCase(order));
+        return ResponseEntity.ok(ApiResponse.success(page));
     }
     
     /**
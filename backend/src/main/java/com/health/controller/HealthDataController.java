@@ -1,17 +1,23 @@
 package com.health.controller;
 
 import com.health.dto.ApiResponse;
+import com.health.dto.health.HealthDataBulkResult;
 import com.health.dto.health.HealthDataRequest;
 import com.health.dto.health.HealthDataResponse;
+import com.health.dto.health.HealthTrendPoint;
 import com.health.entity.HealthData;
 import com.health.security.UserPrincipal;
+import com.health.service.HealthDataBulkIngestService;
 import com.health.service.HealthDataService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -26,6 +32,7 @@ import java.util.stream.Collectors;
 public class HealthDataController {
     
     private final HealthDataService healthDataService;
+    private final HealthDataBulkIngestService bulkIngestService;
     
     /**
      * 记录健康数据
@@ -52,6 +59,25 @@ public class HealthDataController {
         }
     }
     
+    /**
+     * 批量导入健康数据（可穿戴设备同步），请求体为 JSON 数组或 NDJSON（Content-Type: application/x-ndjson）
+     * 合法条目全部写入，不合法条目按序号返回原因
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ApiResponse<?> bulkIngest(
+            @AuthenticationPrincipal UserPrincipal user,
+            HttpServletRequest request) {
+        try (InputStream body = request.getInputStream()) {
+            boolean ndjson = request.getContentType() != null
+                    && request.getContentType().startsWith(MediaType.APPLICATION_NDJSON_VALUE);
+            HealthDataBulkResult result = bulkIngestService.ingest(user.getId(), body, ndjson);
+            return ApiResponse.success(result);
+        } catch (Exception e) {
+            log.error("批量导入健康数据失败", e);
+            return ApiResponse.error("导入失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 获取最新健康数据（各类型）
      */
@@ -70,18 +96,20 @@ public class HealthDataController {
     }
     
     /**
-     * 获取健康数据趋势
+     * 获取健康数据趋势（粒度按天数自动选择，resolution 可指定 raw / day / week / month）
+     * maxPoints 限制返回点数（服务端降采样，downsample 可指定 lttb / envelope）
      */
     @GetMapping("/trend/{dataType}")
     public ApiResponse<?> getTrend(
             @AuthenticationPrincipal UserPrincipal user,
             @PathVariable String dataType,
-            @RequestParam(defaultValue = "30") int days) {
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) String downsample) {
         try {
-            List<HealthDataResponse> data = healthDataService.getTrend(user.getId(), dataType, days)
-                    .stream()
-                    .map(HealthDataResponse::from)
-                    .collect(Collectors.toList());
+            List<HealthTrendPoint> data = healthDataService.getTrend(user.getId(), dataType, days, resolution,
+                    maxPoints, downsample);
             return ApiResponse.success(data);
         } catch (Exception e) {
             log.error("获取趋势数据失败", e);
@@ -0,0 +1,76 @@
+package com.health.controller;
+
+import com.health.dto.ApiResponse;
+import com.health.dto.record.ToolRecordView;
+import com.health.security.JwtTokenProvider;
+import com.health.service.MedicalRecordService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 内部工具接口 - 供 AI 智能体在需要时按需查询病历
+ *
+ * 使用对话时签发的工具令牌（X-Tool-Token，scope=ai-tools，短有效期）认证，令牌只绑定单个用户，不能访问普通接口。
+ */
+@RestController
+@RequestMapping("/api/internal/tools")
+@RequiredArgsConstructor
+public class InternalToolController {
+    
+    private static final String TOOL_TOKEN_HEADER = "X-Tool-Token";
+    
+    private final JwtTokenProvider tokenProvider;
+    private final MedicalRecordService recordService;
+    
+    /**
+     * 病历列表
+     */
+    @GetMapping("/records")
+    public ResponseEntity<ApiResponse<List<ToolRecordView>>> listRecords(
+            @RequestHeader(value = TOOL_TOKEN_HEADER, required = false) String toolToken,
+            @RequestParam(required = false) String recordType,
+            @RequestParam(required = false) Integer limit) {
+        return withToolUser(toolToken, userId -> recordService.listRecordsForTools(userId, recordType, limit));
+    }
+    
+    /**
+     * 单个病历（含全部图片）
+     */
+    @GetMapping("/records/{id}")
+    public ResponseEntity<ApiResponse<ToolRecordView>> getRecord(
+            @RequestHeader(value = TOOL_TOKEN_HEADER, required = false) String toolToken,
+            @PathVariable Long id) {
+        return withToolUser(toolToken, userId -> recordService.getRecordForTools(userId, id));
+    }
+    
+    /**
+     * 搜索病历
+     */
+    @GetMapping("/records/search")
+    public ResponseEntity<ApiResponse<List<ToolRecordView>>> searchRecords(
+            @RequestHeader(value = TOOL_TOKEN_HEADER, required = false) String toolToken,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String hospital,
+            @RequestParam(required = false) String recordType,
+            @RequestParam(required = false) Integer year) {
+        return withToolUser(toolToken,
+                userId -> recordService.searchRecordsForTools(userId, keyword, hospital, recordType, year));
+    }
+    
+    private <T> ResponseEntity<ApiResponse<T>> withToolUser(String toolToken, Function<Long, T> action) {
+        Long userId = toolToken != null ? tokenProvider.getUserIdFromToolToken(toolToken) : null;
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.error("工具令牌无效或已过期"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(action.apply(userId)));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.health.controller;
+
+import com.health.dto.ApiResponse;
+import com.health.dto.usage.UsageSummary;
+import com.health.security.UserPrincipal;
+import com.health.service.AiUsageMeter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * AI 用量控制器
+ */
+@RestController
+@RequestMapping("/api/usage")
+@RequiredArgsConstructor
+public class UsageController {
+    
+    private final AiUsageMeter aiUsageMeter;
+    
+    /**
+     * 当前用户的 AI 用量：今日合计、每日配额和最近 days 天按操作的明细（最多 90 天）
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<UsageSummary>> getUsage(
+            @AuthenticationPrincipal UserPrincipal user,
+            @RequestParam(defaultValue = "7") int days) {
+        return ResponseEntity.ok(ApiResponse.success(aiUsageMeter.getUsage(user.getId(), days)));
+    }
+}
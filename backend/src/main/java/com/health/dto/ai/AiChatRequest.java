@@ -0,0 +1,97 @@
+package com.health.dto.ai;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.health.client.AiRequest;
+import com.health.entity.ChatHistory;
+import com.health.entity.UserProfile;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.health.client.AiRequest.writeNumber;
+import static com.health.client.AiRequest.writeString;
+
+/**
+ * AI 对话请求（/api/chat、/api/chat/stream）
+ *
+ * @param userProfile       用户健康档案，可为空
+ * @param medicalRecordsRef 病历引用（数量 + 短期工具令牌），没有病历时为空
+ * @param history           上下文窗口内的最近消息，时间正序
+ * @param historySummary    更早消息的滚动摘要，可为空
+ * @param modelTier         模型档位 fast / standard / large（见 ModelRouter），AI 服务据此选择模型
+ */
+public record AiChatRequest(String message, Profile userProfile, RecordsRef medicalRecordsRef,
+                            List<ChatHistory> history, String historySummary, String modelTier) implements AiRequest {
+    
+    @Override
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "message", message);
+        if (userProfile != null) {
+            generator.writeFieldName("userProfile");
+            userProfile.writeTo(generator);
+        }
+        if (medicalRecordsRef != null) {
+            generator.writeObjectFieldStart("medicalRecordsRef");
+            generator.writeNumberField("count", medicalRecordsRef.count());
+            generator.writeStringField("toolToken", medicalRecordsRef.toolToken());
+            generator.writeEndObject();
+        }
+        generator.writeArrayFieldStart("history");
+        for (ChatHistory message : history) {
+            generator.writeStartObject();
+            writeString(generator, "role", message.getRole());
+            writeString(generator, "content", message.getContent());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        if (historySummary != null && !historySummary.isEmpty()) {
+            generator.writeStringField("historySummary", historySummary);
+        }
+        writeString(generator, "modelTier", modelTier);
+        generator.writeEndObject();
+    }
+    
+    /**
+     * 对话使用的档案字段
+     */
+    public record Profile(String realName, String gender, String birthDate, Double height, Double weight,
+                          String bloodType, String allergies, String medicalHistory, String familyHistory) {
+        
+        public static Profile from(UserProfile profile) {
+            if (profile == null) {
+                return null;
+            }
+            return new Profile(
+                    profile.getRealName(),
+                    profile.getGender(),
+                    profile.getBirthDate() != null ? profile.getBirthDate().toString() : null,
+                    profile.getHeight(),
+                    profile.getWeight(),
+                    profile.getBloodType(),
+                    profile.getAllergies(),
+                    profile.getMedicalHistory(),
+                    profile.getFamilyHistory());
+        }
+        
+        void writeTo(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            writeString(generator, "realName", realName);
+            writeString(generator, "gender", gender);
+            writeString(generator, "birthDate", birthDate);
+            writeNumber(generator, "height", height);
+            writeNumber(generator, "weight", weight);
+            writeString(generator, "bloodType", bloodType);
+            writeString(generator, "allergies", allergies);
+            writeString(generator, "medicalHistory", medicalHistory);
+            writeString(generator, "familyHistory", familyHistory);
+            generator.writeEndObject();
+        }
+    }
+    
+    /**
+     * 病历引用：智能体需要时凭工具令牌回调内部工具接口查询
+     */
+    public record RecordsRef(long count, String toolToken) {
+    }
+}
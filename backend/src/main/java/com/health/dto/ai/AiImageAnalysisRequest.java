@@ -0,0 +1,60 @@
+package com.health.dto.ai;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.health.client.AiRequest;
+import com.health.entity.UserProfile;
+
+import java.io.IOException;
+
+import static com.health.client.AiRequest.writeNumber;
+import static com.health.client.AiRequest.writeString;
+
+/**
+ * AI 图片分析请求（/api/analyze-image-url）
+ *
+ * @param model 视觉模型，同时是分析结果缓存键的一部分
+ */
+public record AiImageAnalysisRequest(String message, String imageUrl, String model, Profile userProfile)
+        implements AiRequest {
+    
+    @Override
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "message", message);
+        writeString(generator, "imageUrl", imageUrl);
+        writeString(generator, "model", model);
+        if (userProfile != null) {
+            generator.writeObjectFieldStart("userProfile");
+            writeString(generator, "realName", userProfile.realName());
+            writeString(generator, "gender", userProfile.gender());
+            writeNumber(generator, "height", userProfile.height());
+            writeNumber(generator, "weight", userProfile.weight());
+            writeString(generator, "bloodType", userProfile.bloodType());
+            writeString(generator, "allergies", userProfile.allergies());
+            writeString(generator, "medicalHistory", userProfile.medicalHistory());
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+    
+    /**
+     * 图片分析使用的档案字段（按属性名排序后参与缓存键计算）
+     */
+    public record Profile(String realName, String gender, Double height, Double weight,
+                          String bloodType, String allergies, String medicalHistory) {
+        
+        public static Profile from(UserProfile profile) {
+            if (profile == null) {
+                return null;
+            }
+            return new Profile(
+                    profile.getRealName(),
+                    profile.getGender(),
+                    profile.getHeight(),
+                    profile.getWeight(),
+                    profile.getBloodType(),
+                    profile.getAllergies(),
+                    profile.getMedicalHistory());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.health.dto.ai;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * AI 服务的同步响应（对话与图片分析共用）
+ *
+ * @param success 处理是否成功；失败时 response 是面向用户的错误说明
+ * @param model   图片分析实际使用的模型，对话接口不返回
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record AiResponse(String response, Boolean success, String model) {
+    
+    public boolean succeeded() {
+        return Boolean.TRUE.equals(success);
+    }
+}
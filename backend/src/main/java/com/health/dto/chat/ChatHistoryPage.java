@@ -0,0 +1,22 @@
+package com.health.dto.chat;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 对话历史分页 DTO（游标分页）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatHistoryPage {
+    
+    private List<ChatResponse> items;  // 按请求的方向排序，默认最新在前
+    private String nextCursor;         // 下一页游标，没有更多时为 null
+    private boolean hasMore;
+}
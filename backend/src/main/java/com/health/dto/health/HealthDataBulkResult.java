@@ -0,0 +1,31 @@
+package com.health.dto.health;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量导入结果 DTO：合法的条目全部写入，不合法的按序号（从 0 开始）逐条列出原因
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HealthDataBulkResult {
+    private int received;
+    private int accepted;
+    private int rejected;
+    // 最多列出 health.bulk.max-errors 条，rejected 为完整数量
+    private List<ItemError> errors;
+    
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ItemError {
+        private int index;
+        private String message;
+    }
+}
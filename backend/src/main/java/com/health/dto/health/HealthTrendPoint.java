@@ -0,0 +1,110 @@
+package com.health.dto.health;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+
+/**
+ * 健康数据趋势点 DTO
+ *
+ * raw 粒度为单条明细；day / week / month 粒度为一个汇总桶，recordDate 为桶起始日期，
+ * value / systolicPressure / diastolicPressure 为桶内平均值，与明细字段同名，图表可以直接使用
+ */
+@Data
+@Builder
+public class HealthTrendPoint {
+    private String dataType;
+    // raw / day / week / month
+    private String resolution;
+    private LocalDate recordDate;
+    private BigDecimal value;
+    private Integer systolicPressure;
+    private Integer diastolicPressure;
+    private String unit;
+    private Integer count;
+    private BigDecimal min;
+    private BigDecimal max;
+    private BigDecimal sum;
+    private BigDecimal last;
+    private Integer systolicMin;
+    private Integer systolicMax;
+    private Integer diastolicMin;
+    private Integer diastolicMax;
+    // 各字段非空的条数（平均值的分母），服务端合并桶时使用，不返回给前端
+    @JsonIgnore
+    private Integer valueCount;
+    @JsonIgnore
+    private Integer systolicCount;
+    @JsonIgnore
+    private Integer diastolicCount;
+    
+    public static HealthTrendPoint from(HealthData data) {
+        return HealthTrendPoint.builder()
+                .dataType(data.getDataType())
+                .resolution("raw")
+                .recordDate(data.getRecordDate())
+                .value(data.getValue())
+                .systolicPressure(data.getSystolicPressure())
+                .diastolicPressure(data.getDiastolicPressure())
+                .unit(data.getUnit())
+                .count(1)
+                .min(data.getValue())
+                .max(data.getValue())
+                .sum(data.getValue())
+                .last(data.getValue())
+                .systolicMin(data.getSystolicPressure())
+                .systolicMax(data.getSystolicPressure())
+                .diastolicMin(data.getDiastolicPressure())
+                .diastolicMax(data.getDiastolicPressure())
+                .valueCount(data.getValue() != null ? 1 : 0)
+                .systolicCount(data.getSystolicPressure() != null ? 1 : 0)
+                .diastolicCount(data.getDiastolicPressure() != null ? 1 : 0)
+                .build();
+    }
+    
+    /**
+     * 平均值按各字段非空的条数计算，count 仍为桶内明细条数
+     */
+    public static HealthTrendPoint from(HealthDataRollup rollup, String unit) {
+        int valueCount = countOf(rollup.getValueCount(), rollup.getSampleCount());
+        int systolicCount = countOf(rollup.getSystolicCount(), rollup.getSampleCount());
+        int diastolicCount = countOf(rollup.getDiastolicCount(), rollup.getSampleCount());
+        return HealthTrendPoint.builder()
+                .dataType(rollup.getDataType())
+                .resolution(rollup.getGranularity())
+                .recordDate(rollup.getBucketStart())
+                .value(rollup.getValueSum() == null || valueCount == 0 ? null
+                        : rollup.getValueSum().divide(BigDecimal.valueOf(valueCount), 2, RoundingMode.HALF_UP))
+                .systolicPressure(rollup.getSystolicSum() == null || systolicCount == 0 ? null
+                        : Math.round((float) rollup.getSystolicSum() / systolicCount))
+                .diastolicPressure(rollup.getDiastolicSum() == null || diastolicCount == 0 ? null
+                        : Math.round((float) rollup.getDiastolicSum() / diastolicCount))
+                .unit(unit)
+                .count(rollup.getSampleCount())
+                .min(rollup.getValueMin())
+                .max(rollup.getValueMax())
+                .sum(rollup.getValueSum())
+                .last(rollup.getLastValue())
+                .systolicMin(rollup.getSystolicMin())
+                .systolicMax(rollup.getSystolicMax())
+                .diastolicMin(rollup.getDiastolicMin())
+                .diastolicMax(rollup.getDiastolicMax())
+                .valueCount(valueCount)
+                .systolicCount(systolicCount)
+                .diastolicCount(diastolicCount)
+                .build();
+    }
+    
+    /**
+     * 未提供非空条数时退回明细条数
+     */
+    private static int countOf(Integer nonNullCount, Integer sampleCount) {
+        return nonNullCount != null ? nonNullCount : sampleCount != null ? sampleCount : 0;
+    }
+}
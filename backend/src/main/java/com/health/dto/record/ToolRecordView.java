@@ -0,0 +1,79 @@
+package com.health.dto.record;
+
+import com.health.entity.MedicalRecord;
+import com.health.entity.MedicalRecordImage;
+import com.health.service.ImageAnalysisPipeline;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 病历工具视图 DTO - 供 AI 智能体工具按需查询，字段名与智能体原有的病历结构保持一致
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ToolRecordView {
+    
+    private Long id;
+    private String title;
+    private String recordType;
+    private String description;
+    private String hospital;
+    private String doctor;
+    private String recordDate;
+    private String fileName;
+    private String imageUrl;  // 主图 OSS URL
+    private String analysis;  // 主图预分析结果，仅单条查询时返回
+    private List<ImageView> images;  // 仅单条查询时返回
+    
+    public static ToolRecordView from(MedicalRecord record) {
+        return ToolRecordView.builder()
+                .id(record.getId())
+                .title(record.getTitle())
+                .recordType(record.getRecordType())
+                .description(record.getDescription())
+                .hospital(record.getHospital())
+                .doctor(record.getDoctor())
+                .recordDate(record.getRecordDate() != null ? record.getRecordDate().toString() : null)
+                .fileName(record.getFileName())
+                .imageUrl(record.getFilePath())
+                .build();
+    }
+    
+    public static ToolRecordView from(MedicalRecord record, List<MedicalRecordImage> images) {
+        ToolRecordView view = from(record);
+        view.setAnalysis(ImageAnalysisPipeline.DONE.equals(record.getAnalysisStatus()) ? record.getAnalysisResult() : null);
+        view.setImages(images.stream()
+                .map(img -> ImageView.builder()
+                        .id(img.getId())
+                        .filePath(img.getFilePath())
+                        .fileName(img.getFileName())
+                        .fileType(img.getFileType())
+                        .fileSize(img.getFileSize())
+                        .sortOrder(img.getSortOrder())
+                        .analysis(ImageAnalysisPipeline.DONE.equals(img.getAnalysisStatus()) ? img.getAnalysisResult() : null)
+                        .build())
+                .collect(Collectors.toList()));
+        return view;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImageView {
+        private Long id;
+        private String filePath;
+        private String fileName;
+        private String fileType;
+        private Long fileSize;
+        private Integer sortOrder;
+        private String analysis;  // 上传后的预分析结果，未完成时为 null
+    }
+}
@@ -0,0 +1,38 @@
+package com.health.dto.usage;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * AI 用量 DTO：今日用量与配额 + 最近若干天按操作的明细
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageSummary {
+    
+    private long todayRequests;
+    private long todayTokens;
+    private long dailyRequestQuota;  // 0 表示不限
+    private long dailyTokenQuota;    // 0 表示不限
+    private List<DailyUsage> days;   // 日期倒序
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DailyUsage {
+        private LocalDate date;
+        private String operation;
+        private long requests;
+        private long promptTokens;
+        private long completionTokens;
+        private long averageLatencyMs;
+    }
+}
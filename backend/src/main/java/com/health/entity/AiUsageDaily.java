@@ -0,0 +1,48 @@
+package com.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * AI 用量日汇总实体 - 按 (用户, 日期, 操作) 累计请求数、token 数和总耗时
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("ai_usage_daily")
+public class AiUsageDaily {
+    
+    @TableField("user_id")
+    private Long userId;
+    
+    @TableField("usage_date")
+    private LocalDate usageDate;
+    
+    // AiOperation 标签：chat / chat_stream / image_analysis
+    @TableField("operation")
+    private String operation;
+    
+    @TableField("request_count")
+    private Long requestCount;
+    
+    // 估算 token 数（见 ChatContextBuilder.estimateTokens）
+    @TableField("prompt_tokens")
+    private Long promptTokens;
+    
+    @TableField("completion_tokens")
+    private Long completionTokens;
+    
+    // 累计耗时（毫秒），平均耗时 = latencyMs / requestCount
+    @TableField("latency_ms")
+    private Long latencyMs;
+    
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,42 @@
+package com.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 对话上下文滚动摘要实体 - 滑出上下文窗口的旧消息被增量折叠到这里，主键为 (user_id, session_id)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("chat_context_summaries")
+public class ChatContextSummary {
+    
+    @TableField("user_id")
+    private Long userId;
+    
+    // 会话 ID 由客户端提供，只在同一用户内唯一
+    @TableField("session_id")
+    private String sessionId;
+    
+    // 摘要文本（每条被折叠的消息占一行）
+    @TableField("summary")
+    private String summary;
+    
+    // 已折叠进摘要的最后一条消息 ID，窗口只从其之后取消息
+    @TableField("summarized_until_id")
+    private Long summarizedUntilId;
+    
+    // 累计折叠的消息条数
+    @TableField("summarized_turns")
+    private Integer summarizedTurns;
+    
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+}
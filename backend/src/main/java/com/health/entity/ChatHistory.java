@@ -31,6 +31,14 @@ public class ChatHistory {
     @TableField("content")
     private String content;
     
+    // 超过阈值的内容压缩后存这里，content 为空；读取时通过 ChatContentCodec.contentOf 解压
+    @TableField("content_blob")
+    private byte[] contentBlob;
+    
+    // 压缩编码（deflate-字典版本），未压缩时为空
+    @TableField("content_codec")
+    private String contentCodec;
+    
     // 会话ID，用于区分不同对话
     @TableField("session_id")
     private String sessionId;
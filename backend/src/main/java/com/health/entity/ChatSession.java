@@ -0,0 +1,54 @@
+package com.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话摘要实体 - 每个会话一行，随每条消息写入增量维护，会话列表直接读取
+ * 会话 ID 由客户端提供，只在同一用户内唯一，主键为 (user_id, session_id)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("chat_sessions")
+public class ChatSession {
+    
+    @TableField("user_id")
+    private Long userId;
+    
+    @TableField("session_id")
+    private String sessionId;
+    
+    // 会话标题（第一条用户消息截断）
+    @TableField("title")
+    private String title;
+    
+    @TableField("first_message")
+    private String firstMessage;
+    
+    @TableField("last_message_time")
+    private LocalDateTime lastMessageTime;
+    
+    @TableField("message_count")
+    private Integer messageCount;
+    
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+    
+    // 消息已整体移入 chat_session_archives（见 ChatArchiveService）
+    @TableField("archived")
+    private Boolean archived;
+    
+    @TableField("restored_at")
+    private LocalDateTime restoredAt;
+    
+    // 消息过多、跳过归档的时间，非空时归档任务不再选中
+    @TableField("archive_skipped_at")
+    private LocalDateTime archiveSkippedAt;
+}
@@ -0,0 +1,94 @@
+package com.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 健康数据汇总实体 - 按 (用户, 类型, 粒度, 桶起始日期) 汇总明细的条数、最小/最大/合计和最新值
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("health_data_rollups")
+public class HealthDataRollup {
+    
+    @TableField("user_id")
+    private Long userId;
+    
+    @TableField("data_type")
+    private String dataType;
+    
+    // day / week / month
+    @TableField("granularity")
+    private String granularity;
+    
+    // 桶起始日期（周从周一开始，月从 1 日开始）
+    @TableField("bucket_start")
+    private LocalDate bucketStart;
+    
+    @TableField("sample_count")
+    private Integer sampleCount;
+    
+    // 各字段非空的条数，平均值按它计算（取值无法解析、血压格式错误的明细不参与平均）
+    @TableField("value_count")
+    private Integer valueCount;
+    
+    @TableField("systolic_count")
+    private Integer systolicCount;
+    
+    @TableField("diastolic_count")
+    private Integer diastolicCount;
+    
+    @TableField("value_min")
+    private BigDecimal valueMin;
+    
+    @TableField("value_max")
+    private BigDecimal valueMax;
+    
+    @TableField("value_sum")
+    private BigDecimal valueSum;
+    
+    @TableField("last_value")
+    private BigDecimal lastValue;
+    
+    @TableField("systolic_min")
+    private Integer systolicMin;
+    
+    @TableField("systolic_max")
+    private Integer systolicMax;
+    
+    @TableField("systolic_sum")
+    private Long systolicSum;
+    
+    @TableField("last_systolic")
+    private Integer lastSystolic;
+    
+    @TableField("diastolic_min")
+    private Integer diastolicMin;
+    
+    @TableField("diastolic_max")
+    private Integer diastolicMax;
+    
+    @TableField("diastolic_sum")
+    private Long diastolicSum;
+    
+    @TableField("last_diastolic")
+    private Integer lastDiastolic;
+    
+    @TableField("last_record_date")
+    private LocalDate lastRecordDate;
+    
+    @TableField("last_id")
+    private Long lastId;
+    
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,37 @@
+package com.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 图片分析结果缓存实体 - 按 (图片内容哈希, 规范化提示词哈希, 模型) 存储视觉模型的分析结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("image_analysis_cache")
+public class ImageAnalysisResult {
+    
+    // 图片内容 SHA-256；旧数据没有内容哈希时为 "url:" + 图片 URL 的 SHA-256
+    @TableField("content_hash")
+    private String contentHash;
+    
+    // 规范化提示词与用户档案的 SHA-256
+    @TableField("prompt_hash")
+    private String promptHash;
+    
+    @TableField("model")
+    private String model;
+    
+    @TableField("result")
+    private String result;
+    
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+}
@@ -37,6 +37,25 @@ public class MedicalRecordImage {
     @TableField("file_size")
     private Long fileSize;
     
+    // 文件内容 SHA-256，作为图片分析结果缓存的键
+    @TableField("content_hash")
+    private String contentHash;
+    
+    // 上传后后台预分析：pending / processing / done / failed
+    // 预分析字段只由 ImageAnalysisPipeline 用条件更新维护，updateById 不覆盖，避免并发编辑把状态写回
+    @TableField(value = "analysis_status", updateStrategy = FieldStrategy.NEVER)
+    private String analysisStatus;
+    
+    // 预分析结果（视觉模型提取的检查发现）
+    @TableField(value = "analysis_result", updateStrategy = FieldStrategy.NEVER)
+    private String analysisResult;
+    
+    @TableField(value = "analysis_attempts", updateStrategy = FieldStrategy.NEVER)
+    private Integer analysisAttempts;
+    
+    @TableField(value = "analyzed_at", updateStrategy = FieldStrategy.NEVER)
+    private LocalDateTime analyzedAt;
+    
     // 排序
     @TableField("sort_order")
     private Integer sortOrder;
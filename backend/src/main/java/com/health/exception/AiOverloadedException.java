@@ -0,0 +1,18 @@
+package com.health.exception;
+
+/**
+ * AI 调用准入被拒绝（排队已满或排队超时），对应 HTTP 429
+ */
+public class AiOverloadedException extends AiServiceException {
+    
+    private final long retryAfterSeconds;
+    
+    public AiOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+package com.health.exception;
+
+/**
+ * 用户当日 AI 用量已达配额，对应 HTTP 429（Retry-After 为距次日零点的秒数）
+ */
+public class AiQuotaExceededException extends AiOverloadedException {
+    
+    public AiQuotaExceededException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
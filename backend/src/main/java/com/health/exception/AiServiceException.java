@@ -0,0 +1,15 @@
+package com.health.exception;
+
+/**
+ * AI 服务调用失败（超时、熔断、舱壁已满、非 200 响应等）
+ */
+public class AiServiceException extends RuntimeException {
+    
+    public AiServiceException(String message) {
+        super(message);
+    }
+    
+    public AiServiceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,7 +2,9 @@ package com.health.exception;
 
 import com.health.dto.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.validation.FieldError;
@@ -44,6 +46,15 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error("用户名或密码错误"));
     }
     
+    @ExceptionHandler(AiOverloadedException.class)
+    public ResponseEntity<ApiResponse<Void>> handleAiOverloadedException(AiOverloadedException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                // 流式接口的请求 Accept 为 text/event-stream，显式声明 JSON 才能写出错误体
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(ApiResponse.error(ex.getMessage()));
+    }
+    
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<ApiResponse<Void>> handleRuntimeException(RuntimeException ex) {
         log.error("运行时异常: ", ex);
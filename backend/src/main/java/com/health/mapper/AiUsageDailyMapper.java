@@ -0,0 +1,28 @@
+package com.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.health.entity.AiUsageDaily;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * AI 用量日汇总Mapper
+ */
+@Mapper
+public interface AiUsageDailyMapper extends BaseMapper<AiUsageDaily> {
+    
+    /**
+     * 批量累加用量增量（需要 ON CONFLICT，使用 XML 实现）
+     */
+    int addBatch(@Param("deltas") List<AiUsageDaily> deltas);
+    
+    /**
+     * 指定日期各用户的用量合计（所有操作），用于配额判断
+     * 返回的每行只填充 userId、requestCount、promptTokens、completionTokens
+     */
+    List<AiUsageDaily> sumByUsers(@Param("usageDate") LocalDate usageDate, @Param("userIds") Collection<Long> userIds);
+}
@@ -0,0 +1,18 @@
+package com.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.health.entity.ChatContextSummary;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 对话上下文摘要Mapper
+ */
+@Mapper
+public interface ChatContextSummaryMapper extends BaseMapper<ChatContextSummary> {
+    
+    /**
+     * 写入或推进摘要（需要 ON CONFLICT，使用 XML 实现）
+     * 只有 summarizedUntilId 更大时才覆盖，避免并发请求把摘要回退
+     */
+    int upsert(ChatContextSummary summary);
+}
@@ -3,7 +3,9 @@ package com.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.health.entity.ChatHistory;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -18,8 +20,23 @@ public interface ChatHistoryMapper extends BaseMapper<ChatHistory> {
     List<String> findDistinctSessionIdsByUserId(Long userId);
     
     /**
-     * 获取会话摘要信息（需要GROUP BY，使用 XML 实现）
-     * 返回: [sessionId, firstMessage, lastTime, messageCount]
+     * 按 (created_at, id) 游标分页查询会话消息（需要行值比较，使用 XML 实现）
+     * cursorTime 为 null 时从头（或从最新）开始
      */
-    List<Object[]> findSessionsSummary(Long userId);
+    List<ChatHistory> findPage(@Param("userId") Long userId,
+                               @Param("sessionId") String sessionId,
+                               @Param("cursorTime") LocalDateTime cursorTime,
+                               @Param("cursorId") Long cursorId,
+                               @Param("asc") boolean asc,
+                               @Param("limit") int limit);
+    
+    /**
+     * 按 ID 范围查询会话消息：afterId < id < beforeId（beforeId 为 null 时不限上界），asc 决定排序方向
+     */
+    List<ChatHistory> findByIdRange(@Param("userId") Long userId,
+                                    @Param("sessionId") String sessionId,
+                                    @Param("afterId") long afterId,
+                                    @Param("beforeId") Long beforeId,
+                                    @Param("asc") boolean asc,
+                                    @Param("limit") int limit);
 }
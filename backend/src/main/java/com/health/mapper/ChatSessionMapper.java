@@ -0,0 +1,26 @@
+package com.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.health.entity.ChatSession;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 会话摘要Mapper
+ */
+@Mapper
+public interface ChatSessionMapper extends BaseMapper<ChatSession> {
+    
+    /**
+     * 记录新消息（需要 ON CONFLICT，使用 XML 实现）
+     * 会话不存在时创建；已存在时消息数累加 session.messageCount、刷新最后消息时间，首条用户消息和标题只在为空时写入
+     */
+    int touch(ChatSession session);
+    
+    /**
+     * 从 chat_histories 重新汇总全部会话（需要 GROUP BY / DISTINCT ON，使用 XML 实现）
+     * 用于上线前的历史数据回填，可重复执行
+     *
+     * @return 写入或修正的会话数
+     */
+    int backfill();
+}
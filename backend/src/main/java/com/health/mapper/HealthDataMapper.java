@@ -3,11 +3,28 @@ package com.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.health.entity.HealthData;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.time.LocalDate;
+import java.util.List;
 
 /**
  * 健康数据Mapper
  */
 @Mapper
 public interface HealthDataMapper extends BaseMapper<HealthData> {
-    // 使用 LambdaQueryWrapper 在 Service 层进行查询
+    // 简单查询使用 LambdaQueryWrapper 在 Service 层进行
+    
+    /**
+     * 每种数据类型的最新一条记录（按记录日期，同一天取后写入的；需要 DISTINCT ON，使用 XML 实现）
+     */
+    List<HealthData> findLatestPerType(@Param("userId") Long userId);
+    
+    /**
+     * 按 (记录日期, id) 顺序逐行读取趋势明细（游标方式，需在事务内调用）
+     */
+    void streamTrend(@Param("userId") Long userId, @Param("dataType") String dataType,
+                     @Param("from") LocalDate from, @Param("to") LocalDate to,
+                     ResultHandler<HealthData> handler);
 }
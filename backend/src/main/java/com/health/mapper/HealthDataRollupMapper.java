@@ -0,0 +1,52 @@
+package com.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 健康数据汇总Mapper
+ */
+@Mapper
+public interface HealthDataRollupMapper extends BaseMapper<HealthDataRollup> {
+    
+    /**
+     * 在当前事务内锁定 (userId, dataType) 的汇总（pg_advisory_xact_lock，提交或回滚时释放）
+     * 写明细 + 累加汇总与从明细重算都要先取这把锁：READ COMMITTED 下重算看不到未提交的明细，
+     * 不加锁时重算的 ON CONFLICT DO UPDATE 会覆盖并发事务已累加的增量。
+     * 同一事务锁多个类型时按类型名排序加锁，避免死锁
+     */
+    void lockSeries(@Param("userId") Long userId, @Param("dataType") String dataType);
+    
+    /**
+     * 把一条新明细累加到所在的日、周、月三个桶（需要 ON CONFLICT，使用 XML 实现）
+     */
+    int addSample(HealthData data);
+    
+    /**
+     * 批量累加已在内存中按桶汇总的增量（批量导入用，同一批内每个桶只出现一次）
+     */
+    int addBatch(@Param("deltas") List<HealthDataRollup> deltas);
+    
+    /**
+     * 删除某天所在的日、周、月三个桶，随后用 rebuildBuckets 从明细重算
+     */
+    int deleteBuckets(@Param("userId") Long userId, @Param("dataType") String dataType,
+                      @Param("recordDate") LocalDate recordDate);
+    
+    /**
+     * 从明细重算某天所在的日、周、月三个桶（需要 GROUP BY，使用 XML 实现）；明细已全部删除的桶不会写入
+     */
+    int rebuildBuckets(@Param("userId") Long userId, @Param("dataType") String dataType,
+                       @Param("recordDate") LocalDate recordDate);
+    
+    /**
+     * 从明细重算用户的全部汇总（回填用，调用前先锁定该用户的全部类型并删除已有的汇总）
+     */
+    int rebuildUser(@Param("userId") Long userId);
+}
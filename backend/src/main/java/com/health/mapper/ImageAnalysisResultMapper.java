@@ -0,0 +1,17 @@
+package com.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.health.entity.ImageAnalysisResult;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 图片分析结果缓存Mapper
+ */
+@Mapper
+public interface ImageAnalysisResultMapper extends BaseMapper<ImageAnalysisResult> {
+    
+    /**
+     * 写入或覆盖分析结果（需要 ON CONFLICT，使用 XML 实现）
+     */
+    int upsert(ImageAnalysisResult result);
+}
@@ -22,6 +22,12 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration}")
     private long jwtExpiration;
     
+    @Value("${jwt.tool-token-expiration:600000}")
+    private long toolTokenExpiration;
+    
+    private static final String SCOPE_CLAIM = "scope";
+    private static final String TOOL_SCOPE = "ai-tools";
+    
     /**
      * 生成 Token
      */
@@ -46,6 +52,55 @@ public class JwtTokenProvider {
                 .compact();
     }
     
+    /**
+     * 生成 AI 工具 Token
+     * 随对话请求下发给 AI 服务，仅能访问内部工具接口（按需查询该用户的病历），不能作为登录凭证
+     */
+    public String generateToolToken(Long userId) {
+        Date now = new Date();
+        Date expiryDate = new Date(now.getTime() + toolTokenExpiration);
+        
+        return Jwts.builder()
+                .subject(TOOL_SCOPE + ":" + userId)
+                .claim("userId", userId)
+                .claim(SCOPE_CLAIM, TOOL_SCOPE)
+                .issuedAt(now)
+                .expiration(expiryDate)
+                .signWith(getSigningKey())
+                .compact();
+    }
+    
+    /**
+     * 校验 AI 工具 Token，返回其中的用户ID；无效或不是工具 Token 时返回 null
+     */
+    public Long getUserIdFromToolToken(String token) {
+        try {
+            Claims claims = Jwts.parser()
+                    .verifyWith(getSigningKey())
+                    .build()
+                    .parseSignedClaims(token)
+                    .getPayload();
+            if (!TOOL_SCOPE.equals(claims.get(SCOPE_CLAIM, String.class))) {
+                return null;
+            }
+            return claims.get("userId", Long.class);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 是否为带 scope 的受限 Token（不能用于用户登录认证）
+     */
+    public boolean isScopedToken(String token) {
+        Claims claims = Jwts.parser()
+                .verifyWith(getSigningKey())
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+        return claims.get(SCOPE_CLAIM) != null;
+    }
+    
     /**
      * 从 Token 获取用户名
      */
@@ -0,0 +1,288 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.client.AiOperation;
+import com.health.dto.usage.UsageSummary;
+import com.health.entity.AiUsageDaily;
+import com.health.exception.AiQuotaExceededException;
+import com.health.mapper.AiUsageDailyMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI 用量计量与每日配额
+ *
+ * 每次 AI 调用只累加内存中的 LongAdder（按用户、日期、操作分条，分段计数无锁竞争），
+ * 定时任务取走增量后以一条批量 upsert 累加到 ai_usage_daily，对话链路上没有数据库写入。
+ * 配额判断使用「已落库合计 + 未落库增量」：已落库合计在用户当天首次调用时读取一次，此后随每次刷新更新
+ * （同时包含其他实例写入的用量），因此配额是软限制，最多偏差一个刷新周期内的用量。
+ */
+@Service
+@Slf4j
+public class AiUsageMeter {
+
+    private static final int MAX_HISTORY_DAYS = 90;
+
+    private final AiUsageDailyMapper aiUsageDailyMapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<UsageKey, UsageCounters> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Baseline> baselines = new ConcurrentHashMap<>();
+
+    @Value("${ai.usage.daily-request-quota:0}")
+    private long dailyRequestQuota;
+
+    @Value("${ai.usage.daily-token-quota:0}")
+    private long dailyTokenQuota;
+
+    @Value("${ai.usage.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    public AiUsageMeter(AiUsageDailyMapper aiUsageDailyMapper, MeterRegistry meterRegistry) {
+        this.aiUsageDailyMapper = aiUsageDailyMapper;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("ai.usage.pending", pending, Map::size)
+                .description("尚未写入 ai_usage_daily 的用量条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次 AI 调用（只更新内存计数）
+     */
+    public void record(Long userId, AiOperation operation, long promptTokens, long completionTokens, long latencyNanos) {
+        UsageCounters counters = pending.computeIfAbsent(
+                new UsageKey(userId, LocalDate.now(), operation.getTag()), key -> new UsageCounters());
+        counters.requests.increment();
+        counters.promptTokens.add(promptTokens);
+        counters.completionTokens.add(completionTokens);
+        counters.latencyMillis.add(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+    }
+
+    /**
+     * 当日请求数或 token 数达到配额时抛出 AiQuotaExceededException（未配置配额时不做任何查询）
+     */
+    public void checkQuota(Long userId) {
+        if (dailyRequestQuota <= 0 && dailyTokenQuota <= 0) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        long[] used = usedToday(userId, today);
+        boolean requestsExceeded = dailyRequestQuota > 0 && used[0] >= dailyRequestQuota;
+        boolean tokensExceeded = dailyTokenQuota > 0 && used[1] >= dailyTokenQuota;
+        if (requestsExceeded || tokensExceeded) {
+            meterRegistry.counter("ai.usage.quota.rejected", "quota", requestsExceeded ? "requests" : "tokens").increment();
+            long retryAfter = Duration.between(LocalDateTime.now(), today.plusDays(1).atStartOfDay()).toSeconds() + 1;
+            throw new AiQuotaExceededException("今日 AI 使用次数已达上限，请明天再试", retryAfter);
+        }
+    }
+
+    /**
+     * 用量概览：今日合计与配额 + 最近 days 天按操作的明细（含尚未落库的部分）
+     */
+    public UsageSummary getUsage(Long userId, int days) {
+        int range = Math.max(1, Math.min(days, MAX_HISTORY_DAYS));
+        LocalDate today = LocalDate.now();
+
+        LambdaQueryWrapper<AiUsageDaily> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(AiUsageDaily::getUserId, userId)
+               .ge(AiUsageDaily::getUsageDate, today.minusDays(range - 1L));
+        Map<UsageKey, AiUsageDaily> rows = new HashMap<>();
+        for (AiUsageDaily row : aiUsageDailyMapper.selectList(wrapper)) {
+            rows.put(new UsageKey(userId, row.getUsageDate(), row.getOperation()), row);
+        }
+        pending.forEach((key, counters) -> {
+            if (key.userId().equals(userId) && !key.date().isBefore(today.minusDays(range - 1L))) {
+                AiUsageDaily row = rows.computeIfAbsent(key, k -> AiUsageDaily.builder()
+                        .userId(userId).usageDate(k.date()).operation(k.operation())
+                        .requestCount(0L).promptTokens(0L).completionTokens(0L).latencyMs(0L)
+                        .build());
+                row.setRequestCount(row.getRequestCount() + counters.requests.sum());
+                row.setPromptTokens(row.getPromptTokens() + counters.promptTokens.sum());
+                row.setCompletionTokens(row.getCompletionTokens() + counters.completionTokens.sum());
+                row.setLatencyMs(row.getLatencyMs() + counters.latencyMillis.sum());
+            }
+        });
+
+        long todayRequests = 0;
+        long todayTokens = 0;
+        List<UsageSummary.DailyUsage> daily = new ArrayList<>();
+        for (AiUsageDaily row : rows.values()) {
+            if (today.equals(row.getUsageDate())) {
+                todayRequests += row.getRequestCount();
+                todayTokens += row.getPromptTokens() + row.getCompletionTokens();
+            }
+            daily.add(UsageSummary.DailyUsage.builder()
+                    .date(row.getUsageDate())
+                    .operation(row.getOperation())
+                    .requests(row.getRequestCount())
+                    .promptTokens(row.getPromptTokens())
+                    .completionTokens(row.getCompletionTokens())
+                    .averageLatencyMs(row.getRequestCount() > 0 ? row.getLatencyMs() / row.getRequestCount() : 0)
+                    .build());
+        }
+        daily.sort(Comparator.comparing(UsageSummary.DailyUsage::getDate).reversed()
+                .thenComparing(UsageSummary.DailyUsage::getOperation));
+
+        return UsageSummary.builder()
+                .todayRequests(todayRequests)
+                .todayTokens(todayTokens)
+                .dailyRequestQuota(Math.max(0, dailyRequestQuota))
+                .dailyTokenQuota(Math.max(0, dailyTokenQuota))
+                .days(daily)
+                .build();
+    }
+
+    /**
+     * 取走所有增量并批量累加到 ai_usage_daily；写入失败时把增量加回，下次重试
+     */
+    @Scheduled(fixedDelayString = "${ai.usage.flush-interval:10000}")
+    public void flush() {
+        LocalDate today = LocalDate.now();
+        List<AiUsageDaily> deltas = new ArrayList<>();
+        pending.forEach((key, counters) -> {
+            long requests = counters.requests.sumThenReset();
+            long promptTokens = counters.promptTokens.sumThenReset();
+            long completionTokens = counters.completionTokens.sumThenReset();
+            long latency = counters.latencyMillis.sumThenReset();
+            if (requests == 0 && promptTokens == 0 && completionTokens == 0 && latency == 0) {
+                // 过去日期的条目不会再有新增量，清理掉
+                if (key.date().isBefore(today)) {
+                    pending.remove(key, counters);
+                }
+                return;
+            }
+            deltas.add(AiUsageDaily.builder()
+                    .userId(key.userId())
+                    .usageDate(key.date())
+                    .operation(key.operation())
+                    .requestCount(requests)
+                    .promptTokens(promptTokens)
+                    .completionTokens(completionTokens)
+                    .latencyMs(latency)
+                    .build());
+        });
+        baselines.values().removeIf(baseline -> !baseline.date().equals(today));
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Set<Long> todayUsers = new HashSet<>();
+        for (int from = 0; from < deltas.size(); from += flushBatchSize) {
+            List<AiUsageDaily> batch = deltas.subList(from, Math.min(deltas.size(), from + flushBatchSize));
+            try {
+                aiUsageDailyMapper.addBatch(batch);
+                batch.stream()
+                        .filter(delta -> today.equals(delta.getUsageDate()))
+                        .forEach(delta -> todayUsers.add(delta.getUserId()));
+            } catch (Exception e) {
+                log.warn("AI 用量写入失败，{} 条增量将在下次刷新时重试: {}", batch.size(), e.getMessage());
+                batch.forEach(this::restore);
+            }
+        }
+        Timer.builder("ai.usage.flush")
+                .description("AI 用量批量写入耗时")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        refreshBaselines(today, todayUsers);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private long[] usedToday(Long userId, LocalDate today) {
+        Baseline baseline = baselines.get(userId);
+        if (baseline == null || !baseline.date().equals(today)) {
+            baseline = loadBaseline(userId, today);
+        }
+        long requests = baseline.requests();
+        long tokens = baseline.tokens();
+        for (AiOperation operation : AiOperation.values()) {
+            UsageCounters counters = pending.get(new UsageKey(userId, today, operation.getTag()));
+            if (counters != null) {
+                requests += counters.requests.sum();
+                tokens += counters.promptTokens.sum() + counters.completionTokens.sum();
+            }
+        }
+        return new long[]{requests, tokens};
+    }
+
+    private Baseline loadBaseline(Long userId, LocalDate today) {
+        List<AiUsageDaily> sums = aiUsageDailyMapper.sumByUsers(today, List.of(userId));
+        Baseline baseline = sums.isEmpty() ? new Baseline(today, 0, 0) : toBaseline(today, sums.get(0));
+        baselines.put(userId, baseline);
+        return baseline;
+    }
+
+    /**
+     * 刚写入过的用户重新读取当日合计（包含其他实例写入的用量），只刷新已缓存的用户
+     */
+    private void refreshBaselines(LocalDate today, Set<Long> userIds) {
+        userIds.retainAll(baselines.keySet());
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            for (AiUsageDaily sum : aiUsageDailyMapper.sumByUsers(today, userIds)) {
+                baselines.put(sum.getUserId(), toBaseline(today, sum));
+            }
+        } catch (Exception e) {
+            // 读取失败时丢弃缓存，下次判断配额时重新加载
+            userIds.forEach(baselines::remove);
+        }
+    }
+
+    private static Baseline toBaseline(LocalDate today, AiUsageDaily sum) {
+        return new Baseline(today,
+                nullToZero(sum.getRequestCount()),
+                nullToZero(sum.getPromptTokens()) + nullToZero(sum.getCompletionTokens()));
+    }
+
+    private void restore(AiUsageDaily delta) {
+        UsageCounters counters = pending.computeIfAbsent(
+                new UsageKey(delta.getUserId(), delta.getUsageDate(), delta.getOperation()), key -> new UsageCounters());
+        counters.requests.add(delta.getRequestCount());
+        counters.promptTokens.add(delta.getPromptTokens());
+        counters.completionTokens.add(delta.getCompletionTokens());
+        counters.latencyMillis.add(delta.getLatencyMs());
+    }
+
+    private static long nullToZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private record UsageKey(Long userId, LocalDate date, String operation) {
+    }
+
+    private record Baseline(LocalDate date, long requests, long tokens) {
+    }
+
+    private static class UsageCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder latencyMillis = new LongAdder();
+    }
+}
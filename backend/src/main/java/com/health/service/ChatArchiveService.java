@@ -0,0 +1,339 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.config.ChatArchiveProperties;
+import com.health.entity.ChatHistory;
+import com.health.entity.ChatSession;
+import com.health.mapper.ChatHistoryMapper;
+import com.health.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 冷会话归档
+ *
+ * 最后一条消息早于 cold-after 的会话由定时任务整段移出 chat_histories：消息序列化为 JSON 后用对话压缩字典
+ * deflate 成一行写入 chat_session_archives（按 user_id 哈希分区），同一事务内删除热表中的消息并标记
+ * chat_sessions.archived。会话列表不受影响（仍读 chat_sessions）。
+ * - 读取：历史分页发现会话已归档时解压归档行，与热表结果按游标合并，不写库
+ * - 继续对话：构建上下文前把整段会话恢复到热表（保留原消息 ID），restored-retention 内不会再次归档
+ * - 归档与新消息并发时，后到的消息留在热表，读取时同样合并
+ * - 消息数超过 max-messages-per-session 的会话记录 archive_skipped_at，之后不再作为候选
+ *
+ * 指标：chat.history.hot.rows / chat.history.hot.bytes（热表估算行数与总大小，每轮任务刷新）、
+ * chat.archive.bytes、chat.archive.sessions{result=archived|restored|skipped|failed}、chat.archive.run
+ */
+@Service
+@Slf4j
+public class ChatArchiveService {
+
+    private static final String CLAIM_SQL =
+            "UPDATE chat_sessions SET archived = TRUE "
+                    + "WHERE session_id = ? AND user_id = ? AND archived = FALSE AND archive_skipped_at IS NULL "
+                    + "AND last_message_time < ? AND (restored_at IS NULL OR restored_at < ?)";
+    private static final String MARK_SKIPPED_SQL =
+            "UPDATE chat_sessions SET archive_skipped_at = ? WHERE user_id = ? AND session_id = ?";
+    private static final String INSERT_ARCHIVE_SQL =
+            "INSERT INTO chat_session_archives "
+                    + "(user_id, session_id, message_count, first_message_time, last_message_time, codec, payload) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_ARCHIVE_SQL =
+            "SELECT codec, payload FROM chat_session_archives WHERE user_id = ? AND session_id = ?";
+    private static final String RESTORE_MESSAGE_SQL =
+            "INSERT INTO chat_histories (id, user_id, role, content, content_blob, content_codec, session_id, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    private static final String HOT_ROWS_SQL =
+            "SELECT GREATEST(reltuples, 0)::BIGINT FROM pg_class WHERE oid = 'chat_histories'::regclass";
+    private static final String HOT_BYTES_SQL = "SELECT pg_total_relation_size('chat_histories')";
+    private static final String ARCHIVE_BYTES_SQL =
+            "SELECT COALESCE(SUM(pg_total_relation_size(inhrelid)), 0) FROM pg_inherits "
+                    + "WHERE inhparent = 'chat_session_archives'::regclass";
+
+    private final ChatArchiveProperties properties;
+    private final ChatSessionMapper chatSessionMapper;
+    private final ChatHistoryMapper chatHistoryMapper;
+    private final ChatContentCodec contentCodec;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate sessionTransaction;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicLong hotRows = new AtomicLong();
+    private final AtomicLong hotBytes = new AtomicLong();
+    private final AtomicLong archiveBytes = new AtomicLong();
+
+    public ChatArchiveService(ChatArchiveProperties properties, ChatSessionMapper chatSessionMapper,
+                              ChatHistoryMapper chatHistoryMapper, ChatContentCodec contentCodec,
+                              JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.chatSessionMapper = chatSessionMapper;
+        this.chatHistoryMapper = chatHistoryMapper;
+        this.contentCodec = contentCodec;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        // 每个会话的归档/恢复都是独立短事务，不并入调用方事务
+        this.sessionTransaction = new TransactionTemplate(transactionManager);
+        this.sessionTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("chat.history.hot.rows", hotRows, AtomicLong::get)
+                .description("chat_histories 估算行数（pg_class.reltuples）")
+                .register(meterRegistry);
+        Gauge.builder("chat.history.hot.bytes", hotBytes, AtomicLong::get)
+                .description("chat_histories 含索引和 TOAST 的总大小")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("chat.archive.bytes", archiveBytes, AtomicLong::get)
+                .description("chat_session_archives 各分区总大小")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 定时归档冷会话，并刷新热表大小指标
+     */
+    @Scheduled(initialDelayString = "${chat.archive.initial-delay:300000}",
+               fixedDelayString = "${chat.archive.interval:3600000}")
+    public void archiveColdSessions() {
+        if (properties.isEnabled()) {
+            long start = System.nanoTime();
+            LocalDateTime cutoff = LocalDateTime.now().minus(properties.getColdAfter());
+            LocalDateTime restoredCutoff = LocalDateTime.now().minus(properties.getRestoredRetention());
+
+            LambdaQueryWrapper<ChatSession> wrapper = new LambdaQueryWrapper<>();
+            wrapper.eq(ChatSession::getArchived, false)
+                   .isNull(ChatSession::getArchiveSkippedAt)
+                   .lt(ChatSession::getLastMessageTime, cutoff)
+                   .and(w -> w.isNull(ChatSession::getRestoredAt).or().lt(ChatSession::getRestoredAt, restoredCutoff))
+                   .orderByAsc(ChatSession::getLastMessageTime)
+                   .last("LIMIT " + properties.getBatchSize());
+            List<ChatSession> candidates = chatSessionMapper.selectList(wrapper);
+
+            int archived = 0;
+            for (ChatSession session : candidates) {
+                try {
+                    if (Boolean.TRUE.equals(sessionTransaction.execute(status -> archive(session, cutoff, restoredCutoff)))) {
+                        archived++;
+                    }
+                } catch (SkipArchiveException e) {
+                    markSkipped(session);
+                } catch (Exception e) {
+                    count("failed");
+                    log.error("会话归档失败: session={} - {}", session.getSessionId(), e.getMessage());
+                }
+            }
+            meterRegistry.timer("chat.archive.run").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!candidates.isEmpty()) {
+                log.info("冷会话归档：候选 {} 个，归档 {} 个", candidates.size(), archived);
+            }
+        }
+        refreshSizeMetrics();
+    }
+
+    /**
+     * 归档单个会话（调用方提供事务）：先以条件更新认领会话，再写归档行、删除热表消息
+     */
+    private boolean archive(ChatSession session, LocalDateTime cutoff, LocalDateTime restoredCutoff) {
+        int claimed = jdbcTemplate.update(CLAIM_SQL, session.getSessionId(), session.getUserId(),
+                Timestamp.valueOf(cutoff), Timestamp.valueOf(restoredCutoff));
+        if (claimed == 0) {
+            return false;
+        }
+
+        List<ChatHistory> messages = hotMessages(session.getUserId(), session.getSessionId());
+        if (messages.size() > properties.getMaxMessagesPerSession()) {
+            // 回滚认领，留在热表
+            count("skipped");
+            throw new SkipArchiveException();
+        }
+        if (messages.isEmpty()) {
+            count("archived");
+            return true;
+        }
+
+        jdbcTemplate.update(INSERT_ARCHIVE_SQL,
+                session.getUserId(),
+                session.getSessionId(),
+                messages.size(),
+                Timestamp.valueOf(messages.get(0).getCreatedAt()),
+                Timestamp.valueOf(messages.get(messages.size() - 1).getCreatedAt()),
+                contentCodec.currentCodec(),
+                contentCodec.deflate(serialize(messages)));
+
+        LambdaQueryWrapper<ChatHistory> delete = new LambdaQueryWrapper<>();
+        delete.eq(ChatHistory::getUserId, session.getUserId())
+              .eq(ChatHistory::getSessionId, session.getSessionId())
+              .le(ChatHistory::getId, messages.get(messages.size() - 1).getId());
+        chatHistoryMapper.delete(delete);
+        count("archived");
+        return true;
+    }
+
+    /**
+     * 认领已随事务回滚：记录跳过时间，之后不再作为候选，否则这些最早的冷会话会一直排在批次最前面
+     */
+    private void markSkipped(ChatSession session) {
+        try {
+            jdbcTemplate.update(MARK_SKIPPED_SQL, Timestamp.valueOf(LocalDateTime.now()),
+                    session.getUserId(), session.getSessionId());
+            log.info("会话 {} 消息过多，跳过归档", session.getSessionId());
+        } catch (Exception e) {
+            log.error("记录会话跳过归档失败: session={} - {}", session.getSessionId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 会话是否已归档（一次主键查询）
+     */
+    public boolean isArchived(Long userId, String sessionId) {
+        LambdaQueryWrapper<ChatSession> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ChatSession::getUserId, userId)
+               .eq(ChatSession::getSessionId, sessionId);
+        ChatSession session = chatSessionMapper.selectOne(wrapper);
+        return session != null && Boolean.TRUE.equals(session.getArchived());
+    }
+
+    /**
+     * 读取已归档的消息（明文，按创建时间正序）；没有归档行时返回空
+     */
+    public List<ChatHistory> loadArchived(Long userId, String sessionId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_ARCHIVE_SQL, userId, sessionId);
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        byte[] json = contentCodec.inflate((String) rows.get(0).get("codec"), (byte[]) rows.get(0).get("payload"));
+        return deserialize(json).stream()
+                .map(message -> ChatHistory.builder()
+                        .id(message.id())
+                        .userId(userId)
+                        .sessionId(sessionId)
+                        .role(message.role())
+                        .content(message.content())
+                        .createdAt(message.createdAt())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 会话已归档时整段恢复到热表（继续对话前调用），未归档时只有一次主键查询
+     */
+    public void restoreIfArchived(Long userId, String sessionId) {
+        if (!isArchived(userId, sessionId)) {
+            return;
+        }
+        sessionTransaction.executeWithoutResult(status -> {
+            List<ChatHistory> messages = loadArchived(userId, sessionId);
+            jdbcTemplate.batchUpdate(RESTORE_MESSAGE_SQL, messages, 500, (ps, message) -> {
+                ChatContentCodec.Encoded encoded = contentCodec.encode(message.getContent());
+                ps.setLong(1, message.getId());
+                ps.setLong(2, userId);
+                ps.setString(3, message.getRole());
+                ps.setString(4, encoded.content());
+                ps.setBytes(5, encoded.blob());
+                ps.setString(6, encoded.codec());
+                ps.setString(7, sessionId);
+                ps.setTimestamp(8, Timestamp.valueOf(message.getCreatedAt()));
+            });
+            deleteArchive(userId, sessionId);
+            jdbcTemplate.update(
+                    "UPDATE chat_sessions SET archived = FALSE, restored_at = ? WHERE user_id = ? AND session_id = ?",
+                    Timestamp.valueOf(LocalDateTime.now()), userId, sessionId);
+            log.info("会话已从归档恢复: session={}, {} 条消息", sessionId, messages.size());
+        });
+        count("restored");
+    }
+
+    /**
+     * 删除会话的归档行（删除会话时调用）
+     */
+    public void deleteArchive(Long userId, String sessionId) {
+        jdbcTemplate.update("DELETE FROM chat_session_archives WHERE user_id = ? AND session_id = ?", userId, sessionId);
+    }
+
+    private List<ChatHistory> hotMessages(Long userId, String sessionId) {
+        LambdaQueryWrapper<ChatHistory> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ChatHistory::getUserId, userId)
+               .eq(ChatHistory::getSessionId, sessionId)
+               .orderByAsc(ChatHistory::getCreatedAt)
+               .orderByAsc(ChatHistory::getId);
+        List<ChatHistory> messages = chatHistoryMapper.selectList(wrapper);
+        messages.forEach(contentCodec::contentOf);
+        return messages;
+    }
+
+    private byte[] serialize(List<ChatHistory> messages) {
+        List<ArchivedMessage> payload = messages.stream()
+                .map(m -> new ArchivedMessage(m.getId(), m.getRole(), m.getContent(), m.getCreatedAt()))
+                .collect(Collectors.toList());
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new RuntimeException("会话归档序列化失败: " + e.getMessage());
+        }
+    }
+
+    private List<ArchivedMessage> deserialize(byte[] json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<ArchivedMessage>>() { });
+        } catch (IOException e) {
+            throw new RuntimeException("会话归档解析失败: " + e.getMessage());
+        }
+    }
+
+    private void refreshSizeMetrics() {
+        try {
+            hotRows.set(jdbcTemplate.queryForObject(HOT_ROWS_SQL, Long.class));
+            hotBytes.set(jdbcTemplate.queryForObject(HOT_BYTES_SQL, Long.class));
+            archiveBytes.set(jdbcTemplate.queryForObject(ARCHIVE_BYTES_SQL, Long.class));
+        } catch (Exception e) {
+            log.warn("刷新对话表大小指标失败: {}", e.getMessage());
+        }
+    }
+
+    private void count(String result) {
+        Counter.builder("chat.archive.sessions")
+                .description("冷会话归档与恢复次数")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 归档 payload 中的单条消息
+     */
+    private record ArchivedMessage(Long id, String role, String content, LocalDateTime createdAt) {
+    }
+
+    /**
+     * 会话过大不归档：抛出以回滚认领
+     */
+    private static class SkipArchiveException extends RuntimeException {
+        SkipArchiveException() {
+            super("会话消息数超过 max-messages-per-session，跳过归档");
+        }
+    }
+}
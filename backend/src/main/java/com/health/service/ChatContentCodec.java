@@ -0,0 +1,198 @@
+package com.health.service;
+
+import com.health.entity.ChatHistory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 对话内容压缩编解码
+ *
+ * 超过 threshold 字节的消息用预置字典的 deflate 压缩后存入 content_blob，content 列置空，
+ * content_codec 记录编码（deflate-字典版本），因此字典可以更换：新消息用当前字典编码，旧消息仍按各自版本解码。
+ * 字典放在 classpath:chat-dictionary/{版本}.txt，内容为回复中高频出现的短语，越常用越靠后
+ * （可用 scripts/train_chat_dictionary.py 从线上消息样本生成）。
+ *
+ * 只在真正需要内容时解码：历史分页返回前、构建 AI 上下文时。
+ * 指标：chat.history.codec{op=encode|decode} 编解码耗时，chat.history.codec.bytes{kind=raw|stored} 压缩前后字节数
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChatContentCodec {
+
+    private static final String CODEC_PREFIX = "deflate-";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.history.compression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.history.compression.threshold:1024}")
+    private int threshold;
+
+    @Value("${chat.history.compression.dictionary:v1}")
+    private String dictionaryVersion;
+
+    @Value("${chat.history.compression.level:6}")
+    private int level;
+
+    private final Map<String, byte[]> dictionaries = new HashMap<>();
+
+    @PostConstruct
+    public void loadDictionaries() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath*:chat-dictionary/*.txt");
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            if (filename == null) {
+                continue;
+            }
+            try (InputStream in = resource.getInputStream()) {
+                dictionaries.put(CODEC_PREFIX + filename.substring(0, filename.length() - ".txt".length()), in.readAllBytes());
+            }
+        }
+        if (enabled && !dictionaries.containsKey(currentCodec())) {
+            throw new IllegalStateException("对话压缩字典不存在: chat-dictionary/" + dictionaryVersion + ".txt");
+        }
+        log.info("对话内容压缩：enabled={}, threshold={}B, 当前编码 {}, 已加载字典 {}",
+                enabled, threshold, currentCodec(), dictionaries.keySet());
+    }
+
+    /**
+     * 按存储格式编码：未超过阈值或压缩收益不足时原样保存（blob、codec 为空）
+     */
+    public Encoded encode(String content) {
+        if (!enabled || content == null) {
+            return new Encoded(content, null, null);
+        }
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < threshold) {
+            return new Encoded(content, null, null);
+        }
+
+        byte[] compressed = deflate(raw);
+        // 压缩后至少省下 10% 才值得付出解码成本
+        if (compressed.length > raw.length * 0.9) {
+            return new Encoded(content, null, null);
+        }
+        meterRegistry.summary("chat.history.codec.bytes", "kind", "raw").record(raw.length);
+        meterRegistry.summary("chat.history.codec.bytes", "kind", "stored").record(compressed.length);
+        return new Encoded(null, compressed, currentCodec());
+    }
+
+    /**
+     * 用当前字典压缩任意字节（编码名见 currentCodec），会话归档也使用同一套字典
+     */
+    public byte[] deflate(byte[] raw) {
+        byte[] dictionary = dictionaries.get(currentCodec());
+        if (dictionary == null) {
+            throw new RuntimeException("对话压缩字典不存在: " + currentCodec());
+        }
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            record("encode", start);
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 返回消息内容，必要时解压（结果写回 content 并释放 blob，同一对象重复调用不会再次解压）
+     */
+    public String contentOf(ChatHistory message) {
+        if (message.getContentCodec() == null || message.getContentBlob() == null) {
+            return message.getContent();
+        }
+        message.setContent(new String(inflate(message.getContentCodec(), message.getContentBlob()), StandardCharsets.UTF_8));
+        message.setContentBlob(null);
+        message.setContentCodec(null);
+        return message.getContent();
+    }
+
+    /**
+     * 按编码对应的字典解压
+     */
+    public byte[] inflate(String codec, byte[] blob) {
+        byte[] dictionary = dictionaries.get(codec);
+        if (dictionary == null) {
+            throw new RuntimeException("未知的对话内容编码: " + codec);
+        }
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(blob.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(dictionary);
+                    continue;
+                }
+                if (n == 0 && !inflater.finished()) {
+                    throw new DataFormatException("数据不完整");
+                }
+                out.write(buffer, 0, n);
+            }
+            record("decode", start);
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new RuntimeException("对话内容解压失败: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String currentCodec() {
+        return CODEC_PREFIX + dictionaryVersion;
+    }
+
+    private void record(String op, long start) {
+        Timer.builder("chat.history.codec")
+                .description("对话内容压缩编解码耗时")
+                .tag("op", op)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 存储形式：content 与 (blob, codec) 二选一
+     */
+    public record Encoded(String content, byte[] blob, String codec) {
+    }
+}
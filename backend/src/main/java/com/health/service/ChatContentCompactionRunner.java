@@ -0,0 +1,92 @@
+package com.health.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 存量对话内容压缩任务
+ *
+ * 007 迁移之前写入的消息都是明文，开启 chat.history.compression.migrate-on-startup 后启动时在后台线程中
+ * 按主键分批扫描超过阈值的明文消息并压缩回写（可重复执行，已压缩的行会被跳过）。完成后关闭该配置，
+ * 再对 chat_histories 执行 VACUUM FULL 归还空间。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "chat.history.compression.migrate-on-startup", havingValue = "true")
+public class ChatContentCompactionRunner implements ApplicationRunner {
+
+    private static final String SELECT_SQL =
+            "SELECT id, content FROM chat_histories "
+                    + "WHERE id > ? AND content_codec IS NULL AND octet_length(content) >= ? ORDER BY id LIMIT ?";
+    private static final String UPDATE_SQL =
+            "UPDATE chat_histories SET content = NULL, content_blob = ?, content_codec = ? "
+                    + "WHERE id = ? AND content_codec IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatContentCodec contentCodec;
+
+    @Value("${chat.history.compression.migrate-batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.history.compression.migrate-pause:50}")
+    private long pauseMillis;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!contentCodec.isEnabled()) {
+            log.warn("chat.history.compression.enabled=false，跳过存量对话内容压缩");
+            return;
+        }
+        Thread worker = new Thread(this::compactAll, "chat-content-compaction");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void compactAll() {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        long scanned = 0;
+        long compressed = 0;
+        try {
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_SQL, lastId, contentCodec.getThreshold(), batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<Object[]> updates = new ArrayList<>(rows.size());
+                for (Map<String, Object> row : rows) {
+                    long id = ((Number) row.get("id")).longValue();
+                    lastId = id;
+                    ChatContentCodec.Encoded encoded = contentCodec.encode((String) row.get("content"));
+                    if (encoded.codec() != null) {
+                        updates.add(new Object[]{encoded.blob(), encoded.codec(), id});
+                    }
+                }
+                if (!updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+                }
+                scanned += rows.size();
+                compressed += updates.size();
+                log.debug("存量对话内容压缩进度：已扫描 {} 条，已压缩 {} 条，当前 ID {}", scanned, compressed, lastId);
+                Thread.sleep(pauseMillis);
+            }
+            log.info("存量对话内容压缩完成：扫描 {} 条，压缩 {} 条，耗时 {} ms", scanned, compressed,
+                    System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("存量对话内容压缩在 ID {} 之后失败（可重新执行继续）: {}", lastId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.entity.ChatContextSummary;
+import com.health.entity.ChatHistory;
+import com.health.mapper.ChatContextSummaryMapper;
+import com.health.mapper.ChatHistoryMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 对话上下文构建器
+ *
+ * 每次对话只取会话最近 maxTurns 条未摘要的消息，按 token 预算从新到旧保留；
+ * 超出预算的旧消息、以及比这 maxTurns 条更早的未摘要消息都增量折叠进滚动摘要
+ * （每条一行，摘要本身也有预算，超出时丢弃最早的行）。
+ * 因此无论会话多长，每条消息的查询量和请求体大小都基本恒定。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChatContextBuilder {
+
+    private final ChatHistoryMapper chatHistoryMapper;
+    private final ChatContextSummaryMapper chatContextSummaryMapper;
+    private final ChatHistoryWriter chatHistoryWriter;
+    private final ChatContentCodec chatContentCodec;
+
+    // 窗口之前的积压消息每批折叠的条数
+    private static final int FOLD_BATCH_SIZE = 500;
+
+    @Value("${chat.context.token-budget:3000}")
+    private int tokenBudget;
+
+    @Value("${chat.context.max-turns:40}")
+    private int maxTurns;
+
+    @Value("${chat.context.summary-token-budget:600}")
+    private int summaryTokenBudget;
+
+    @Value("${chat.context.summary-line-chars:80}")
+    private int summaryLineChars;
+
+    /**
+     * 构建会话上下文
+     *
+     * @param beforeId 当前用户消息 ID，窗口只包含它之前的消息（当前消息单独发送）；在写入当前消息之前构建时传 null
+     */
+    public ContextWindow build(Long userId, String sessionId, Long beforeId) {
+        ChatContextSummary summary = chatContextSummaryMapper.selectOne(new LambdaQueryWrapper<ChatContextSummary>()
+                .eq(ChatContextSummary::getUserId, userId)
+                .eq(ChatContextSummary::getSessionId, sessionId));
+        long summarizedUntilId = summary != null ? summary.getSummarizedUntilId() : 0L;
+
+        // 多取一条：存在第 maxTurns + 1 条说明窗口之前还有未摘要的消息
+        List<ChatHistory> pending = chatHistoryWriter.pendingFor(userId, sessionId);
+        List<ChatHistory> newestFirst = mergePending(
+                chatHistoryMapper.findByIdRange(userId, sessionId, summarizedUntilId, beforeId, false, maxTurns + 1),
+                pending, summarizedUntilId, beforeId, maxTurns + 1);
+        if (newestFirst.size() > maxTurns) {
+            newestFirst = new ArrayList<>(newestFirst.subList(0, maxTurns));
+            // 窗口之外的未摘要消息同样视为滑出窗口，按 ID 分批折叠进摘要，不能跳过
+            summary = foldOlder(userId, sessionId, summary, pending, newestFirst.get(maxTurns - 1).getId());
+        }
+        newestFirst.forEach(chatContentCodec::contentOf);
+
+        // 从新到旧保留，直到用完 token 预算（至少保留最近一条）
+        int used = 0;
+        int keep = 0;
+        for (ChatHistory message : newestFirst) {
+            int tokens = estimateTokens(message.getContent());
+            if (keep > 0 && used + tokens > tokenBudget) {
+                break;
+            }
+            used += tokens;
+            keep++;
+        }
+
+        List<ChatHistory> window = new ArrayList<>(newestFirst.subList(0, keep));
+        Collections.reverse(window);
+
+        List<ChatHistory> evicted = new ArrayList<>(newestFirst.subList(keep, newestFirst.size()));
+        Collections.reverse(evicted);
+        if (!evicted.isEmpty()) {
+            summary = foldIntoSummary(userId, sessionId, summary, evicted);
+        }
+
+        return new ContextWindow(window, summary != null ? summary.getSummary() : null);
+    }
+
+    /**
+     * 把摘要之后、窗口之前（ID 小于 windowStartId）的全部消息按 ID 正序分批折叠进摘要
+     * 老会话上线后第一次对话、或最近 maxTurns 条都在 token 预算内时，窗口之前会积累未摘要的消息
+     */
+    private ChatContextSummary foldOlder(Long userId, String sessionId, ChatContextSummary summary,
+                                         List<ChatHistory> pending, long windowStartId) {
+        long afterId = summary != null ? summary.getSummarizedUntilId() : 0L;
+        while (true) {
+            List<ChatHistory> batch = chatHistoryMapper.findByIdRange(userId, sessionId, afterId, windowStartId,
+                    true, FOLD_BATCH_SIZE);
+            boolean last = batch.size() < FOLD_BATCH_SIZE;
+            // 尚未落库的消息：最后一批合并剩余全部，否则只合并本批 ID 范围内的
+            long upperId = last ? windowStartId : batch.get(batch.size() - 1).getId() + 1;
+            long lowerId = afterId;
+            Map<Long, ChatHistory> merged = new TreeMap<>();
+            batch.forEach(message -> merged.put(message.getId(), message));
+            pending.stream()
+                    .filter(message -> message.getId() > lowerId && message.getId() < upperId)
+                    .forEach(message -> merged.putIfAbsent(message.getId(), message));
+            if (merged.isEmpty()) {
+                return summary;
+            }
+            List<ChatHistory> evicted = new ArrayList<>(merged.values());
+            evicted.forEach(chatContentCodec::contentOf);
+            summary = foldIntoSummary(userId, sessionId, summary, evicted);
+            afterId = summary.getSummarizedUntilId();
+            if (last) {
+                return summary;
+            }
+        }
+    }
+
+    /**
+     * 合并尚未落库的消息（write-behind 模式），保持按 ID 倒序、最多 limit 条
+     */
+    private List<ChatHistory> mergePending(List<ChatHistory> newestFirst, List<ChatHistory> pending,
+                                           long summarizedUntilId, Long beforeId, int limit) {
+        if (pending.isEmpty()) {
+            return newestFirst;
+        }
+        Map<Long, ChatHistory> merged = new HashMap<>();
+        newestFirst.forEach(message -> merged.put(message.getId(), message));
+        for (ChatHistory message : pending) {
+            if (message.getId() > summarizedUntilId && (beforeId == null || message.getId() < beforeId)) {
+                merged.putIfAbsent(message.getId(), message);
+            }
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparing(ChatHistory::getId).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 把滑出窗口的消息（按 ID 正序）追加到摘要末尾，并裁掉超出摘要预算的最早行；返回写入后的摘要
+     */
+    private ChatContextSummary foldIntoSummary(Long userId, String sessionId, ChatContextSummary summary,
+                                               List<ChatHistory> evicted) {
+        StringBuilder text = new StringBuilder(summary != null && summary.getSummary() != null ? summary.getSummary() : "");
+        for (ChatHistory message : evicted) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append("user".equals(message.getRole()) ? "用户: " : "助手: ")
+                .append(abbreviate(message.getContent()));
+        }
+
+        String trimmed = text.toString();
+        while (estimateTokens(trimmed) > summaryTokenBudget && trimmed.indexOf('\n') >= 0) {
+            trimmed = trimmed.substring(trimmed.indexOf('\n') + 1);
+        }
+
+        int turns = (summary != null && summary.getSummarizedTurns() != null ? summary.getSummarizedTurns() : 0) + evicted.size();
+        ChatContextSummary updated = ChatContextSummary.builder()
+                .sessionId(sessionId)
+                .userId(userId)
+                .summary(trimmed)
+                .summarizedUntilId(evicted.get(evicted.size() - 1).getId())
+                .summarizedTurns(turns)
+                .build();
+        chatContextSummaryMapper.upsert(updated);
+        log.debug("会话 {} 折叠 {} 条消息进摘要，累计 {} 条", sessionId, evicted.size(), turns);
+        return updated;
+    }
+
+    private String abbreviate(String content) {
+        if (content == null) {
+            return "";
+        }
+        String singleLine = content.replaceAll("\\s+", " ").trim();
+        return singleLine.length() > summaryLineChars
+                ? singleLine.substring(0, summaryLineChars) + "..."
+                : singleLine;
+    }
+
+    /**
+     * 粗略估算 token 数：中日韩字符按 1 个 token，其余字符按 4 个字符 1 个 token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 发送给 AI 的上下文：窗口内的最近消息（时间正序）+ 更早消息的滚动摘要
+     */
+    public record ContextWindow(List<ChatHistory> history, String summary) {
+    }
+}
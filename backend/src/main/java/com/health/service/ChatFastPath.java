@@ -0,0 +1,118 @@
+package com.health.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对话快速通道
+ *
+ * "记录体重70kg"、"提醒我8点吃药"这类结构化指令由 ChatIntentRecognizer 在本地识别，
+ * 直接写入健康数据或提醒并返回模板回复，不经过准入排队、不计入 AI 用量，也不调用 AI。
+ * 写入与两条对话消息在同一个短事务内完成；识别不出或写入失败时返回空，由调用方照常交给 AI。
+ *
+ * 指标 chat.fast.path{result=served|fallthrough|failed}，chat.fast.path.ratio 为快速通道处理的消息占比
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatFastPath {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final Map<String, String> REPEAT_LABELS = Map.of(
+            "once", "",
+            "daily", "每天 ");
+
+    private final ChatIntentRecognizer recognizer;
+    private final HealthDataService healthDataService;
+    private final ReminderService reminderService;
+    private final ChatHistoryWriter chatHistoryWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.fast-path.enabled:true}")
+    private boolean enabled;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder fallthrough = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @PostConstruct
+    public void registerMetrics() {
+        registerCounter("served", served);
+        registerCounter("fallthrough", fallthrough);
+        registerCounter("failed", failed);
+        Gauge.builder("chat.fast.path.ratio", this, ChatFastPath::servedRatio)
+                .description("由快速通道处理（未调用 AI）的对话消息占比")
+                .register(meterRegistry);
+    }
+
+    private void registerCounter(String result, LongAdder adder) {
+        FunctionCounter.builder("chat.fast.path", adder, LongAdder::sum)
+                .description("对话消息经快速通道的处理结果")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 尝试用快速通道处理消息：成功时已写入用户消息和回复，返回回复内容
+     */
+    public Optional<String> tryHandle(Long userId, String sessionId, String message) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<ChatIntentRecognizer.ChatIntent> intent = recognizer.recognize(message);
+        if (intent.isEmpty()) {
+            fallthrough.increment();
+            return Optional.empty();
+        }
+
+        try {
+            String reply = transactionTemplate.execute(status -> {
+                String content = execute(userId, intent.get());
+                chatHistoryWriter.write(userId, sessionId, "user", message);
+                chatHistoryWriter.write(userId, sessionId, "assistant", content);
+                return content;
+            });
+            served.increment();
+            return Optional.ofNullable(reply);
+        } catch (RuntimeException e) {
+            // 写入失败（如数值不被接受）时不吞掉消息，交给 AI 按原流程处理
+            log.warn("快速通道处理失败，转交 AI: {}", e.getMessage());
+            failed.increment();
+            return Optional.empty();
+        }
+    }
+
+    private String execute(Long userId, ChatIntentRecognizer.ChatIntent intent) {
+        if (intent instanceof ChatIntentRecognizer.ChatIntent.RecordHealth record) {
+            healthDataService.recordData(userId, record.dataType(), record.value(), null);
+            return String.format("已为您记录%s：%s %s。可以在「健康数据」页面查看变化趋势。",
+                    record.label(), record.value(), record.unit());
+        }
+        ChatIntentRecognizer.ChatIntent.SetReminder reminder = (ChatIntentRecognizer.ChatIntent.SetReminder) intent;
+        reminderService.createReminder(userId, reminder.reminderType(), reminder.content(),
+                reminder.time(), reminder.repeatType(), null);
+        return String.format("好的，已为您设置提醒：%s%s %s。可以在「健康提醒」页面修改或关闭。",
+                REPEAT_LABELS.getOrDefault(reminder.repeatType(), ""),
+                reminder.time().format(TIME_FORMAT), reminder.content());
+    }
+
+    private double servedRatio() {
+        long hits = served.sum();
+        long total = hits + fallthrough.sum() + failed.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,406 @@
+package com.health.service;
+
+import com.health.entity.ChatHistory;
+import com.health.entity.ChatSession;
+import com.health.mapper.ChatHistoryMapper;
+import com.health.mapper.ChatSessionMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对话消息写入器
+ *
+ * sync 模式（默认）：在调用方事务内逐条插入消息并更新会话摘要。
+ * write-behind 模式：消息在调用方事务提交后进入有界内存队列，由后台线程每 flush-interval 毫秒或每 batch-size 条
+ * 合并为一次 JDBC 批量插入，会话摘要按批聚合后更新。
+ * - 消息 ID 预先从序列按块分配，调用方立即拿到 ID（上下文窗口以 ID 划界）
+ * - 队列满或写入器已关闭时退回同步插入
+ * - 关闭时先停止接收，再把队列全部写完
+ * - 尚未落库的消息通过 pendingFor 提供给历史查询和上下文构建，保证读己之写
+ * - 多实例部署时预分配的 ID 块会交错，ID 只在单实例内与写入顺序一致
+ * 两种模式下超过阈值的内容都按 ChatContentCodec 压缩后落库，返回给调用方和留在队列里的消息始终是明文
+ */
+@Component
+@Slf4j
+public class ChatHistoryWriter {
+
+    public static final String MODE_SYNC = "sync";
+    public static final String MODE_WRITE_BEHIND = "write-behind";
+
+    private static final String DEFAULT_SESSION_TITLE = "新对话";
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_histories (id, user_id, role, content, content_blob, content_codec, session_id, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ALLOCATE_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('chat_histories', 'id')) FROM generate_series(1, ?)";
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final ChatHistoryMapper chatHistoryMapper;
+    private final ChatSessionMapper chatSessionMapper;
+    private final ChatContentCodec contentCodec;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate flushTransaction;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.history.write-mode:sync}")
+    private String mode;
+
+    @Value("${chat.history.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.history.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.history.write-behind.flush-interval:20}")
+    private long flushIntervalMillis;
+
+    @Value("${chat.history.write-behind.id-block-size:50}")
+    private int idBlockSize;
+
+    @Value("${chat.history.write-behind.shutdown-timeout:30000}")
+    private long shutdownTimeoutMillis;
+
+    private BlockingQueue<ChatHistory> queue;
+    private final Map<String, Set<ChatHistory>> pendingBySession = new ConcurrentHashMap<>();
+    private final Queue<Long> idBlock = new ArrayDeque<>();
+    private volatile boolean accepting;
+    private Thread flusher;
+
+    public ChatHistoryWriter(ChatHistoryMapper chatHistoryMapper, ChatSessionMapper chatSessionMapper,
+                             ChatContentCodec contentCodec, JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.chatHistoryMapper = chatHistoryMapper;
+        this.chatSessionMapper = chatSessionMapper;
+        this.contentCodec = contentCodec;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        // 批量写入和同步退回可能发生在调用方事务的 afterCommit 回调里，必须使用独立事务
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isWriteBehind()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("chat.history.write.queue", queue, BlockingQueue::size)
+                .description("等待批量写入的对话消息数")
+                .register(meterRegistry);
+        accepting = true;
+        flusher = new Thread(this::flushLoop, "chat-history-writer");
+        flusher.start();
+        log.info("对话消息 write-behind 模式已启用：batch-size={}, flush-interval={}ms, queue-capacity={}",
+                batchSize, flushIntervalMillis, queueCapacity);
+    }
+
+    /**
+     * 关闭时停止接收新消息，并等待队列写完
+     */
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        accepting = false;
+        try {
+            flusher.join(shutdownTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("关闭时仍有 {} 条对话消息未写入", queue.size());
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return MODE_WRITE_BEHIND.equals(mode);
+    }
+
+    /**
+     * 写入一条消息，返回带 ID 和创建时间的消息
+     * sync 模式需在调用方事务中调用；write-behind 模式在调用方事务提交后才入队
+     */
+    public ChatHistory write(Long userId, String sessionId, String role, String content) {
+        ChatHistory message = ChatHistory.builder()
+                .userId(userId)
+                .role(role)
+                .content(content)
+                .sessionId(sessionId)
+                .build();
+
+        if (!isWriteBehind()) {
+            insertCompressed(message);
+            touchSessions(List.of(message));
+            count("sync");
+            return message;
+        }
+
+        message.setId(nextId());
+        message.setCreatedAt(LocalDateTime.now());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(message);
+                }
+            });
+        } else {
+            enqueue(message);
+        }
+        return message;
+    }
+
+    /**
+     * 以压缩后的形式插入一条消息（自增 ID），插入后恢复明文内容
+     */
+    private void insertCompressed(ChatHistory message) {
+        ChatContentCodec.Encoded encoded = contentCodec.encode(message.getContent());
+        if (encoded.codec() == null) {
+            chatHistoryMapper.insert(message);
+            return;
+        }
+        String content = message.getContent();
+        message.setContent(null);
+        message.setContentBlob(encoded.blob());
+        message.setContentCodec(encoded.codec());
+        try {
+            chatHistoryMapper.insert(message);
+        } finally {
+            message.setContent(content);
+            message.setContentBlob(null);
+            message.setContentCodec(null);
+        }
+    }
+
+    /**
+     * 尚未落库的消息（write-behind 模式），按 ID 正序
+     */
+    public List<ChatHistory> pendingFor(Long userId, String sessionId) {
+        if (!isWriteBehind()) {
+            return List.of();
+        }
+        Set<ChatHistory> pending = pendingBySession.get(sessionKey(userId, sessionId));
+        if (pending == null || pending.isEmpty()) {
+            return List.of();
+        }
+        List<ChatHistory> messages = new ArrayList<>(pending);
+        messages.sort(Comparator.comparing(ChatHistory::getId));
+        return messages;
+    }
+
+    /**
+     * 阻塞直到该会话已入队的消息全部落库（删除会话前、开启事务之前调用，避免删除后又被写回）
+     * 只等待这一个会话，最长 shutdown-timeout
+     */
+    public void flush(Long userId, String sessionId) {
+        if (!isWriteBehind()) {
+            return;
+        }
+        String key = sessionKey(userId, sessionId);
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        while (pendingBySession.containsKey(key) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(Math.max(1, flushIntervalMillis / 2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void enqueue(ChatHistory message) {
+        pendingBySession.computeIfAbsent(sessionKey(message.getUserId(), message.getSessionId()),
+                key -> ConcurrentHashMap.newKeySet()).add(message);
+        if (accepting && queue.offer(message)) {
+            count("queued");
+            return;
+        }
+        // 队列已满或正在关闭：退回同步写入
+        count("fallback");
+        try {
+            flushTransaction.executeWithoutResult(status -> insertBatch(List.of(message)));
+        } finally {
+            removePending(List.of(message));
+        }
+    }
+
+    private void flushLoop() {
+        List<ChatHistory> batch = new ArrayList<>(batchSize);
+        while (accepting || !queue.isEmpty()) {
+            try {
+                ChatHistory first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                        ChatHistory next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                flushBatch(batch);
+            } catch (InterruptedException e) {
+                // 关闭时由 accepting 控制退出，这里继续把队列写完
+                Thread.interrupted();
+            } catch (Exception e) {
+                log.error("对话消息批量写入线程异常: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushBatch(List<ChatHistory> batch) {
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    flushTransaction.executeWithoutResult(status -> insertBatch(batch));
+                    meterRegistry.summary("chat.history.write.batch").record(batch.size());
+                    meterRegistry.timer("chat.history.write.flush").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return;
+                } catch (Exception e) {
+                    if (attempt >= MAX_FLUSH_ATTEMPTS) {
+                        log.error("对话消息批量写入失败，改为逐条写入: {}", e.getMessage());
+                        break;
+                    }
+                    sleepQuietly(100L << attempt);
+                }
+            }
+            // 逐条写入，隔离个别异常数据
+            for (ChatHistory message : batch) {
+                try {
+                    flushTransaction.executeWithoutResult(status -> insertBatch(List.of(message)));
+                } catch (Exception e) {
+                    count("lost");
+                    log.error("对话消息写入失败，已丢弃: id={}, session={} - {}",
+                            message.getId(), message.getSessionId(), e.getMessage());
+                }
+            }
+        } finally {
+            removePending(batch);
+        }
+    }
+
+    /**
+     * 批量插入消息（显式 ID），并按会话聚合更新会话摘要
+     */
+    private void insertBatch(List<ChatHistory> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, message) -> {
+            ChatContentCodec.Encoded encoded = contentCodec.encode(message.getContent());
+            ps.setLong(1, message.getId());
+            ps.setLong(2, message.getUserId());
+            ps.setString(3, message.getRole());
+            ps.setString(4, encoded.content());
+            ps.setBytes(5, encoded.blob());
+            ps.setString(6, encoded.codec());
+            ps.setString(7, message.getSessionId());
+            ps.setTimestamp(8, Timestamp.valueOf(message.getCreatedAt()));
+        });
+        touchSessions(batch);
+        count("batched", batch.size());
+    }
+
+    private void touchSessions(List<ChatHistory> messages) {
+        Map<String, ChatSession> sessions = new LinkedHashMap<>();
+        for (ChatHistory message : messages) {
+            LocalDateTime createdAt = message.getCreatedAt() != null ? message.getCreatedAt() : LocalDateTime.now();
+            ChatSession session = sessions.computeIfAbsent(sessionKey(message.getUserId(), message.getSessionId()),
+                    key -> ChatSession.builder()
+                    .sessionId(message.getSessionId())
+                    .userId(message.getUserId())
+                    .title(DEFAULT_SESSION_TITLE)
+                    .lastMessageTime(createdAt)
+                    .messageCount(0)
+                    .build());
+            session.setMessageCount(session.getMessageCount() + 1);
+            if (createdAt.isAfter(session.getLastMessageTime())) {
+                session.setLastMessageTime(createdAt);
+            }
+            boolean userMessage = "user".equals(message.getRole())
+                    && message.getContent() != null && !message.getContent().isEmpty();
+            if (userMessage && session.getFirstMessage() == null) {
+                session.setFirstMessage(message.getContent());
+                session.setTitle(buildSessionTitle(message.getContent()));
+            }
+        }
+        sessions.values().forEach(chatSessionMapper::touch);
+    }
+
+    private synchronized long nextId() {
+        if (idBlock.isEmpty()) {
+            idBlock.addAll(jdbcTemplate.queryForList(ALLOCATE_IDS_SQL, Long.class, idBlockSize));
+        }
+        return idBlock.remove();
+    }
+
+    private void removePending(List<ChatHistory> messages) {
+        for (ChatHistory message : messages) {
+            String key = sessionKey(message.getUserId(), message.getSessionId());
+            pendingBySession.computeIfPresent(key, (k, pending) -> {
+                pending.remove(message);
+                return pending.isEmpty() ? null : pending;
+            });
+        }
+    }
+
+    private static String buildSessionTitle(String firstMessage) {
+        return firstMessage.length() > 30
+                ? firstMessage.substring(0, 30) + "..."
+                : firstMessage;
+    }
+
+    private static String sessionKey(Long userId, String sessionId) {
+        return userId + ":" + sessionId;
+    }
+
+    private void count(String outcome) {
+        count(outcome, 1);
+    }
+
+    private void count(String outcome, int amount) {
+        meterRegistry.counter("chat.history.writes", "outcome", outcome).increment(amount);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
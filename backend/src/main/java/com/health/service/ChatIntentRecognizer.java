@@ -0,0 +1,357 @@
+package com.health.service;
+
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 对话意图识别（本地快速通道）
+ *
+ * 关键词在启动时编译成一棵字典树，一次扫描找出消息中的指标、动作、填充词和疑问词；
+ * 再用每种指标各自的正则在关键词之后解析数值。只有整句都能被解释（没有多余内容、没有疑问、
+ * 数值在合理范围内）时才返回意图，其余一律交给 AI，宁可漏判也不误判。
+ */
+@Component
+public class ChatIntentRecognizer {
+
+    /** 超过该长度的消息不走快速通道 */
+    private static final int MAX_MESSAGE_LENGTH = 40;
+
+    private static final String PREFIX = "\\s*(?:是|为|有|:|：)?\\s*";
+
+    private static final Pattern TIME = Pattern.compile(
+            "(凌晨|早上|早晨|上午|中午|下午|傍晚|晚上)?\\s*(\\d{1,2})\\s*(?:[:：]\\s*(\\d{1,2})|点\\s*(半|(\\d{1,2})\\s*分?)?)");
+
+    private static final Pattern IGNORABLE = Pattern.compile("[\\s,，.。!！~～、了]+");
+
+    private final KeywordTrie trie = new KeywordTrie();
+
+    private final Map<String, Metric> metrics = new HashMap<>();
+
+    public ChatIntentRecognizer() {
+        metric("weight", "体重", "(\\d{2,3}(?:\\.\\d{1,2})?)\\s*(kg|KG|公斤|千克|斤)?", 20, 300, "kg", "体重", "称重");
+        metric("blood_pressure", "血压", "(\\d{2,3})\\s*[/／]\\s*(\\d{2,3})\\s*(?:mmHg)?", 0, 0, "mmHg", "血压", "测血压");
+        metric("blood_sugar", "血糖", "(\\d{1,2}(?:\\.\\d{1,2})?)\\s*(?:mmol/L|mmol)?", 1, 35, "mmol/L", "血糖", "测血糖", "空腹血糖");
+        metric("heart_rate", "心率", "(\\d{2,3})\\s*(?:次/分|次|bpm)?", 30, 220, "次/分", "心率", "脉搏");
+        metric("temperature", "体温", "(\\d{2}(?:\\.\\d)?)\\s*(?:℃|度)?", 34, 43, "℃", "体温");
+        metric("sleep", "睡眠", "(\\d{1,2}(?:\\.\\d)?)\\s*(?:个)?\\s*(?:小时|h)", 0, 24, "小时", "睡眠", "睡了");
+        metric("exercise", "运动", "(\\d{1,3})\\s*(?:分钟|min)", 1, 600, "分钟", "运动", "锻炼");
+        metric("water", "饮水", "(\\d{2,4})\\s*(?:ml|毫升)", 10, 10000, "ml", "喝水", "饮水", "喝了");
+        metric("steps", "步数", "(\\d{2,6})\\s*步?", 1, 200000, "步", "步数", "走了");
+        metric("calories", "热量", "(\\d{2,5})\\s*(?:kcal|千卡|大卡)", 10, 20000, "kcal", "热量", "卡路里", "摄入");
+
+        keywords(Category.RECORD, null, "记录", "记一下", "记下", "录入", "登记", "测了", "量了");
+        keywords(Category.REMIND, null, "提醒", "叫我", "通知我");
+        keywords(Category.REPEAT, "daily", "每天", "每日", "天天");
+        keywords(Category.FILLER, null, "帮我", "请", "一下", "我的", "我", "今天", "今早", "早上", "晚上",
+                "刚才", "刚刚", "的", "要", "记得", "该", "去", "按时");
+        // 出现即放弃：疑问、求建议或相对日期（明天等需要 AI 理解）
+        keywords(Category.QUESTION, null, "吗", "怎么", "多少", "为什么", "是否", "正常", "偏高", "偏低", "建议",
+                "如何", "什么", "?", "？", "明天", "后天", "下周", "取消", "删除", "修改");
+
+        keywords(Category.REMINDER_TYPE, "medication", "吃药", "服药", "用药", "打针", "胰岛素");
+        keywords(Category.REMINDER_TYPE, "water", "喝水");
+        keywords(Category.REMINDER_TYPE, "exercise", "运动", "锻炼", "散步", "跑步");
+        keywords(Category.REMINDER_TYPE, "checkup", "复查", "体检", "复诊", "测血压", "测血糖");
+    }
+
+    /**
+     * 识别消息意图；无法高置信度解释整句时返回空，由调用方交给 AI
+     */
+    public Optional<ChatIntent> recognize(String message) {
+        if (message == null) {
+            return Optional.empty();
+        }
+        String text = message.trim();
+        if (text.isEmpty() || text.length() > MAX_MESSAGE_LENGTH) {
+            return Optional.empty();
+        }
+
+        List<KeywordMatch> matches = trie.scan(text);
+        if (matches.stream().anyMatch(m -> m.has(Category.QUESTION))) {
+            return Optional.empty();
+        }
+        if (matches.stream().anyMatch(m -> m.has(Category.REMIND))) {
+            return recognizeReminder(text, matches);
+        }
+        return recognizeRecord(text, matches);
+    }
+
+    /**
+     * 记录类：恰好一种指标，指标之前只有动作词/填充词，之后只有数值和单位
+     */
+    private Optional<ChatIntent> recognizeRecord(String text, List<KeywordMatch> matches) {
+        KeywordMatch metricMatch = null;
+        for (KeywordMatch match : matches) {
+            Keyword keyword = match.get(Category.METRIC);
+            if (keyword == null) {
+                continue;
+            }
+            if (metricMatch != null && !metricMatch.get(Category.METRIC).code().equals(keyword.code())) {
+                return Optional.empty();
+            }
+            if (metricMatch == null) {
+                metricMatch = match;
+            }
+        }
+        if (metricMatch == null || !coveredByFiller(text, 0, metricMatch.start(), matches)) {
+            return Optional.empty();
+        }
+
+        Metric metric = metrics.get(metricMatch.get(Category.METRIC).code());
+        Matcher value = metric.pattern().matcher(text);
+        value.region(metricMatch.end(), text.length());
+        if (!value.lookingAt() || !isIgnorable(text.substring(value.end()))) {
+            return Optional.empty();
+        }
+
+        if ("blood_pressure".equals(metric.dataType())) {
+            int systolic = Integer.parseInt(value.group(1));
+            int diastolic = Integer.parseInt(value.group(2));
+            if (systolic < 60 || systolic > 260 || diastolic < 30 || diastolic > 160 || systolic <= diastolic) {
+                return Optional.empty();
+            }
+            return Optional.of(new ChatIntent.RecordHealth(metric.dataType(), metric.label(),
+                    systolic + "/" + diastolic, metric.unit()));
+        }
+
+        BigDecimal number = new BigDecimal(value.group(1));
+        if ("weight".equals(metric.dataType()) && "斤".equals(value.group(2))) {
+            number = number.divide(BigDecimal.valueOf(2), 2, RoundingMode.HALF_UP).stripTrailingZeros();
+        }
+        if (number.compareTo(BigDecimal.valueOf(metric.min())) < 0 || number.compareTo(BigDecimal.valueOf(metric.max())) > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new ChatIntent.RecordHealth(metric.dataType(), metric.label(),
+                number.toPlainString(), metric.unit()));
+    }
+
+    /**
+     * 提醒类：必须有明确时间，去掉动作词、重复词、填充词和时间后剩下的就是提醒内容
+     */
+    private Optional<ChatIntent> recognizeReminder(String text, List<KeywordMatch> matches) {
+        Matcher time = TIME.matcher(text);
+        if (!time.find()) {
+            return Optional.empty();
+        }
+        LocalTime reminderTime = parseTime(time);
+        if (reminderTime == null || time.find()) {
+            return Optional.empty();
+        }
+        time.reset().find();
+
+        String repeatType = "once";
+        String reminderType = "custom";
+        StringBuilder content = new StringBuilder();
+        int cursor = 0;
+        for (KeywordMatch match : matches) {
+            if (match.start() < cursor) {
+                continue;
+            }
+            if (match.has(Category.REPEAT)) {
+                repeatType = match.get(Category.REPEAT).code();
+            }
+            if (match.has(Category.REMINDER_TYPE) && "custom".equals(reminderType)) {
+                reminderType = match.get(Category.REMINDER_TYPE).code();
+            }
+            boolean dropped = match.has(Category.REMIND) || match.has(Category.REPEAT) || match.has(Category.FILLER);
+            if (dropped) {
+                appendOutsideTime(content, text, cursor, match.start(), time);
+                cursor = match.end();
+            }
+        }
+        appendOutsideTime(content, text, cursor, text.length(), time);
+
+        String subject = IGNORABLE.matcher(content).replaceAll("");
+        if (subject.isEmpty() || subject.length() > 20 || subject.chars().anyMatch(Character::isDigit)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ChatIntent.SetReminder(reminderType, subject, reminderTime, repeatType));
+    }
+
+    private static void appendOutsideTime(StringBuilder content, String text, int from, int to, Matcher time) {
+        for (int i = from; i < to; i++) {
+            if (i < time.start() || i >= time.end()) {
+                content.append(text.charAt(i));
+            }
+        }
+    }
+
+    private static LocalTime parseTime(Matcher time) {
+        String period = time.group(1);
+        int hour = Integer.parseInt(time.group(2));
+        int minute = 0;
+        if (time.group(3) != null) {
+            minute = Integer.parseInt(time.group(3));
+        } else if ("半".equals(time.group(4))) {
+            minute = 30;
+        } else if (time.group(5) != null) {
+            minute = Integer.parseInt(time.group(5));
+        }
+        if (hour > 23 || minute > 59) {
+            return null;
+        }
+        // 没有时段的凌晨钟点（如"3点"）多半指下午，含义不明确时交给 AI
+        if (period == null && hour >= 1 && hour <= 5) {
+            return null;
+        }
+        if (period != null) {
+            switch (period) {
+                case "下午", "傍晚", "晚上" -> {
+                    if (hour < 12) {
+                        hour += 12;
+                    }
+                }
+                case "中午" -> {
+                    if (hour < 3) {
+                        hour += 12;
+                    }
+                }
+                case "凌晨" -> {
+                    if (hour == 12) {
+                        hour = 0;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return LocalTime.of(hour, minute);
+    }
+
+    /**
+     * [from, to) 内的每个字符都属于动作词/填充词，或是可忽略的空白标点
+     */
+    private static boolean coveredByFiller(String text, int from, int to, List<KeywordMatch> matches) {
+        int cursor = from;
+        for (KeywordMatch match : matches) {
+            if (match.start() >= to) {
+                break;
+            }
+            if (match.start() < cursor) {
+                continue;
+            }
+            if (!(match.has(Category.RECORD) || match.has(Category.FILLER))) {
+                return false;
+            }
+            if (!isIgnorable(text.substring(cursor, match.start()))) {
+                return false;
+            }
+            cursor = match.end();
+        }
+        return isIgnorable(text.substring(cursor, to));
+    }
+
+    private static boolean isIgnorable(String text) {
+        return text.isEmpty() || IGNORABLE.matcher(text).matches();
+    }
+
+    private void metric(String dataType, String label, String valueRegex, double min, double max, String unit,
+                        String... words) {
+        metrics.put(dataType, new Metric(dataType, label, Pattern.compile(PREFIX + valueRegex), min, max, unit));
+        keywords(Category.METRIC, dataType, words);
+    }
+
+    private void keywords(Category category, String code, String... words) {
+        for (String word : words) {
+            trie.add(word, new Keyword(category, code));
+        }
+    }
+
+    /**
+     * 识别出的意图
+     */
+    public sealed interface ChatIntent {
+
+        /** 记录健康数据，value 为 HealthDataService.recordData 接受的格式 */
+        record RecordHealth(String dataType, String label, String value, String unit) implements ChatIntent {
+        }
+
+        /** 创建提醒 */
+        record SetReminder(String reminderType, String content, LocalTime time, String repeatType) implements ChatIntent {
+        }
+    }
+
+    private enum Category {
+        METRIC, RECORD, REMIND, REPEAT, FILLER, QUESTION, REMINDER_TYPE
+    }
+
+    private record Keyword(Category category, String code) {
+    }
+
+    private record Metric(String dataType, String label, Pattern pattern, double min, double max, String unit) {
+    }
+
+    private record KeywordMatch(int start, int end, List<Keyword> keywords) {
+
+        boolean has(Category category) {
+            return get(category) != null;
+        }
+
+        Keyword get(Category category) {
+            for (Keyword keyword : keywords) {
+                if (keyword.category() == category) {
+                    return keyword;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 关键词字典树：从左到右扫描，每个位置取最长匹配，匹配之间不重叠
+     */
+    private static final class KeywordTrie {
+
+        private final Node root = new Node();
+
+        void add(String word, Keyword keyword) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent(word.charAt(i), c -> new Node());
+            }
+            node.keywords.add(keyword);
+        }
+
+        List<KeywordMatch> scan(String text) {
+            List<KeywordMatch> matches = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                Node node = root;
+                int end = -1;
+                List<Keyword> found = null;
+                for (int j = i; j < text.length(); j++) {
+                    node = node.children.get(text.charAt(j));
+                    if (node == null) {
+                        break;
+                    }
+                    if (!node.keywords.isEmpty()) {
+                        end = j + 1;
+                        found = node.keywords;
+                    }
+                }
+                if (found != null) {
+                    matches.add(new KeywordMatch(i, end, found));
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            return matches;
+        }
+
+        private static final class Node {
+            private final Map<Character, Node> children = new HashMap<>();
+            private final List<Keyword> keywords = new ArrayList<>(1);
+        }
+    }
+}
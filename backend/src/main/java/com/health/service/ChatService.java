@@ -1,28 +1,55 @@
 package com.health.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.client.AiAdmissionScheduler;
+import com.health.client.AiGatewayClient;
+import com.health.client.AiOperation;
+import com.health.dto.ai.AiChatRequest;
+import com.health.dto.ai.AiResponse;
+import com.health.dto.chat.ChatHistoryPage;
 import com.health.dto.chat.ChatRequest;
 import com.health.dto.chat.ChatResponse;
+import com.health.entity.ChatContextSummary;
 import com.health.entity.ChatHistory;
+import com.health.entity.ChatSession;
 import com.health.entity.MedicalRecord;
+import com.health.entity.MedicalRecordImage;
 import com.health.entity.User;
 import com.health.entity.UserProfile;
+import com.health.exception.AiOverloadedException;
+import com.health.mapper.ChatContextSummaryMapper;
 import com.health.mapper.ChatHistoryMapper;
+import com.health.mapper.ChatSessionMapper;
+import com.health.mapper.MedicalRecordImageMapper;
 import com.health.mapper.MedicalRecordMapper;
 import com.health.mapper.UserProfileMapper;
 import com.health.mapper.UserMapper;
+import com.health.security.JwtTokenProvider;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -37,78 +64,306 @@ public class ChatService {
     private final UserMapper userMapper;
     private final UserProfileMapper userProfileMapper;
     private final MedicalRecordMapper medicalRecordMapper;
-    private final RestTemplate restTemplate;
+    private final MedicalRecordImageMapper medicalRecordImageMapper;
+    private final AiGatewayClient aiGatewayClient;
+    private final AiAdmissionScheduler admissionScheduler;
+    private final AiUsageMeter aiUsageMeter;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatContextBuilder chatContextBuilder;
+    private final ChatContextSummaryMapper chatContextSummaryMapper;
+    private final JwtTokenProvider tokenProvider;
+    private final ChatSessionMapper chatSessionMapper;
+    private final ImageAnalysisService imageAnalysisService;
+    private final ChatHistoryWriter chatHistoryWriter;
+    private final ChatContentCodec chatContentCodec;
+    private final ChatArchiveService chatArchiveService;
+    private final ChatFastPath chatFastPath;
+    private final ModelRouter modelRouter;
+    private final MeterRegistry meterRegistry;
     
-    @Value("${ai.service.url:http://localhost:8001}")
-    private String aiServiceUrl;
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
+    
+    @Value("${ai.stream.timeout:180000}")
+    private long streamTimeoutMillis;
+    
+    @Value("${chat.history.page-size:50}")
+    private int historyPageSize;
+    
+    @Value("${chat.context.parallelism:4}")
+    private int contextParallelism;
+    
+    @Value("${chat.context.queue-capacity:200}")
+    private int contextQueueCapacity;
+    
+    private ThreadPoolExecutor contextExecutor;
+    
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        contextExecutor = new ThreadPoolExecutor(contextParallelism, contextParallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(contextQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-context-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        Gauge.builder("chat.context.queue", contextExecutor, executor -> executor.getQueue().size())
+                .description("等待执行的对话上下文查询数")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        contextExecutor.shutdownNow();
+    }
     
     /**
      * 发送消息并获取 AI 响应
+     * 
+     * "记录体重70kg"这类结构化指令先走本地快速通道（见 ChatFastPath），直接写入并返回模板回复。
+     * 其余消息先通过准入调度获取 AI 调用许可（排队已满时 429，此时不写入任何消息），再分三个阶段执行，调用 AI 期间不持有数据库连接：
+     * 1. 并行加载用户、档案、病历数量和对话窗口，随后短事务写入用户消息
+     * 2. 无事务：调用 AI 服务（可能耗时数十秒）
+     * 3. 短事务：保存 AI 回复
      */
-    @Transactional
     public ChatResponse chat(Long userId, ChatRequest request) {
-        User user = userMapper.selectById(userId);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
+        String sessionId = resolveSessionId(request);
+        Optional<String> fastReply = chatFastPath.tryHandle(userId, sessionId, request.getMessage());
+        if (fastReply.isPresent()) {
+            return ChatResponse.builder()
+                    .role("assistant")
+                    .content(fastReply.get())
+                    .sessionId(sessionId)
+                    .createdAt(LocalDateTime.now())
+                    .build();
         }
         
-        // 生成或使用会话ID
-        String sessionId = request.getSessionId();
-        if (sessionId == null || sessionId.isEmpty()) {
-            sessionId = UUID.randomUUID().toString();
+        aiUsageMeter.checkQuota(userId);
+        ChatContext context;
+        String aiResponse;
+        try (AiAdmissionScheduler.Permit permit = admissionScheduler.acquire(userId, AiOperation.CHAT)) {
+            context = prepareChat(userId, sessionId, request);
+            
+            // 调用 AI 服务
+            long start = System.nanoTime();
+            aiResponse = callAiService(request.getMessage(), userId, context);
+            long elapsed = System.nanoTime() - start;
+            modelRouter.recordLatency(context.modelTier(), elapsed);
+            aiUsageMeter.record(userId, AiOperation.CHAT, promptTokens(request.getMessage(), context),
+                    ChatContextBuilder.estimateTokens(aiResponse), elapsed);
         }
         
-        // 保存用户消息
-        ChatHistory userMessage = ChatHistory.builder()
-                .userId(userId)
-                .role("user")
-                .content(request.getMessage())
-                .sessionId(sessionId)
-                .build();
-        chatHistoryMapper.insert(userMessage);
-        
-        // 获取用户档案作为上下文
-        LambdaQueryWrapper<UserProfile> profileWrapper = new LambdaQueryWrapper<>();
-        profileWrapper.eq(UserProfile::getUserId, userId);
-        UserProfile profile = userProfileMapper.selectOne(profileWrapper);
-        
-        // 获取用户的病历记录
-        LambdaQueryWrapper<MedicalRecord> recordWrapper = new LambdaQueryWrapper<>();
-        recordWrapper.eq(MedicalRecord::getUserId, userId)
-                     .orderByDesc(MedicalRecord::getCreatedAt);
-        List<MedicalRecord> medicalRecords = medicalRecordMapper.selectList(recordWrapper);
-        
-        // 获取历史对话
-        LambdaQueryWrapper<ChatHistory> historyWrapper = new LambdaQueryWrapper<>();
-        historyWrapper.eq(ChatHistory::getUserId, userId)
-                      .eq(ChatHistory::getSessionId, sessionId)
-                      .orderByAsc(ChatHistory::getCreatedAt);
-        List<ChatHistory> history = chatHistoryMapper.selectList(historyWrapper);
-        
-        // 调用 AI 服务
-        String aiResponse = callAiService(request.getMessage(), profile, medicalRecords, history);
-        
         // 保存 AI 响应
-        ChatHistory assistantMessage = ChatHistory.builder()
-                .userId(userId)
-                .role("assistant")
-                .content(aiResponse)
-                .sessionId(sessionId)
-                .build();
-        chatHistoryMapper.insert(assistantMessage);
+        saveReply(userId, context.sessionId(), aiResponse);
         
         return ChatResponse.builder()
                 .role("assistant")
                 .content(aiResponse)
-                .sessionId(sessionId)
+                .sessionId(context.sessionId())
                 .createdAt(LocalDateTime.now())
                 .build();
     }
     
+    /**
+     * 发送消息并以 SSE 流式返回 AI 响应
+     * 
+     * 与 chat 相同，事务只覆盖用户消息写入，上下文并行加载；AI 回复在流结束后单独写入 chat_histories。
+     * 准入许可一直持有到流结束；快速通道命中时整条回复作为一个 delta 立即返回
+     */
+    public SseEmitter chatStream(Long userId, ChatRequest request) {
+        String sessionId = resolveSessionId(request);
+        Optional<String> fastReply = chatFastPath.tryHandle(userId, sessionId, request.getMessage());
+        if (fastReply.isPresent()) {
+            SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+            sendEvent(emitter, "session", Map.of("sessionId", sessionId));
+            sendEvent(emitter, "delta", Map.of("content", fastReply.get()));
+            sendEvent(emitter, "done", Map.of("sessionId", sessionId));
+            emitter.complete();
+            return emitter;
+        }
+        
+        aiUsageMeter.checkQuota(userId);
+        AiAdmissionScheduler.Permit permit = admissionScheduler.acquire(userId, AiOperation.CHAT_STREAM);
+        ChatContext context;
+        try {
+            context = prepareChat(userId, sessionId, request);
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        AiChatRequest aiRequest = buildChatRequest(request.getMessage(), userId, context);
+        
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        StringBuilder received = new StringBuilder();
+        
+        sendEvent(emitter, "session", Map.of("sessionId", sessionId));
+        
+        long start = System.nanoTime();
+        CompletableFuture<String> stream = aiGatewayClient.stream(AiOperation.CHAT_STREAM, aiRequest, delta -> {
+            received.append(delta);
+            sendEvent(emitter, "delta", Map.of("content", delta));
+        });
+        
+        // 客户端断开或超时时取消上游请求
+        emitter.onTimeout(() -> stream.cancel(true));
+        emitter.onError(e -> stream.cancel(true));
+        
+        stream.whenComplete((content, ex) -> {
+            permit.close();
+            long elapsed = System.nanoTime() - start;
+            modelRouter.recordLatency(context.modelTier(), elapsed);
+            aiUsageMeter.record(userId, AiOperation.CHAT_STREAM, promptTokens(request.getMessage(), context),
+                    ChatContextBuilder.estimateTokens(content != null ? content : received.toString()),
+                    elapsed);
+            String aiResponse = content;
+            if (ex != null) {
+                log.error("AI 流式响应失败: {}", ex.getMessage());
+                aiResponse = received.length() > 0
+                        ? received.toString()
+                        : "抱歉，AI 服务暂时不可用，请稍后再试。";
+            }
+            try {
+                saveReply(userId, sessionId, aiResponse);
+            } catch (Exception e) {
+                log.error("保存 AI 流式响应失败: {}", e.getMessage());
+            }
+            if (ex != null && received.length() == 0) {
+                sendEvent(emitter, "error", Map.of("message", aiResponse));
+            }
+            sendEvent(emitter, "done", Map.of("sessionId", sessionId));
+            emitter.complete();
+        });
+        
+        return emitter;
+    }
+    
+    /**
+     * 对话第一阶段：并行加载 AI 所需上下文，再在一个短事务内写入用户消息
+     * 
+     * 用户、档案、病历数量和对话窗口四个查询互不依赖，同时提交到有界线程池，耗时取决于最慢的一个；
+     * 对话窗口在用户消息写入前读取，因此天然不含当前消息。等待期间调用线程不持有数据库连接，
+     * 避免请求线程占着连接等待查询线程取连接。上下文就绪后按消息和会话长度选择模型档位（见 ModelRouter）
+     */
+    private ChatContext prepareChat(Long userId, String sessionId, ChatRequest request) {
+        long start = System.nanoTime();
+        
+        CompletableFuture<User> user = loadStage("user", () -> userMapper.selectById(userId));
+        CompletableFuture<UserProfile> profile = loadStage("profile", () -> findProfile(userId));
+        CompletableFuture<Long> recordCount = loadStage("records", () -> countMedicalRecords(userId));
+        CompletableFuture<ChatContextBuilder.ContextWindow> window =
+                loadStage("history", () -> {
+                    // 继续已归档的会话时先整段恢复到热表
+                    chatArchiveService.restoreIfArchived(userId, sessionId);
+                    return chatContextBuilder.build(userId, sessionId, null);
+                });
+        
+        if (await(user) == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        ChatContextBuilder.ContextWindow history = await(window);
+        ChatContext context = new ChatContext(
+                sessionId,
+                await(profile),
+                await(recordCount),
+                history.history(),
+                history.summary(),
+                modelRouter.route(request.getMessage(), history.history().size(), history.summary() != null));
+        
+        // 保存用户消息（消息与会话摘要在同一个短事务内写入）
+        transactionTemplate.executeWithoutResult(status -> saveMessage(userId, sessionId, "user", request.getMessage()));
+        
+        recordStage("total", System.nanoTime() - start);
+        return context;
+    }
+    
+    /**
+     * 在上下文线程池中执行一个加载阶段并记录耗时；线程池饱和时由调用线程直接执行
+     */
+    private <T> CompletableFuture<T> loadStage(String stage, Supplier<T> query) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return query.get();
+            } finally {
+                recordStage(stage, System.nanoTime() - start);
+            }
+        }, contextExecutor);
+    }
+    
+    private void recordStage(String stage, long elapsedNanos) {
+        Timer.builder("chat.context.stage")
+                .description("对话上下文各加载阶段耗时")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * 一次对话调用 AI 所需的上下文
+     */
+    private record ChatContext(String sessionId, UserProfile profile, long medicalRecordCount,
+                               List<ChatHistory> history, String historySummary, ModelRouter.Tier modelTier) {
+    }
+    
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (Exception e) {
+            log.debug("SSE 发送失败（客户端可能已断开）: {}", e.getMessage());
+        }
+    }
+    
+    private String resolveSessionId(ChatRequest request) {
+        String sessionId = request.getSessionId();
+        if (sessionId == null || sessionId.isEmpty()) {
+            sessionId = UUID.randomUUID().toString();
+        }
+        return sessionId;
+    }
+    
+    /**
+     * 写入一条消息并更新会话摘要（调用方需处于事务中；write-behind 模式下事务提交后才入队批量写入）
+     */
+    private ChatHistory saveMessage(Long userId, String sessionId, String role, String content) {
+        return chatHistoryWriter.write(userId, sessionId, role, content);
+    }
+    
+    /**
+     * 保存 AI 回复（消息与会话摘要在同一个短事务内写入）
+     */
+    private void saveReply(Long userId, String sessionId, String content) {
+        transactionTemplate.executeWithoutResult(status -> saveMessage(userId, sessionId, "assistant", content));
+    }
+    
+    private UserProfile findProfile(Long userId) {
+        LambdaQueryWrapper<UserProfile> profileWrapper = new LambdaQueryWrapper<>();
+        profileWrapper.eq(UserProfile::getUserId, userId);
+        return userProfileMapper.selectOne(profileWrapper);
+    }
+    
+    private long countMedicalRecords(Long userId) {
+        LambdaQueryWrapper<MedicalRecord> recordWrapper = new LambdaQueryWrapper<>();
+        recordWrapper.eq(MedicalRecord::getUserId, userId);
+        Long count = medicalRecordMapper.selectCount(recordWrapper);
+        return count != null ? count : 0;
+    }
+    
     /**
      * 分析指定病历的图片
+     * 不开启事务：各查询独立取还连接，图片分析期间不占用连接池
      */
-    @Transactional
     public ChatResponse analyzeRecordImage(Long userId, Long recordId, String message) {
         User user = userMapper.selectById(userId);
         if (user == null) {
@@ -128,13 +383,16 @@ public class ChatService {
             throw new RuntimeException("该病历没有上传图片");
         }
         
-        // 获取用户档案
-        LambdaQueryWrapper<UserProfile> profileWrapper = new LambdaQueryWrapper<>();
-        profileWrapper.eq(UserProfile::getUserId, userId);
-        UserProfile profile = userProfileMapper.selectOne(profileWrapper);
+        // 未指定问题时优先使用上传后的预分析结果
+        String aiResponse = message == null || message.isBlank() ? findPreAnalysis(record) : null;
         
-        // 调用 AI 图片分析
-        String aiResponse = callAiImageAnalysis(message, record.getFilePath(), profile);
+        if (aiResponse == null) {
+            // 获取用户档案
+            UserProfile profile = findProfile(userId);
+            
+            // 调用 AI 图片分析（同一图片、同一问题的结果走缓存；配额和用量只在实际调用视觉模型时计算）
+            aiResponse = callAiImageAnalysis(userId, message, record.getFilePath(), record.getContentHash(), profile);
+        }
         
         return ChatResponse.builder()
                 .role("assistant")
@@ -144,74 +402,31 @@ public class ChatService {
                 .build();
     }
     
+    /**
+     * 主图的预分析结果：主图单独上传时在病历行上，来自图片表时在对应图片行上
+     */
+    private String findPreAnalysis(MedicalRecord record) {
+        if (ImageAnalysisPipeline.DONE.equals(record.getAnalysisStatus())) {
+            return record.getAnalysisResult();
+        }
+        LambdaQueryWrapper<MedicalRecordImage> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(MedicalRecordImage::getRecordId, record.getId())
+               .eq(MedicalRecordImage::getFilePath, record.getFilePath())
+               .eq(MedicalRecordImage::getAnalysisStatus, ImageAnalysisPipeline.DONE)
+               .last("LIMIT 1");
+        MedicalRecordImage image = medicalRecordImageMapper.selectOne(wrapper);
+        return image != null ? image.getAnalysisResult() : null;
+    }
+    
     /**
      * 调用 Python AI 服务
      */
-    private String callAiService(String message, UserProfile profile, List<MedicalRecord> records, List<ChatHistory> history) {
+    private String callAiService(String message, Long userId, ChatContext context) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("message", message);
+            AiResponse response = aiGatewayClient.post(AiOperation.CHAT, buildChatRequest(message, userId, context));
             
-            // 添加用户健康档案信息
-            if (profile != null) {
-                Map<String, Object> profileData = new HashMap<>();
-                profileData.put("realName", profile.getRealName());
-                profileData.put("gender", profile.getGender());
-                profileData.put("birthDate", profile.getBirthDate() != null ? profile.getBirthDate().toString() : null);
-                profileData.put("height", profile.getHeight());
-                profileData.put("weight", profile.getWeight());
-                profileData.put("bloodType", profile.getBloodType());
-                profileData.put("allergies", profile.getAllergies());
-                profileData.put("medicalHistory", profile.getMedicalHistory());
-                profileData.put("familyHistory", profile.getFamilyHistory());
-                requestBody.put("userProfile", profileData);
-            }
-            
-            // 添加病历记录信息（包含图片 URL）
-            if (records != null && !records.isEmpty()) {
-                List<Map<String, Object>> recordsData = records.stream()
-                        .map(r -> {
-                            Map<String, Object> record = new HashMap<>();
-                            record.put("id", r.getId());
-                            record.put("title", r.getTitle());
-                            record.put("recordType", r.getRecordType());
-                            record.put("description", r.getDescription());
-                            record.put("hospital", r.getHospital());
-                            record.put("doctor", r.getDoctor());
-                            record.put("recordDate", r.getRecordDate() != null ? r.getRecordDate().toString() : null);
-                            record.put("fileName", r.getFileName());
-                            record.put("imageUrl", r.getFilePath()); // OSS 图片 URL
-                            return record;
-                        })
-                        .collect(Collectors.toList());
-                requestBody.put("medicalRecords", recordsData);
-            }
-            
-            // 添加对话历史
-            List<Map<String, String>> historyData = history.stream()
-                    .map(h -> {
-                        Map<String, String> msg = new HashMap<>();
-                        msg.put("role", h.getRole());
-                        msg.put("content", h.getContent());
-                        return msg;
-                    })
-                    .collect(Collectors.toList());
-            requestBody.put("history", historyData);
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = restTemplate.postForObject(
-                    aiServiceUrl + "/api/chat",
-                    entity,
-                    Map.class
-            );
-            
-            if (response != null && response.containsKey("response")) {
-                return (String) response.get("response");
+            if (response != null && response.response() != null) {
+                return response.response();
             }
             
             return "抱歉，AI 服务暂时不可用，请稍后再试。";
@@ -223,45 +438,41 @@ public class ChatService {
     }
     
     /**
-     * 调用 AI 图片分析服务
+     * 估算发送给 AI 的 token 数：当前消息 + 上下文窗口 + 滚动摘要
      */
-    private String callAiImageAnalysis(String message, String imageUrl, UserProfile profile) {
+    private static long promptTokens(String message, ChatContext context) {
+        long tokens = ChatContextBuilder.estimateTokens(message) + ChatContextBuilder.estimateTokens(context.historySummary());
+        for (ChatHistory history : context.history()) {
+            tokens += ChatContextBuilder.estimateTokens(history.getContent());
+        }
+        return tokens;
+    }
+    
+    /**
+     * 构建 AI 对话请求（同步与流式接口共用）
+     * 病历只发送引用（数量 + 短期工具令牌），智能体需要时再通过内部工具接口查询
+     */
+    private AiChatRequest buildChatRequest(String message, Long userId, ChatContext context) {
+        AiChatRequest.RecordsRef recordsRef = context.medicalRecordCount() > 0
+                ? new AiChatRequest.RecordsRef(context.medicalRecordCount(), tokenProvider.generateToolToken(userId))
+                : null;
+        return new AiChatRequest(
+                message,
+                AiChatRequest.Profile.from(context.profile()),
+                recordsRef,
+                context.history(),
+                context.historySummary(),
+                context.modelTier().tag());
+    }
+    
+    /**
+     * 调用 AI 图片分析服务（结果缓存见 ImageAnalysisService）；准入被拒绝或超出配额时向上抛出，返回 429
+     */
+    private String callAiImageAnalysis(Long userId, String message, String imageUrl, String contentHash, UserProfile profile) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("message", message != null ? message : "请分析这张医疗图片");
-            requestBody.put("imageUrl", imageUrl);
-            
-            // 添加用户档案
-            if (profile != null) {
-                Map<String, Object> profileData = new HashMap<>();
-                profileData.put("realName", profile.getRealName());
-                profileData.put("gender", profile.getGender());
-                profileData.put("height", profile.getHeight());
-                profileData.put("weight", profile.getWeight());
-                profileData.put("bloodType", profile.getBloodType());
-                profileData.put("allergies", profile.getAllergies());
-                profileData.put("medicalHistory", profile.getMedicalHistory());
-                requestBody.put("userProfile", profileData);
-            }
-            
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = restTemplate.postForObject(
-                    aiServiceUrl + "/api/analyze-image-url",
-                    entity,
-                    Map.class
-            );
-            
-            if (response != null && response.containsKey("response")) {
-                return (String) response.get("response");
-            }
-            
-            return "抱歉，图片分析服务暂时不可用。";
-            
+            return imageAnalysisService.analyze(userId, message, imageUrl, contentHash, profile, true);
+        } catch (AiOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("调用图片分析服务失败: {}", e.getMessage());
             return "抱歉，图片分析服务暂时不可用。错误信息: " + e.getMessage();
@@ -269,64 +480,154 @@ public class ChatService {
     }
     
     /**
-     * 获取对话历史
+     * 获取对话历史（游标分页）
+     *
+     * 按 (created_at, id) 键集分页，默认最新在前；客户端把上一页返回的 nextCursor 传回即可继续向更早（或更晚）翻页。
+     * 压缩存储的消息只在组装本页结果时解压（多取的一条不解压）；已归档的会话从归档行读取后合并，只读不恢复
+     *
+     * @param cursor 上一页返回的游标，首页传 null
+     * @param limit  每页条数，默认 chat.history.page-size，最大 MAX_HISTORY_PAGE_SIZE
+     * @param asc    true 时从最早的消息开始正序翻页
      */
     @Transactional(readOnly = true)
-    public List<ChatResponse> getChatHistory(Long userId, String sessionId) {
-        LambdaQueryWrapper<ChatHistory> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(ChatHistory::getUserId, userId)
-               .eq(ChatHistory::getSessionId, sessionId)
-               .orderByAsc(ChatHistory::getCreatedAt);
-        return chatHistoryMapper.selectList(wrapper).stream()
-                .map(h -> ChatResponse.builder()
-                        .role(h.getRole())
-                        .content(h.getContent())
-                        .sessionId(h.getSessionId())
-                        .createdAt(h.getCreatedAt())
-                        .build())
+    public ChatHistoryPage getChatHistory(Long userId, String sessionId, String cursor, Integer limit, boolean asc) {
+        int pageSize = limit == null || limit <= 0 ? historyPageSize : Math.min(limit, MAX_HISTORY_PAGE_SIZE);
+        
+        LocalDateTime cursorTime = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            HistoryCursor decoded = decodeCursor(cursor);
+            cursorTime = decoded.createdAt();
+            cursorId = decoded.id();
+        }
+        
+        // 多取一条用于判断是否还有下一页
+        List<ChatHistory> rows = chatHistoryMapper.findPage(userId, sessionId, cursorTime, cursorId, asc, pageSize + 1);
+        rows = mergeExtra(rows, chatHistoryWriter.pendingFor(userId, sessionId), cursorTime, cursorId, asc, pageSize + 1);
+        if (chatArchiveService.isArchived(userId, sessionId)) {
+            rows = mergeExtra(rows, chatArchiveService.loadArchived(userId, sessionId), cursorTime, cursorId, asc, pageSize + 1);
+        }
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        
+        ChatHistory last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        return ChatHistoryPage.builder()
+                .items(rows.stream()
+                        .map(h -> ChatResponse.builder()
+                                .role(h.getRole())
+                                .content(chatContentCodec.contentOf(h))
+                                .sessionId(h.getSessionId())
+                                .createdAt(h.getCreatedAt())
+                                .build())
+                        .collect(Collectors.toList()))
+                .nextCursor(hasMore ? encodeCursor(last.getCreatedAt(), last.getId()) : null)
+                .hasMore(hasMore)
+                .build();
+    }
+    
+    /**
+     * 合并不在热表中的消息（write-behind 队列中尚未落库的、已归档会话的），保持与 findPage 相同的 (created_at, id) 顺序和游标条件
+     */
+    private static List<ChatHistory> mergeExtra(List<ChatHistory> rows, List<ChatHistory> extra,
+                                                LocalDateTime cursorTime, Long cursorId, boolean asc, int limit) {
+        if (extra.isEmpty()) {
+            return rows;
+        }
+        Comparator<ChatHistory> order = Comparator.comparing(ChatHistory::getCreatedAt).thenComparing(ChatHistory::getId);
+        if (!asc) {
+            order = order.reversed();
+        }
+        Map<Long, ChatHistory> merged = new LinkedHashMap<>();
+        rows.forEach(row -> merged.put(row.getId(), row));
+        for (ChatHistory message : extra) {
+            boolean afterCursor = true;
+            if (cursorTime != null) {
+                int cmp = message.getCreatedAt().compareTo(cursorTime);
+                if (cmp == 0) {
+                    cmp = message.getId().compareTo(cursorId);
+                }
+                afterCursor = asc ? cmp > 0 : cmp < 0;
+            }
+            if (afterCursor) {
+                merged.putIfAbsent(message.getId(), message);
+            }
+        }
+        return merged.values().stream()
+                .sorted(order)
+                .limit(limit)
                 .collect(Collectors.toList());
     }
     
+    private static String encodeCursor(LocalDateTime createdAt, Long id) {
+        String raw = createdAt + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解析游标；Base64、分隔符、时间或 ID 任一格式错误都视为无效游标
+     */
+    private static HistoryCursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(",", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(raw);
+            }
+            return new HistoryCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+    
+    private record HistoryCursor(LocalDateTime createdAt, Long id) {
+    }
+    
     /**
      * 获取所有会话列表（包含标题）
-     * 优化：使用单次查询替代 N+1 查询
+     * 直接读取 chat_sessions，按 (user_id, last_message_time) 索引范围扫描
      */
     @Transactional(readOnly = true)
     public List<com.health.dto.chat.SessionInfo> getSessions(Long userId) {
-        // 一次查询获取所有会话信息
-        List<Object[]> results = chatHistoryMapper.findSessionsSummary(userId);
+        LambdaQueryWrapper<ChatSession> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ChatSession::getUserId, userId)
+               .orderByDesc(ChatSession::getLastMessageTime);
         
-        return results.stream().map(row -> {
-            String sessionId = (String) row[0];
-            String firstMessage = (String) row[1];
-            java.sql.Timestamp lastTime = (java.sql.Timestamp) row[2];
-            Number count = (Number) row[3];
-            
-            // 生成标题
-            String title = "新对话";
-            if (firstMessage != null && !firstMessage.isEmpty()) {
-                title = firstMessage.length() > 30 
-                    ? firstMessage.substring(0, 30) + "..." 
-                    : firstMessage;
-            }
-            
-            return com.health.dto.chat.SessionInfo.builder()
-                    .sessionId(sessionId)
-                    .title(title)
-                    .lastMessageTime(lastTime != null ? lastTime.toLocalDateTime() : null)
-                    .messageCount(count != null ? count.intValue() : 0)
-                    .build();
-        }).collect(Collectors.toList());
+        return chatSessionMapper.selectList(wrapper).stream()
+                .map(session -> com.health.dto.chat.SessionInfo.builder()
+                        .sessionId(session.getSessionId())
+                        .title(session.getTitle())
+                        .lastMessageTime(session.getLastMessageTime())
+                        .messageCount(session.getMessageCount() != null ? session.getMessageCount() : 0)
+                        .build())
+                .collect(Collectors.toList());
     }
     
     /**
      * 删除会话
+     * 不加 @Transactional：先在事务外等该会话排队中的消息落库（避免删除后又被批量写回，等待期间不占连接），再在短事务内删除
      */
-    @Transactional
     public void deleteSession(Long userId, String sessionId) {
-        LambdaQueryWrapper<ChatHistory> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(ChatHistory::getUserId, userId)
-               .eq(ChatHistory::getSessionId, sessionId);
-        chatHistoryMapper.delete(wrapper);
+        chatHistoryWriter.flush(userId, sessionId);
+        
+        transactionTemplate.executeWithoutResult(status -> {
+            LambdaQueryWrapper<ChatHistory> wrapper = new LambdaQueryWrapper<>();
+            wrapper.eq(ChatHistory::getUserId, userId)
+                   .eq(ChatHistory::getSessionId, sessionId);
+            chatHistoryMapper.delete(wrapper);
+            
+            LambdaQueryWrapper<ChatContextSummary> summaryWrapper = new LambdaQueryWrapper<>();
+            summaryWrapper.eq(ChatContextSummary::getUserId, userId)
+                          .eq(ChatContextSummary::getSessionId, sessionId);
+            chatContextSummaryMapper.delete(summaryWrapper);
+            
+            LambdaQueryWrapper<ChatSession> sessionWrapper = new LambdaQueryWrapper<>();
+            sessionWrapper.eq(ChatSession::getUserId, userId)
+                          .eq(ChatSession::getSessionId, sessionId);
+            chatSessionMapper.delete(sessionWrapper);
+            
+            chatArchiveService.deleteArchive(userId, sessionId);
+        });
     }
 }
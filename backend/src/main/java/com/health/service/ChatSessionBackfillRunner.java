@@ -0,0 +1,35 @@
+package com.health.service;
+
+import com.health.mapper.ChatSessionMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话摘要回填任务
+ *
+ * chat_sessions 上线前的历史会话没有摘要行，开启 chat.sessions.backfill-on-startup 后启动时
+ * 从 chat_histories 汇总一次（可重复执行，结果以聚合为准）。回填完成后关闭该配置即可。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "chat.sessions.backfill-on-startup", havingValue = "true")
+public class ChatSessionBackfillRunner implements ApplicationRunner {
+
+    private final ChatSessionMapper chatSessionMapper;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.currentTimeMillis();
+        try {
+            int sessions = chatSessionMapper.backfill();
+            log.info("会话摘要回填完成：{} 个会话，耗时 {} ms", sessions, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("会话摘要回填失败: {}", e.getMessage());
+        }
+    }
+}
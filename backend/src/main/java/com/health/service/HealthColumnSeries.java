@@ -0,0 +1,242 @@
+package com.health.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个 (用户, 数据类型) 的列式序列，存放在一个内存映射文件中
+ *
+ * 文件布局：32 字节文件头（magic、版本、行数、容量），随后按容量依次排列各列：
+ * id long[]、记录日期 epochDay int[]、记录时间编码 int[]、数值 double[]、第二数值 double[]（血压的舒张压）。
+ * 行按 (epochDay, id) 有序，补录早期日期时在内存映射区内移动后续行插入；删除只把 id 取负作为墓碑，重建时清除。
+ * 容量不足时按两倍写入新文件后原子替换（单文件不超过 2GB，约 6700 万行）。读写由读写锁保护，行数在各列写完后才更新。
+ */
+class HealthColumnSeries {
+
+    static final int NO_TIME = -1;
+    /** 无法编码的记录时间（自由文本），读取明细时需要回退到数据库 */
+    static final int OTHER_TIME = -6;
+
+    private static final int MAGIC = 0x48434F4C; // "HCOL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int ROW_BYTES = 8 + 4 + 4 + 8 + 8;
+    private static final int COUNT_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Path file;
+    private MappedByteBuffer buffer;
+    private int count;
+    private int capacity;
+
+    private HealthColumnSeries(Path file, MappedByteBuffer buffer, int count, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.count = count;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 打开已有文件；文件头不合法时返回 null（调用方删除后重建）
+     */
+    static HealthColumnSeries open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = buffer.getInt(CAPACITY_OFFSET);
+            int count = buffer.getInt(COUNT_OFFSET);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || capacity < 0 || count < 0
+                    || count > capacity || channel.size() != HEADER_BYTES + (long) capacity * ROW_BYTES) {
+                return null;
+            }
+            return new HealthColumnSeries(file, buffer, count, capacity);
+        }
+    }
+
+    /**
+     * 创建新文件（已存在时覆盖）
+     */
+    static HealthColumnSeries create(Path file, int capacity) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        writeEmpty(tmp, capacity);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    int size() {
+        return count;
+    }
+
+    long id(int row) {
+        return buffer.getLong(HEADER_BYTES + row * 8);
+    }
+
+    int epochDay(int row) {
+        return buffer.getInt(dayOffset(capacity) + row * 4);
+    }
+
+    int time(int row) {
+        return buffer.getInt(timeOffset(capacity) + row * 4);
+    }
+
+    double value(int row) {
+        return buffer.getDouble(valueOffset(capacity) + row * 8);
+    }
+
+    double value2(int row) {
+        return buffer.getDouble(value2Offset(capacity) + row * 8);
+    }
+
+    boolean deleted(int row) {
+        return id(row) < 0;
+    }
+
+    /**
+     * 第一个 epochDay >= day 的行号
+     */
+    int lowerBound(int day) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDay(mid) < day) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 按 (epochDay, id) 顺序插入一行；同一 id 已存在时忽略（重建与提交后追加可能重复）。调用方持有写锁
+     */
+    void insert(long id, int day, int time, double value, double value2) throws IOException {
+        int pos = lowerBound(day);
+        while (pos < count && epochDay(pos) == day && Math.abs(id(pos)) < id) {
+            pos++;
+        }
+        if (pos < count && epochDay(pos) == day && Math.abs(id(pos)) == id) {
+            return;
+        }
+        if (count == capacity) {
+            grow(Math.max(64, capacity * 2));
+        }
+        if (pos < count) {
+            shift(pos, count - pos);
+        }
+        writeRow(pos, id, day, time, value, value2);
+        count++;
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    /**
+     * 把 id 对应的行标记为删除。调用方持有写锁
+     */
+    void delete(long id, int day) {
+        for (int row = lowerBound(day); row < count && epochDay(row) == day; row++) {
+            if (id(row) == id) {
+                buffer.putLong(HEADER_BYTES + row * 8, -id);
+                return;
+            }
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    private void writeRow(int row, long id, int day, int time, double value, double value2) {
+        buffer.putLong(HEADER_BYTES + row * 8, id);
+        buffer.putInt(dayOffset(capacity) + row * 4, day);
+        buffer.putInt(timeOffset(capacity) + row * 4, time);
+        buffer.putDouble(valueOffset(capacity) + row * 8, value);
+        buffer.putDouble(value2Offset(capacity) + row * 8, value2);
+    }
+
+    /**
+     * 把 [from, from + length) 各列后移一行
+     */
+    private void shift(int from, int length) {
+        move(HEADER_BYTES, 8, from, length);
+        move(dayOffset(capacity), 4, from, length);
+        move(timeOffset(capacity), 4, from, length);
+        move(valueOffset(capacity), 8, from, length);
+        move(value2Offset(capacity), 8, from, length);
+    }
+
+    private void move(int columnOffset, int width, int from, int length) {
+        int src = columnOffset + from * width;
+        byte[] bytes = new byte[length * width];
+        buffer.get(src, bytes);
+        buffer.put(src + width, bytes);
+    }
+
+    private void grow(int newCapacity) throws IOException {
+        if ((long) newCapacity * ROW_BYTES + HEADER_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("列式序列超过单文件上限");
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        writeEmpty(tmp, newCapacity);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            grown.order(ByteOrder.LITTLE_ENDIAN);
+            copyColumn(grown, HEADER_BYTES, HEADER_BYTES, count * 8);
+            copyColumn(grown, dayOffset(capacity), dayOffset(newCapacity), count * 4);
+            copyColumn(grown, timeOffset(capacity), timeOffset(newCapacity), count * 4);
+            copyColumn(grown, valueOffset(capacity), valueOffset(newCapacity), count * 8);
+            copyColumn(grown, value2Offset(capacity), value2Offset(newCapacity), count * 8);
+            grown.putInt(COUNT_OFFSET, count);
+            grown.force();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            buffer = grown;
+            capacity = newCapacity;
+        }
+    }
+
+    private void copyColumn(ByteBuffer target, int from, int to, int bytes) {
+        byte[] column = new byte[bytes];
+        buffer.get(from, column);
+        target.put(to, column);
+    }
+
+    private static void writeEmpty(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(capacity).flip();
+            channel.write(header, 0);
+            // 扩展到完整大小（稀疏文件）
+            channel.write(ByteBuffer.allocate(1), HEADER_BYTES + (long) capacity * ROW_BYTES - 1);
+        }
+    }
+
+    private static int dayOffset(int capacity) {
+        return HEADER_BYTES + capacity * 8;
+    }
+
+    private static int timeOffset(int capacity) {
+        return dayOffset(capacity) + capacity * 4;
+    }
+
+    private static int valueOffset(int capacity) {
+        return timeOffset(capacity) + capacity * 4;
+    }
+
+    private static int value2Offset(int capacity) {
+        return valueOffset(capacity) + capacity * 8;
+    }
+}
@@ -0,0 +1,562 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
+import com.health.mapper.HealthDataMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 本地列式健康数据存储（可选，health.column-store.enabled）
+ *
+ * 每个 (用户, 数据类型) 一个内存映射文件（见 HealthColumnSeries），存放 id、记录日期、记录时间编码和 double 数值，
+ * 趋势、历史查询直接在原始数组上二分定位、顺序扫描和分桶聚合，只为返回的结果创建对象，不访问 PostgreSQL。
+ * - 写入：新增、批量导入、删除都在事务提交后更新已存在的序列；序列文件不存在时不写，首次读取时从 health_data 重建
+ *   （重建与提交后追加可能包含同一行，按 id 去重）
+ * - 这是派生数据：进程在提交与追加之间崩溃会漏掉该行，rebuild-on-startup 会清空目录全部重建
+ * - 只适用于单实例部署：其他实例的写入不会同步到本地文件
+ * - 最多同时映射 max-open-series 个序列，按最近访问淘汰（文件保留）
+ *
+ * 指标：health.column.store.open 已映射的序列数
+ */
+@Component
+@Slf4j
+public class HealthColumnStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int LOCK_STRIPES = 64;
+    private static final String[] PERIODS = {"morning", "afternoon", "evening", "night"};
+
+    private final HealthDataMapper healthDataMapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, HealthColumnSeries> open;
+    // 打开、重建和写入同一序列时按 key 分段加锁，保证同一文件同时只有一个写入者
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+
+    @Value("${health.column-store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${health.column-store.dir:./data/health-columns}")
+    private String dir;
+
+    @Value("${health.column-store.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    public HealthColumnStore(HealthDataMapper healthDataMapper, MeterRegistry meterRegistry,
+                             @Value("${health.column-store.max-open-series:2000}") int maxOpenSeries) {
+        this.healthDataMapper = healthDataMapper;
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        this.open = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HealthColumnSeries> eldest) {
+                return size() > maxOpenSeries;
+            }
+        });
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path root = Paths.get(dir);
+        if (rebuildOnStartup && Files.exists(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+            log.info("列式健康数据存储已清空，序列将在首次读取时重建: {}", root.toAbsolutePath());
+        }
+        Files.createDirectories(root);
+        Gauge.builder("health.column.store.open", open, Map::size)
+                .description("已映射的列式序列数")
+                .register(meterRegistry);
+        log.info("列式健康数据存储已启用: {}", root.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (open) {
+            open.values().forEach(HealthColumnSeries::force);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 明细趋势点（按日期正序），只包含数值列，单位和类型由调用方补全
+     */
+    public List<HealthData> range(Long userId, String dataType, LocalDate from, LocalDate to) {
+        List<HealthData> rows = new ArrayList<>();
+        scan(userId, dataType, from, to, rows::add);
+        return rows;
+    }
+
+    /**
+     * 按日期正序逐行交给 consumer，不物化结果（持有读锁期间回调，consumer 应只做计算）
+     */
+    public void scan(Long userId, String dataType, LocalDate from, LocalDate to, Consumer<HealthData> consumer) {
+        HealthColumnSeries series = series(userId, dataType);
+        series.lock.readLock().lock();
+        try {
+            int end = (int) to.toEpochDay();
+            for (int row = series.lowerBound((int) from.toEpochDay()); row < series.size() && series.epochDay(row) <= end; row++) {
+                if (!series.deleted(row)) {
+                    consumer.accept(toEntity(series, row, userId, dataType));
+                }
+            }
+        } finally {
+            series.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 日期范围内的行数（二分定位，包含已删除的墓碑行，只用于估算）
+     */
+    public long count(Long userId, String dataType, LocalDate from, LocalDate to) {
+        HealthColumnSeries series = series(userId, dataType);
+        series.lock.readLock().lock();
+        try {
+            return series.lowerBound((int) to.toEpochDay() + 1) - series.lowerBound((int) from.toEpochDay());
+        } finally {
+            series.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按日 / 周 / 月分桶聚合（按桶起始日期正序），结果与 health_data_rollups 的字段一致
+     */
+    public List<HealthDataRollup> aggregate(Long userId, String dataType, String granularity, LocalDate from, LocalDate to) {
+        HealthColumnSeries series = series(userId, dataType);
+        series.lock.readLock().lock();
+        try {
+            List<HealthDataRollup> buckets = new ArrayList<>();
+            int end = (int) to.toEpochDay();
+            int bucketDay = Integer.MIN_VALUE;
+            int nextBucketDay = Integer.MIN_VALUE;
+            Bucket bucket = null;
+            for (int row = series.lowerBound((int) from.toEpochDay()); row < series.size() && series.epochDay(row) <= end; row++) {
+                if (series.deleted(row)) {
+                    continue;
+                }
+                int day = series.epochDay(row);
+                if (day >= nextBucketDay) {
+                    if (bucket != null) {
+                        buckets.add(bucket.toRollup(userId, dataType, granularity, bucketDay));
+                    }
+                    LocalDate start = bucketStart(granularity, LocalDate.ofEpochDay(day));
+                    bucketDay = (int) start.toEpochDay();
+                    nextBucketDay = (int) nextBucket(granularity, start).toEpochDay();
+                    bucket = new Bucket();
+                }
+                bucket.add(series, row);
+            }
+            if (bucket != null) {
+                buckets.add(bucket.toRollup(userId, dataType, granularity, bucketDay));
+            }
+            return buckets;
+        } finally {
+            series.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 最近 limit 条明细（按日期倒序）；包含无法编码的记录时间时返回空，由调用方回退到数据库
+     */
+    public Optional<List<HealthData>> latest(Long userId, String dataType, int limit) {
+        HealthColumnSeries series = series(userId, dataType);
+        series.lock.readLock().lock();
+        try {
+            List<HealthData> rows = new ArrayList<>(Math.min(limit, series.size()));
+            for (int row = series.size() - 1; row >= 0 && rows.size() < limit; row--) {
+                if (series.deleted(row)) {
+                    continue;
+                }
+                if (series.time(row) == HealthColumnSeries.OTHER_TIME) {
+                    return Optional.empty();
+                }
+                rows.add(toEntity(series, row, userId, dataType));
+            }
+            return Optional.of(rows);
+        } finally {
+            series.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 新增记录（调用方事务提交后写入）
+     */
+    public void onRecorded(Collection<HealthData> rows) {
+        if (!enabled || rows.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> {
+            Map<String, List<HealthData>> bySeries = new LinkedHashMap<>();
+            rows.forEach(data -> bySeries.computeIfAbsent(key(data.getUserId(), data.getDataType()),
+                    k -> new ArrayList<>()).add(data));
+            bySeries.forEach((key, seriesRows) -> {
+                HealthData first = seriesRows.get(0);
+                synchronized (stripe(key)) {
+                    HealthColumnSeries series = openExisting(first.getUserId(), first.getDataType());
+                    if (series == null) {
+                        return;
+                    }
+                    series.lock.writeLock().lock();
+                    try {
+                        for (HealthData data : seriesRows) {
+                            insert(series, data);
+                        }
+                    } catch (IOException e) {
+                        log.error("列式序列写入失败，丢弃后重建: {} - {}", key, e.getMessage());
+                        discard(first.getUserId(), first.getDataType());
+                    } finally {
+                        series.lock.writeLock().unlock();
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * 删除记录（调用方事务提交后写入墓碑）
+     */
+    public void onDeleted(HealthData data) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (stripe(key(data.getUserId(), data.getDataType()))) {
+                HealthColumnSeries series = openExisting(data.getUserId(), data.getDataType());
+                if (series == null) {
+                    return;
+                }
+                series.lock.writeLock().lock();
+                try {
+                    series.delete(data.getId(), (int) data.getRecordDate().toEpochDay());
+                } finally {
+                    series.lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * 打开序列，文件不存在或损坏时从 health_data 重建
+     */
+    private HealthColumnSeries series(Long userId, String dataType) {
+        HealthColumnSeries series = openExisting(userId, dataType);
+        if (series != null) {
+            return series;
+        }
+        String key = key(userId, dataType);
+        synchronized (stripe(key)) {
+            series = openExisting(userId, dataType);
+            if (series != null) {
+                return series;
+            }
+            try {
+                series = rebuild(userId, dataType);
+            } catch (IOException e) {
+                throw new RuntimeException("列式序列重建失败: " + e.getMessage());
+            }
+            open.put(key, series);
+            return series;
+        }
+    }
+
+    private HealthColumnSeries rebuild(Long userId, String dataType) throws IOException {
+        long start = System.nanoTime();
+        LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(HealthData::getId, HealthData::getRecordDate, HealthData::getRecordTime,
+                        HealthData::getValue, HealthData::getSystolicPressure, HealthData::getDiastolicPressure)
+               .eq(HealthData::getUserId, userId)
+               .eq(HealthData::getDataType, dataType)
+               .orderByAsc(HealthData::getRecordDate)
+               .orderByAsc(HealthData::getId);
+        List<HealthData> rows = healthDataMapper.selectList(wrapper);
+
+        HealthColumnSeries series = HealthColumnSeries.create(file(userId, dataType),
+                Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, rows.size())) * 2));
+        series.lock.writeLock().lock();
+        try {
+            for (HealthData data : rows) {
+                insert(series, data);
+            }
+            series.force();
+        } finally {
+            series.lock.writeLock().unlock();
+        }
+        log.debug("列式序列已重建: user={}, type={}, {} 行, {} ms", userId, dataType, rows.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return series;
+    }
+
+    /**
+     * 已映射或文件已存在的序列；都没有时返回 null
+     */
+    private HealthColumnSeries openExisting(Long userId, String dataType) {
+        String key = key(userId, dataType);
+        HealthColumnSeries series = open.get(key);
+        if (series != null) {
+            return series;
+        }
+        Path file = file(userId, dataType);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        synchronized (stripe(key)) {
+            series = open.get(key);
+            if (series != null) {
+                return series;
+            }
+            try {
+                series = HealthColumnSeries.open(file);
+            } catch (IOException e) {
+                series = null;
+            }
+            if (series == null) {
+                log.warn("列式序列文件损坏，删除后重建: {}", file);
+                discard(userId, dataType);
+                return null;
+            }
+            open.put(key, series);
+            return series;
+        }
+    }
+
+    private void discard(Long userId, String dataType) {
+        open.remove(key(userId, dataType));
+        try {
+            Files.deleteIfExists(file(userId, dataType));
+        } catch (IOException e) {
+            log.warn("删除列式序列文件失败: {}", e.getMessage());
+        }
+    }
+
+    private static void insert(HealthColumnSeries series, HealthData data) throws IOException {
+        boolean bloodPressure = data.getSystolicPressure() != null || data.getDiastolicPressure() != null;
+        double value = bloodPressure ? toDouble(data.getSystolicPressure()) : toDouble(data.getValue());
+        double value2 = bloodPressure ? toDouble(data.getDiastolicPressure()) : Double.NaN;
+        series.insert(data.getId(), (int) data.getRecordDate().toEpochDay(), encodeTime(data.getRecordTime()), value, value2);
+    }
+
+    private static HealthData toEntity(HealthColumnSeries series, int row, Long userId, String dataType) {
+        HealthData data = HealthData.builder()
+                .id(series.id(row))
+                .userId(userId)
+                .dataType(dataType)
+                .recordDate(LocalDate.ofEpochDay(series.epochDay(row)))
+                .recordTime(decodeTime(series.time(row)))
+                .build();
+        if ("blood_pressure".equals(dataType)) {
+            data.setSystolicPressure(toInteger(series.value(row)));
+            data.setDiastolicPressure(toInteger(series.value2(row)));
+        } else if (!Double.isNaN(series.value(row))) {
+            data.setValue(BigDecimal.valueOf(series.value(row)).setScale(2, RoundingMode.HALF_UP));
+        }
+        return data;
+    }
+
+    /**
+     * 记录时间编码：空为 -1，早晨/下午/晚上/夜间为 -2..-5，HH:MM 为当天分钟数，其他为 -6
+     */
+    static int encodeTime(String recordTime) {
+        if (recordTime == null || recordTime.isEmpty()) {
+            return HealthColumnSeries.NO_TIME;
+        }
+        for (int i = 0; i < PERIODS.length; i++) {
+            if (PERIODS[i].equals(recordTime)) {
+                return -2 - i;
+            }
+        }
+        if (recordTime.length() == 5 && recordTime.charAt(2) == ':') {
+            try {
+                int hour = Integer.parseInt(recordTime.substring(0, 2));
+                int minute = Integer.parseInt(recordTime.substring(3));
+                if (hour < 24 && minute < 60) {
+                    return hour * 60 + minute;
+                }
+            } catch (NumberFormatException ignored) {
+                // 按其他处理
+            }
+        }
+        return HealthColumnSeries.OTHER_TIME;
+    }
+
+    static String decodeTime(int code) {
+        if (code >= 0) {
+            return String.format("%02d:%02d", code / 60, code % 60);
+        }
+        if (code <= -2 && code >= -1 - PERIODS.length) {
+            return PERIODS[-2 - code];
+        }
+        return null;
+    }
+
+    private static LocalDate bucketStart(String granularity, LocalDate day) {
+        return switch (granularity) {
+            case "day" -> day;
+            case "week" -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case "month" -> day.withDayOfMonth(1);
+            default -> throw new RuntimeException("不支持的趋势粒度: " + granularity);
+        };
+    }
+
+    private static LocalDate nextBucket(String granularity, LocalDate start) {
+        return switch (granularity) {
+            case "day" -> start.plusDays(1);
+            case "week" -> start.plusWeeks(1);
+            default -> start.plusMonths(1);
+        };
+    }
+
+    private static double toDouble(Number value) {
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+
+    private static Integer toInteger(double value) {
+        return Double.isNaN(value) ? null : (int) value;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private Path file(Long userId, String dataType) {
+        return Paths.get(dir, String.valueOf(userId), dataType + ".col");
+    }
+
+    private Object stripe(String key) {
+        return stripes[Math.floorMod(key.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static String key(Long userId, String dataType) {
+        return userId + "/" + dataType;
+    }
+
+    /**
+     * 分桶聚合的累加器，全部为原始类型
+     */
+    private static class Bucket {
+        private int count;
+        private int valueCount;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private int value2Count;
+        private double min2 = Double.POSITIVE_INFINITY;
+        private double max2 = Double.NEGATIVE_INFINITY;
+        private double sum2;
+        private double last = Double.NaN;
+        private double last2 = Double.NaN;
+        private int lastDay;
+        private long lastId;
+
+        void add(HealthColumnSeries series, int row) {
+            count++;
+            double value = series.value(row);
+            if (!Double.isNaN(value)) {
+                valueCount++;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+            }
+            double value2 = series.value2(row);
+            if (!Double.isNaN(value2)) {
+                value2Count++;
+                min2 = Math.min(min2, value2);
+                max2 = Math.max(max2, value2);
+                sum2 += value2;
+            }
+            // 行按 (epochDay, id) 有序，最后一行即最新
+            last = value;
+            last2 = value2;
+            lastDay = series.epochDay(row);
+            lastId = series.id(row);
+        }
+
+        HealthDataRollup toRollup(Long userId, String dataType, String granularity, int bucketDay) {
+            HealthDataRollup rollup = HealthDataRollup.builder()
+                    .userId(userId)
+                    .dataType(dataType)
+                    .granularity(granularity)
+                    .bucketStart(LocalDate.ofEpochDay(bucketDay))
+                    .sampleCount(count)
+                    .valueCount(0)
+                    .systolicCount(0)
+                    .diastolicCount(0)
+                    .lastRecordDate(LocalDate.ofEpochDay(lastDay))
+                    .lastId(lastId)
+                    .build();
+            // 平均值的分母为非空条数（取值为 NaN 的行只计入 sampleCount），与 SQL 汇总一致
+            if ("blood_pressure".equals(dataType)) {
+                rollup.setSystolicCount(valueCount);
+                rollup.setDiastolicCount(value2Count);
+                if (valueCount > 0) {
+                    rollup.setSystolicMin((int) min);
+                    rollup.setSystolicMax((int) max);
+                    rollup.setSystolicSum((long) sum);
+                }
+                if (value2Count > 0) {
+                    rollup.setDiastolicMin((int) min2);
+                    rollup.setDiastolicMax((int) max2);
+                    rollup.setDiastolicSum((long) sum2);
+                }
+                rollup.setLastSystolic(toInteger(last));
+                rollup.setLastDiastolic(toInteger(last2));
+            } else if (valueCount > 0) {
+                rollup.setValueCount(valueCount);
+                rollup.setValueMin(decimal(min));
+                rollup.setValueMax(decimal(max));
+                rollup.setValueSum(decimal(sum));
+                rollup.setLastValue(Double.isNaN(last) ? null : decimal(last));
+            }
+            return rollup;
+        }
+
+        private static BigDecimal decimal(double value) {
+            return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+        }
+    }
+}
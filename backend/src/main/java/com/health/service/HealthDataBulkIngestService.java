@@ -0,0 +1,352 @@
+package com.health.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.dto.health.HealthDataBulkResult;
+import com.health.dto.health.HealthDataRequest;
+import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
+import com.health.mapper.HealthDataRollupMapper;
+import com.health.mapper.UserMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 健康数据批量导入（可穿戴设备同步）
+ *
+ * 请求体为 JSON 数组或 NDJSON（每行一个对象），字段与单条记录接口相同。先一次遍历完成解析和校验，
+ * 不合法的条目按序号记录原因，合法的条目在一个事务内写入：
+ * - 按整批数量一次性从序列取 ID，JDBC 批量插入（配合 reWriteBatchedInserts 合并为多行 INSERT）
+ * - 汇总表增量在内存中按桶合并，每个桶只累加一次
+ * - 最新数据快照每种类型只更新一次
+ * 读取请求体时不持有数据库连接，慢速上传不会占用连接池。
+ *
+ * 指标：health.bulk.items{result=accepted|rejected}、health.bulk.ingest
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HealthDataBulkIngestService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO health_data (id, user_id, data_type, value, systolic_pressure, diastolic_pressure, unit, "
+                    + "record_date, record_time, note, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ALLOCATE_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('health_data', 'id')) FROM generate_series(1, ?)";
+    private static final Comparator<HealthData> RECORD_ORDER =
+            Comparator.comparing(HealthData::getRecordDate).thenComparing(HealthData::getId);
+    private static final int ROLLUP_CHUNK = 500;
+    // 记录日期按设备所在时区填写，服务器时区偏西时设备的“今天”可能是服务器的明天：允许超出服务器今天 1 天
+    private static final int RECORD_DATE_SLACK_DAYS = 1;
+
+    private final HealthDataService healthDataService;
+    private final HealthDataRollupMapper rollupMapper;
+    private final HealthDataSnapshotCache snapshotCache;
+    private final HealthColumnStore columnStore;
+    private final UserMapper userMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${health.bulk.max-items:10000}")
+    private int maxItems;
+
+    @Value("${health.bulk.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${health.bulk.max-errors:100}")
+    private int maxErrors;
+
+    /**
+     * 导入一批记录
+     *
+     * @param ndjson true 时按行解析（单行 JSON 错误只影响该行），否则按 JSON 数组解析（语法错误时整批拒绝）
+     */
+    public HealthDataBulkResult ingest(Long userId, InputStream body, boolean ndjson) {
+        if (userMapper.selectById(userId) == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        long start = System.nanoTime();
+
+        Parsed parsed = new Parsed(userId);
+        try {
+            if (ndjson) {
+                readNdjson(body, parsed);
+            } else {
+                readJsonArray(body, parsed);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("请求体解析失败: " + e.getMessage());
+        }
+
+        if (!parsed.rows.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> write(parsed.rows));
+        }
+
+        meterRegistry.counter("health.bulk.items", "result", "accepted").increment(parsed.rows.size());
+        meterRegistry.counter("health.bulk.items", "result", "rejected").increment(parsed.rejected);
+        Timer.builder("health.bulk.ingest")
+                .description("健康数据批量导入耗时（解析 + 写入）")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("健康数据批量导入: user={}, 收到 {} 条，写入 {} 条，拒绝 {} 条", userId, parsed.received,
+                parsed.rows.size(), parsed.rejected);
+
+        return HealthDataBulkResult.builder()
+                .received(parsed.received)
+                .accepted(parsed.rows.size())
+                .rejected(parsed.rejected)
+                .errors(parsed.errors)
+                .build();
+    }
+
+    private void readJsonArray(InputStream body, Parsed parsed) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new RuntimeException("请求体必须是 JSON 数组");
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == null) {
+                    throw new RuntimeException("JSON 数组不完整");
+                }
+                // 逐个元素读成树，字段类型错误只影响该条目
+                parsed.accept(objectMapper.readTree(parser));
+            }
+        }
+    }
+
+    private void readNdjson(InputStream body, Parsed parsed) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (IOException e) {
+                parsed.reject("JSON 格式错误");
+                continue;
+            }
+            parsed.accept(node);
+        }
+    }
+
+    /**
+     * 校验并构建一条记录，不合法时抛出 IllegalArgumentException（消息为原因）
+     */
+    private HealthData validate(Long userId, HealthDataRequest request) {
+        if (!healthDataService.isKnownType(request.getDataType())) {
+            throw new IllegalArgumentException("未知的数据类型: " + request.getDataType());
+        }
+        LocalDate latestDate = LocalDate.now().plusDays(RECORD_DATE_SLACK_DAYS);
+        if (request.getRecordDate() != null && request.getRecordDate().isAfter(latestDate)) {
+            throw new IllegalArgumentException("记录日期不能晚于 " + latestDate + "（今天，允许 "
+                    + RECORD_DATE_SLACK_DAYS + " 天时区偏差）");
+        }
+
+        HealthData data;
+        try {
+            data = healthDataService.buildData(userId, request.getDataType(), request.getValue(), request.getNote(),
+                    request.getRecordDate(), request.getRecordTime(),
+                    request.getSystolicPressure(), request.getDiastolicPressure());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("血压格式错误，应为 收缩压/舒张压");
+        }
+
+        if ("blood_pressure".equals(data.getDataType())) {
+            Integer systolic = data.getSystolicPressure();
+            Integer diastolic = data.getDiastolicPressure();
+            if (systolic == null || diastolic == null) {
+                throw new IllegalArgumentException("缺少收缩压/舒张压");
+            }
+            if (systolic < 40 || systolic > 300 || diastolic < 20 || diastolic > 200 || systolic <= diastolic) {
+                throw new IllegalArgumentException("血压数值超出合理范围: " + systolic + "/" + diastolic);
+            }
+        } else if (data.getValue() == null) {
+            throw new IllegalArgumentException("数值无法解析: " + request.getValue());
+        } else if (data.getValue().signum() < 0 || data.getValue().compareTo(BigDecimal.valueOf(100_000_000)) >= 0) {
+            throw new IllegalArgumentException("数值超出范围: " + data.getValue());
+        }
+        return data;
+    }
+
+    private void write(List<HealthData> rows) {
+        // 与汇总重算互斥（见 HealthDataRollupMapper.lockSeries），按类型名排序加锁
+        rows.stream().map(HealthData::getDataType).distinct().sorted()
+                .forEach(dataType -> rollupMapper.lockSeries(rows.get(0).getUserId(), dataType));
+
+        List<Long> ids = jdbcTemplate.queryForList(ALLOCATE_IDS_SQL, Long.class, rows.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).setId(ids.get(i));
+            rows.get(i).setCreatedAt(now);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, batchSize, (ps, data) -> {
+            ps.setLong(1, data.getId());
+            ps.setLong(2, data.getUserId());
+            ps.setString(3, data.getDataType());
+            ps.setBigDecimal(4, data.getValue());
+            ps.setObject(5, data.getSystolicPressure(), Types.INTEGER);
+            ps.setObject(6, data.getDiastolicPressure(), Types.INTEGER);
+            ps.setString(7, data.getUnit());
+            ps.setDate(8, Date.valueOf(data.getRecordDate()));
+            ps.setString(9, data.getRecordTime());
+            ps.setString(10, data.getNote());
+            ps.setTimestamp(11, Timestamp.valueOf(data.getCreatedAt()));
+        });
+
+        List<HealthDataRollup> deltas = rollupDeltas(rows);
+        for (int i = 0; i < deltas.size(); i += ROLLUP_CHUNK) {
+            rollupMapper.addBatch(deltas.subList(i, Math.min(i + ROLLUP_CHUNK, deltas.size())));
+        }
+
+        // 每种类型只需用本批最新的一条更新快照
+        Map<String, HealthData> newest = new HashMap<>();
+        rows.forEach(data -> newest.merge(data.getDataType(), data,
+                (a, b) -> RECORD_ORDER.compare(a, b) >= 0 ? a : b));
+        newest.values().forEach(snapshotCache::onRecorded);
+        columnStore.onRecorded(rows);
+    }
+
+    /**
+     * 整批明细按 (类型, 粒度, 桶) 合并为汇总增量
+     */
+    private static List<HealthDataRollup> rollupDeltas(List<HealthData> rows) {
+        Map<String, HealthDataRollup> deltas = new LinkedHashMap<>();
+        for (HealthData data : rows) {
+            LocalDate day = data.getRecordDate();
+            add(deltas, data, "day", day);
+            add(deltas, data, "week", day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)));
+            add(deltas, data, "month", day.withDayOfMonth(1));
+        }
+        return new ArrayList<>(deltas.values());
+    }
+
+    private static void add(Map<String, HealthDataRollup> deltas, HealthData data, String granularity, LocalDate bucket) {
+        HealthDataRollup delta = deltas.computeIfAbsent(data.getDataType() + '|' + granularity + '|' + bucket,
+                key -> HealthDataRollup.builder()
+                        .userId(data.getUserId())
+                        .dataType(data.getDataType())
+                        .granularity(granularity)
+                        .bucketStart(bucket)
+                        .sampleCount(0)
+                        .valueCount(0)
+                        .systolicCount(0)
+                        .diastolicCount(0)
+                        .build());
+        delta.setSampleCount(delta.getSampleCount() + 1);
+
+        BigDecimal value = data.getValue();
+        if (value != null) {
+            delta.setValueCount(delta.getValueCount() + 1);
+            delta.setValueMin(delta.getValueMin() == null ? value : delta.getValueMin().min(value));
+            delta.setValueMax(delta.getValueMax() == null ? value : delta.getValueMax().max(value));
+            delta.setValueSum(delta.getValueSum() == null ? value : delta.getValueSum().add(value));
+        }
+        Integer systolic = data.getSystolicPressure();
+        if (systolic != null) {
+            delta.setSystolicCount(delta.getSystolicCount() + 1);
+            delta.setSystolicMin(delta.getSystolicMin() == null ? systolic : Math.min(delta.getSystolicMin(), systolic));
+            delta.setSystolicMax(delta.getSystolicMax() == null ? systolic : Math.max(delta.getSystolicMax(), systolic));
+            delta.setSystolicSum((delta.getSystolicSum() == null ? 0 : delta.getSystolicSum()) + systolic);
+        }
+        Integer diastolic = data.getDiastolicPressure();
+        if (diastolic != null) {
+            delta.setDiastolicCount(delta.getDiastolicCount() + 1);
+            delta.setDiastolicMin(delta.getDiastolicMin() == null ? diastolic : Math.min(delta.getDiastolicMin(), diastolic));
+            delta.setDiastolicMax(delta.getDiastolicMax() == null ? diastolic : Math.max(delta.getDiastolicMax(), diastolic));
+            delta.setDiastolicSum((delta.getDiastolicSum() == null ? 0 : delta.getDiastolicSum()) + diastolic);
+        }
+
+        int order = delta.getLastId() == null ? 1 : data.getRecordDate().compareTo(delta.getLastRecordDate());
+        if (order > 0 || (order == 0 && data.getId() > delta.getLastId())) {
+            delta.setLastRecordDate(data.getRecordDate());
+            delta.setLastId(data.getId());
+            delta.setLastValue(value);
+            delta.setLastSystolic(systolic);
+            delta.setLastDiastolic(diastolic);
+        }
+    }
+
+    /**
+     * 解析过程中的状态：合法记录、拒绝数和前 max-errors 条错误
+     */
+    private class Parsed {
+        private final Long userId;
+        private final List<HealthData> rows = new ArrayList<>();
+        private final List<HealthDataBulkResult.ItemError> errors = new ArrayList<>();
+        private int received;
+        private int rejected;
+
+        private Parsed(Long userId) {
+            this.userId = userId;
+        }
+
+        private void accept(JsonNode node) {
+            if (received >= maxItems) {
+                throw new RuntimeException("单次最多导入 " + maxItems + " 条");
+            }
+            if (!node.isObject()) {
+                reject("不是 JSON 对象");
+                return;
+            }
+            HealthDataRequest request;
+            try {
+                request = objectMapper.treeToValue(node, HealthDataRequest.class);
+            } catch (IOException e) {
+                reject("字段格式错误: " + e.getMessage().lines().findFirst().orElse(""));
+                return;
+            }
+            try {
+                rows.add(validate(userId, request));
+                received++;
+            } catch (IllegalArgumentException e) {
+                reject(e.getMessage());
+            }
+        }
+
+        private void reject(String message) {
+            if (received >= maxItems) {
+                throw new RuntimeException("单次最多导入 " + maxItems + " 条");
+            }
+            if (errors.size() < maxErrors) {
+                errors.add(new HealthDataBulkResult.ItemError(received, message));
+            }
+            rejected++;
+            received++;
+        }
+    }
+}
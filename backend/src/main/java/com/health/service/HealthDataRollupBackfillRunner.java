@@ -0,0 +1,89 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.entity.HealthDataRollup;
+import com.health.mapper.HealthDataRollupMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * 健康数据汇总回填任务
+ *
+ * 010 迁移之前的明细没有汇总，开启 health.rollup.backfill-on-startup 后启动时在后台线程中按用户 ID 顺序，
+ * 每个用户一个事务：删除该用户已有的汇总并从明细全部重算（可重复执行，也可用于修正汇总）。
+ * 重算前先按类型名顺序取得该用户各类型的咨询锁（见 HealthDataRollupMapper.lockSeries），
+ * 回填期间用户新增、删除记录的事务与重算互相等待，结果仍以明细为准。完成后关闭该配置。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "health.rollup.backfill-on-startup", havingValue = "true")
+public class HealthDataRollupBackfillRunner implements ApplicationRunner {
+
+    private static final String SELECT_USERS_SQL = "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String SELECT_TYPES_SQL =
+            "SELECT data_type FROM health_data WHERE user_id = ? "
+                    + "UNION SELECT data_type FROM health_data_rollups WHERE user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HealthDataRollupMapper rollupMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${health.rollup.backfill-batch-size:200}")
+    private int batchSize;
+
+    @Value("${health.rollup.backfill-pause:50}")
+    private long pauseMillis;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread worker = new Thread(this::backfillAll, "health-rollup-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void backfillAll() {
+        long start = System.currentTimeMillis();
+        long lastUserId = 0;
+        long users = 0;
+        long buckets = 0;
+        try {
+            while (true) {
+                List<Long> userIds = jdbcTemplate.queryForList(SELECT_USERS_SQL, Long.class, lastUserId, batchSize);
+                if (userIds.isEmpty()) {
+                    break;
+                }
+                for (Long userId : userIds) {
+                    Integer written = transactionTemplate.execute(status -> {
+                        jdbcTemplate.queryForList(SELECT_TYPES_SQL, String.class, userId, userId).stream()
+                                .sorted()
+                                .forEach(dataType -> rollupMapper.lockSeries(userId, dataType));
+                        rollupMapper.delete(new LambdaQueryWrapper<HealthDataRollup>()
+                                .eq(HealthDataRollup::getUserId, userId));
+                        return rollupMapper.rebuildUser(userId);
+                    });
+                    buckets += written == null ? 0 : written;
+                    lastUserId = userId;
+                    users++;
+                }
+                log.debug("健康数据汇总回填进度：已处理 {} 个用户，写入 {} 个汇总桶，当前用户 ID {}", users, buckets, lastUserId);
+                Thread.sleep(pauseMillis);
+            }
+            log.info("健康数据汇总回填完成：{} 个用户，{} 个汇总桶，耗时 {} ms", users, buckets,
+                    System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("健康数据汇总回填在用户 ID {} 之后失败（可重新执行继续）: {}", lastUserId, e.getMessage());
+        }
+    }
+}
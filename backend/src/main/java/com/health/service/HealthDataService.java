@@ -1,18 +1,27 @@
 package com.health.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.dto.health.HealthTrendPoint;
 import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
 import com.health.entity.User;
 import com.health.mapper.HealthDataMapper;
+import com.health.mapper.HealthDataRollupMapper;
 import com.health.mapper.UserMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * 健康数据服务
@@ -24,6 +33,32 @@ public class HealthDataService {
     
     private final HealthDataMapper healthDataMapper;
     private final UserMapper userMapper;
+    private final HealthDataRollupMapper rollupMapper;
+    private final HealthDataSnapshotCache snapshotCache;
+    private final HealthColumnStore columnStore;
+    
+    // 各类型的单位
+    private static final Map<String, String> UNITS = Map.of(
+            "weight", "kg",
+            "blood_pressure", "mmHg",
+            "blood_sugar", "mmol/L",
+            "heart_rate", "次/分",
+            "temperature", "℃",
+            "sleep", "小时",
+            "exercise", "分钟",
+            "water", "ml",
+            "calories", "kcal",
+            "steps", "步");
+    
+    // 趋势粒度：范围不超过 raw-max-days 天返回明细，再依次使用日、周、月汇总
+    @Value("${health.trend.raw-max-days:31}")
+    private int rawMaxDays;
+    
+    @Value("${health.trend.day-max-days:180}")
+    private int dayMaxDays;
+    
+    @Value("${health.trend.week-max-days:730}")
+    private int weekMaxDays;
     
     /**
      * 记录健康数据（完整版本）
@@ -32,11 +67,36 @@ public class HealthDataService {
     public HealthData recordData(Long userId, String dataType, String value, String note,
                                   LocalDate recordDate, String recordTime,
                                   Integer systolicPressure, Integer diastolicPressure) {
+        requireKnownType(dataType);
         User user = userMapper.selectById(userId);
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
         
+        HealthData data = buildData(userId, dataType, value, note, recordDate, recordTime,
+                systolicPressure, diastolicPressure);
+        rollupMapper.lockSeries(userId, dataType);
+        healthDataMapper.insert(data);
+        rollupMapper.addSample(data);
+        snapshotCache.onRecorded(data);
+        columnStore.onRecorded(List.of(data));
+        return data;
+    }
+    
+    /**
+     * 记录健康数据（简化版本，保持兼容）
+     */
+    @Transactional
+    public HealthData recordData(Long userId, String dataType, String value, String note) {
+        return recordData(userId, dataType, value, note, null, null, null, null);
+    }
+    
+    /**
+     * 按数据类型解析取值并补全单位、记录日期（不写库，批量导入共用）
+     */
+    public HealthData buildData(Long userId, String dataType, String value, String note,
+                                LocalDate recordDate, String recordTime,
+                                Integer systolicPressure, Integer diastolicPressure) {
         HealthData data = HealthData.builder()
                 .userId(userId)
                 .dataType(dataType)
@@ -46,72 +106,40 @@ public class HealthDataService {
                 .build();
         
         // 根据数据类型解析值
-        switch (dataType) {
-            case "weight":
-                data.setValue(parseDecimal(value));
-                data.setUnit("kg");
-                break;
-            case "blood_pressure":
-                // 优先使用传入的收缩压/舒张压
-                if (systolicPressure != null && diastolicPressure != null) {
-                    data.setSystolicPressure(systolicPressure);
-                    data.setDiastolicPressure(diastolicPressure);
-                } else if (value != null && value.contains("/")) {
-                    // 格式：130/80
-                    String[] bp = value.split("/");
-                    if (bp.length == 2) {
-                        data.setSystolicPressure(Integer.parseInt(bp[0].trim()));
-                        data.setDiastolicPressure(Integer.parseInt(bp[1].trim()));
-                    }
+        if ("blood_pressure".equals(dataType)) {
+            // 优先使用传入的收缩压/舒张压
+            if (systolicPressure != null && diastolicPressure != null) {
+                data.setSystolicPressure(systolicPressure);
+                data.setDiastolicPressure(diastolicPressure);
+            } else if (value != null && value.contains("/")) {
+                // 格式：130/80
+                String[] bp = value.split("/");
+                if (bp.length == 2) {
+                    data.setSystolicPressure(Integer.parseInt(bp[0].trim()));
+                    data.setDiastolicPressure(Integer.parseInt(bp[1].trim()));
                 }
-                data.setUnit("mmHg");
-                break;
-            case "blood_sugar":
-                data.setValue(parseDecimal(value));
-                data.setUnit("mmol/L");
-                break;
-            case "heart_rate":
-                data.setValue(parseDecimal(value));
-                data.setUnit("次/分");
-                break;
-            case "temperature":
-                data.setValue(parseDecimal(value));
-                data.setUnit("℃");
-                break;
-            case "sleep":
-                data.setValue(parseDecimal(value));
-                data.setUnit("小时");
-                break;
-            case "exercise":
-                data.setValue(parseDecimal(value));
-                data.setUnit("分钟");
-                break;
-            case "water":
-                data.setValue(parseDecimal(value));
-                data.setUnit("ml");
-                break;
-            case "calories":
-                data.setValue(parseDecimal(value));
-                data.setUnit("kcal");
-                break;
-            case "steps":
-                data.setValue(parseDecimal(value));
-                data.setUnit("步");
-                break;
-            default:
-                data.setValue(parseDecimal(value));
+            }
+        } else {
+            data.setValue(parseDecimal(value));
         }
-        
-        healthDataMapper.insert(data);
+        data.setUnit(UNITS.get(dataType));
         return data;
     }
     
     /**
-     * 记录健康数据（简化版本，保持兼容）
+     * 是否为支持的数据类型
      */
-    @Transactional
-    public HealthData recordData(Long userId, String dataType, String value, String note) {
-        return recordData(userId, dataType, value, note, null, null, null, null);
+    public boolean isKnownType(String dataType) {
+        return dataType != null && UNITS.containsKey(dataType);
+    }
+    
+    /**
+     * 数据类型来自请求路径或请求体：未知类型在访问数据库和本地列式存储（按类型建文件）之前拒绝
+     */
+    private void requireKnownType(String dataType) {
+        if (!isKnownType(dataType)) {
+            throw new RuntimeException("未知的数据类型: " + dataType);
+        }
     }
     
     private BigDecimal parseDecimal(String value) {
@@ -127,33 +155,122 @@ public class HealthDataService {
     
     /**
      * 获取健康数据趋势
+     * 按范围自动选择粒度（也可由 resolution 指定）：短范围返回明细，长范围读取 health_data_rollups，
+     * 一年的趋势只需读取约 52 个周汇总点，而不是全部明细；启用本地列式存储时明细和汇总都直接由 HealthColumnStore 计算
+     *
+     * 指定 maxPoints 时在服务端降采样（见 TrendDownsampler），明细按游标逐行处理，不物化整个范围
+     *
+     * @param resolution raw / day / week / month，为空时自动选择
+     * @param maxPoints  最多返回的点数，为空时不降采样
+     * @param downsample lttb / envelope，为空时血压使用 envelope，其他类型使用 lttb
      */
     @Transactional(readOnly = true)
-    public List<HealthData> getTrend(Long userId, String dataType, int days) {
+    public List<HealthTrendPoint> getTrend(Long userId, String dataType, int days, String resolution,
+                                           Integer maxPoints, String downsample) {
+        requireKnownType(dataType);
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(days);
+        String granularity = resolution != null && !resolution.isEmpty() ? resolution : resolutionFor(days);
+        String unit = UNITS.get(dataType);
+        
+        if ("raw".equals(granularity)) {
+            if (maxPoints != null) {
+                return downsampleRaw(userId, dataType, startDate, endDate, unit, maxPoints, downsample);
+            }
+            if (columnStore.isEnabled()) {
+                return columnStore.range(userId, dataType, startDate, endDate).stream()
+                        .map(data -> {
+                            data.setUnit(unit);
+                            return HealthTrendPoint.from(data);
+                        })
+                        .collect(Collectors.toList());
+            }
+            
+            LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
+            wrapper.eq(HealthData::getUserId, userId)
+                   .eq(HealthData::getDataType, dataType)
+                   .between(HealthData::getRecordDate, startDate, endDate)
+                   .orderByAsc(HealthData::getRecordDate);
+            
+            return healthDataMapper.selectList(wrapper).stream()
+                    .map(HealthTrendPoint::from)
+                    .collect(Collectors.toList());
+        }
+        
+        LocalDate firstBucket = switch (granularity) {
+            case "day" -> startDate;
+            case "week" -> startDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case "month" -> startDate.withDayOfMonth(1);
+            default -> throw new RuntimeException("不支持的趋势粒度: " + granularity);
+        };
+        List<HealthDataRollup> rollups;
+        if (columnStore.isEnabled()) {
+            rollups = columnStore.aggregate(userId, dataType, granularity, firstBucket, endDate);
+        } else {
+            LambdaQueryWrapper<HealthDataRollup> wrapper = new LambdaQueryWrapper<>();
+            wrapper.eq(HealthDataRollup::getUserId, userId)
+                   .eq(HealthDataRollup::getDataType, dataType)
+                   .eq(HealthDataRollup::getGranularity, granularity)
+                   .between(HealthDataRollup::getBucketStart, firstBucket, endDate)
+                   .orderByAsc(HealthDataRollup::getBucketStart);
+            rollups = rollupMapper.selectList(wrapper);
+        }
+        
+        List<HealthTrendPoint> points = rollups.stream()
+                .map(rollup -> HealthTrendPoint.from(rollup, unit))
+                .collect(Collectors.toList());
+        if (maxPoints == null) {
+            return points;
+        }
+        TrendDownsampler sampler = TrendDownsampler.create(downsample, dataType, points.size(), maxPoints);
+        points.forEach(point -> sampler.add(point, TrendDownsampler.x(point.getRecordDate(), null)));
+        return sampler.finish();
+    }
+    
+    /**
+     * 明细降采样：先取范围内行数用于分桶，再按 (记录日期, id) 顺序单次遍历游标（或本地列式序列）
+     */
+    private List<HealthTrendPoint> downsampleRaw(Long userId, String dataType, LocalDate from, LocalDate to,
+                                                 String unit, int maxPoints, String downsample) {
+        if (columnStore.isEnabled()) {
+            TrendDownsampler sampler = TrendDownsampler.create(downsample, dataType,
+                    columnStore.count(userId, dataType, from, to), maxPoints);
+            columnStore.scan(userId, dataType, from, to, data -> addRaw(sampler, data, unit));
+            return sampler.finish();
+        }
         
         LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(HealthData::getUserId, userId)
                .eq(HealthData::getDataType, dataType)
-               .between(HealthData::getRecordDate, startDate, endDate)
-               .orderByAsc(HealthData::getRecordDate);
-        
-        return healthDataMapper.selectList(wrapper);
+               .between(HealthData::getRecordDate, from, to);
+        TrendDownsampler sampler = TrendDownsampler.create(downsample, dataType,
+                healthDataMapper.selectCount(wrapper), maxPoints);
+        healthDataMapper.streamTrend(userId, dataType, from, to,
+                context -> addRaw(sampler, context.getResultObject(), unit));
+        return sampler.finish();
+    }
+    
+    private static void addRaw(TrendDownsampler sampler, HealthData data, String unit) {
+        data.setUnit(unit);
+        sampler.add(HealthTrendPoint.from(data), TrendDownsampler.x(data.getRecordDate(), data.getRecordTime()));
+    }
+    
+    private String resolutionFor(int days) {
+        if (days <= rawMaxDays) {
+            return "raw";
+        }
+        if (days <= dayMaxDays) {
+            return "day";
+        }
+        return days <= weekMaxDays ? "week" : "month";
     }
     
     /**
-     * 获取用户所有类型的最新数据
+     * 获取用户所有类型的最新数据（每种类型一条，按记录日期从新到旧）
+     * 读取用户快照缓存，未命中时用 DISTINCT ON 查询加载，见 HealthDataSnapshotCache
      */
-    @Transactional(readOnly = true)
     public List<HealthData> getLatestData(Long userId) {
-        // 这个查询比较复杂，需要分组获取每种类型的最新数据
-        // 可以考虑在 Service 层处理或创建专门的 XML 查询
-        LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(HealthData::getUserId, userId)
-               .orderByDesc(HealthData::getRecordDate);
-        
-        return healthDataMapper.selectList(wrapper);
+        return snapshotCache.latest(userId);
     }
     
     /**
@@ -170,9 +287,20 @@ public class HealthDataService {
     
     /**
      * 获取历史数据
+     * 启用本地列式存储时直接读取（不含备注、创建时间；存在无法编码的记录时间时回退到数据库）
      */
     @Transactional(readOnly = true)
     public List<HealthData> getHistory(Long userId, String dataType, int limit) {
+        requireKnownType(dataType);
+        if (columnStore.isEnabled()) {
+            Optional<List<HealthData>> rows = columnStore.latest(userId, dataType, limit);
+            if (rows.isPresent()) {
+                String unit = UNITS.get(dataType);
+                rows.get().forEach(data -> data.setUnit(unit));
+                return rows.get();
+            }
+        }
+        
         LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(HealthData::getUserId, userId)
                .eq(HealthData::getDataType, dataType)
@@ -196,6 +324,11 @@ public class HealthDataService {
             throw new RuntimeException("无权删除此数据");
         }
         
+        rollupMapper.lockSeries(userId, data.getDataType());
         healthDataMapper.deleteById(dataId);
+        rollupMapper.deleteBuckets(userId, data.getDataType(), data.getRecordDate());
+        rollupMapper.rebuildBuckets(userId, data.getDataType(), data.getRecordDate());
+        snapshotCache.onDeleted(data);
+        columnStore.onDeleted(data);
     }
 }
@@ -0,0 +1,171 @@
+package com.health.service;
+
+import com.health.entity.HealthData;
+import com.health.mapper.HealthDataMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各类型最新健康数据的用户快照缓存
+ *
+ * 快照为「数据类型 -> 最新一条记录」，首次读取时用 findLatestPerType 加载（每类型一行），
+ * 之后由新增、删除在事务提交后原地更新：新增的记录比快照中同类型的更新时替换；
+ * 删除的恰好是快照中的最新记录时丢弃该用户快照，下次读取重新加载（下一条最新记录需要查库）。
+ * - 加载期间发生写入时（版本号变化）不保存加载结果，避免旧数据覆盖已提交的更新
+ * - 多实例部署时其他实例的写入不会通知本实例，快照最长保留 ttl
+ * - 按最近访问顺序最多保留 max-users 个用户
+ *
+ * 指标：health.latest.cache{result=hit|miss}、health.latest.cache.size
+ */
+@Component
+@Slf4j
+public class HealthDataSnapshotCache {
+
+    private static final Comparator<HealthData> NEWEST_FIRST =
+            Comparator.comparing(HealthData::getRecordDate).thenComparing(HealthData::getId);
+
+    private final HealthDataMapper healthDataMapper;
+    private final Map<Long, Slot> slots;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${health.latest-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${health.latest-cache.ttl:10m}")
+    private Duration ttl;
+
+    public HealthDataSnapshotCache(HealthDataMapper healthDataMapper, MeterRegistry meterRegistry,
+                                   @Value("${health.latest-cache.max-users:10000}") int maxUsers) {
+        this.healthDataMapper = healthDataMapper;
+        this.slots = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Slot> eldest) {
+                return size() > maxUsers;
+            }
+        });
+        this.hits = Counter.builder("health.latest.cache").tag("result", "hit")
+                .description("各类型最新数据快照命中").register(meterRegistry);
+        this.misses = Counter.builder("health.latest.cache").tag("result", "miss")
+                .description("各类型最新数据快照未命中").register(meterRegistry);
+        Gauge.builder("health.latest.cache.size", slots, Map::size)
+                .description("已缓存快照的用户数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 用户各类型的最新数据，按记录日期从新到旧
+     */
+    public List<HealthData> latest(Long userId) {
+        if (!enabled) {
+            return sorted(healthDataMapper.findLatestPerType(userId));
+        }
+        Slot slot = slots.computeIfAbsent(userId, id -> new Slot());
+        long version;
+        synchronized (slot) {
+            if (slot.latest != null && System.nanoTime() - slot.loadedAt < ttl.toNanos()) {
+                hits.increment();
+                return sorted(slot.latest.values());
+            }
+            version = slot.version;
+        }
+
+        misses.increment();
+        List<HealthData> rows = healthDataMapper.findLatestPerType(userId);
+        Map<String, HealthData> latest = new HashMap<>();
+        rows.forEach(row -> latest.put(row.getDataType(), row));
+        synchronized (slot) {
+            if (slot.version == version) {
+                slot.latest = latest;
+                slot.loadedAt = System.nanoTime();
+            }
+        }
+        return sorted(rows);
+    }
+
+    /**
+     * 新增一条记录（调用方事务提交后生效）
+     */
+    public void onRecorded(HealthData data) {
+        afterCommit(() -> {
+            Slot slot = slots.get(data.getUserId());
+            if (slot == null) {
+                return;
+            }
+            synchronized (slot) {
+                slot.version++;
+                if (slot.latest != null) {
+                    HealthData current = slot.latest.get(data.getDataType());
+                    if (current == null || NEWEST_FIRST.compare(data, current) >= 0) {
+                        slot.latest.put(data.getDataType(), data);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 删除一条记录（调用方事务提交后生效）
+     */
+    public void onDeleted(HealthData data) {
+        afterCommit(() -> {
+            Slot slot = slots.get(data.getUserId());
+            if (slot == null) {
+                return;
+            }
+            synchronized (slot) {
+                slot.version++;
+                if (slot.latest != null) {
+                    HealthData current = slot.latest.get(data.getDataType());
+                    if (current != null && current.getId().equals(data.getId())) {
+                        slot.latest = null;
+                    }
+                }
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static List<HealthData> sorted(Iterable<HealthData> rows) {
+        List<HealthData> result = new ArrayList<>();
+        rows.forEach(result::add);
+        result.sort(NEWEST_FIRST.reversed());
+        return result;
+    }
+
+    /**
+     * 单个用户的快照；latest 为空表示需要重新加载，version 随每次写入递增
+     */
+    private static class Slot {
+        private Map<String, HealthData> latest;
+        private long loadedAt;
+        private long version;
+    }
+}
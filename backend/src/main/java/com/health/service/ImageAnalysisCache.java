@@ -0,0 +1,161 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.health.entity.ImageAnalysisResult;
+import com.health.mapper.ImageAnalysisResultMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * 图片分析结果缓存
+ *
+ * 以 (图片内容哈希, 规范化提示词 + 用户档案哈希, 模型) 为键持久化视觉模型的分析结果，
+ * 同一张图片用同样的问题重复分析时直接返回。图片被替换或删除时按内容哈希失效。
+ * 指标：ai.image.analysis.cache.requests{result=hit|miss}、ai.image.analysis.cache.hit.ratio
+ */
+@Component
+@Slf4j
+public class ImageAnalysisCache {
+
+    private static final String URL_KEY_PREFIX = "url:";
+
+    private final ImageAnalysisResultMapper imageAnalysisResultMapper;
+    private final ObjectMapper canonicalMapper;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${ai.image-analysis.model:qwen-vl-plus}")
+    private String model;
+
+    public ImageAnalysisCache(ImageAnalysisResultMapper imageAnalysisResultMapper, ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.imageAnalysisResultMapper = imageAnalysisResultMapper;
+        // 键按字母序输出，保证同样的档案得到同样的哈希
+        this.canonicalMapper = objectMapper.copy()
+                .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        this.hits = Counter.builder("ai.image.analysis.cache.requests")
+                .description("图片分析缓存查询次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ai.image.analysis.cache.requests")
+                .description("图片分析缓存查询次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("ai.image.analysis.cache.hit.ratio", this, ImageAnalysisCache::hitRatio)
+                .description("图片分析缓存命中率")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 当前使用的视觉模型（随请求发送给 AI 服务，同时作为缓存键的一部分）
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * 图片键：优先使用上传时计算的内容哈希，旧数据回退为 URL 哈希（OSS 文件名唯一，URL 不会复用）
+     */
+    public static String imageKey(String contentHash, String imageUrl) {
+        if (contentHash != null && !contentHash.isEmpty()) {
+            return contentHash;
+        }
+        return imageUrl != null ? URL_KEY_PREFIX + sha256Hex(imageUrl.getBytes(StandardCharsets.UTF_8)) : null;
+    }
+
+    /**
+     * 提示词键：提示词去首尾空白、合并连续空白、转小写后，与用户档案一起计算哈希
+     */
+    public String promptKey(String message, Object userProfile) {
+        String normalized = message == null ? "" : message.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        String profile;
+        try {
+            profile = userProfile != null ? canonicalMapper.writeValueAsString(userProfile) : "";
+        } catch (Exception e) {
+            profile = String.valueOf(userProfile);
+        }
+        return sha256Hex((normalized + "\n" + profile).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 查询缓存，未命中返回 null
+     */
+    public String get(String imageKey, String promptKey) {
+        if (imageKey == null) {
+            return null;
+        }
+        LambdaQueryWrapper<ImageAnalysisResult> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ImageAnalysisResult::getContentHash, imageKey)
+               .eq(ImageAnalysisResult::getPromptHash, promptKey)
+               .eq(ImageAnalysisResult::getModel, model);
+        ImageAnalysisResult cached = imageAnalysisResultMapper.selectOne(wrapper);
+        if (cached != null) {
+            hits.increment();
+            return cached.getResult();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入分析结果（只应写入成功的分析）
+     */
+    public void put(String imageKey, String promptKey, String result) {
+        if (imageKey == null || result == null) {
+            return;
+        }
+        try {
+            imageAnalysisResultMapper.upsert(ImageAnalysisResult.builder()
+                    .contentHash(imageKey)
+                    .promptHash(promptKey)
+                    .model(model)
+                    .result(result)
+                    .build());
+        } catch (Exception e) {
+            log.warn("写入图片分析缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 图片被替换或删除时，清除该图片的所有分析结果
+     */
+    public void invalidate(String contentHash, String imageUrl) {
+        String key = imageKey(contentHash, imageUrl);
+        if (key == null) {
+            return;
+        }
+        LambdaQueryWrapper<ImageAnalysisResult> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(ImageAnalysisResult::getContentHash, key);
+        int removed = imageAnalysisResultMapper.delete(wrapper);
+        if (removed > 0) {
+            log.debug("图片分析缓存失效: {} 条", removed);
+        }
+    }
+
+    public static String sha256Hex(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
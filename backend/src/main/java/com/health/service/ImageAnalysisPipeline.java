@@ -0,0 +1,325 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.health.entity.MedicalRecord;
+import com.health.entity.MedicalRecordImage;
+import com.health.entity.UserProfile;
+import com.health.exception.AiOverloadedException;
+import com.health.mapper.MedicalRecordImageMapper;
+import com.health.mapper.MedicalRecordMapper;
+import com.health.mapper.UserProfileMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图片预分析流水线
+ *
+ * 图片上传提交后进入有界队列，由固定数量的工作线程调用视觉模型（默认提示词），结果写回图片所在行并进入分析缓存。
+ * 失败按指数退避重试，超过次数标记为 failed；队列满或服务重启丢失的任务由定时补偿扫描重新入队。
+ * 每次处理前先把状态从 pending 条件更新为 processing，保证同一张图片不会被并发分析。
+ * 认领后发现病历或图片已删除、没有图片路径时标记为 skipped，不再扫描；准入排队被拒绝（该用户排队已满）
+ * 不算一次尝试，退回 pending 并按 retry-backoff 延后重新入队。
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ImageAnalysisPipeline {
+
+    public static final String PENDING = "pending";
+    public static final String PROCESSING = "processing";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final String SKIPPED = "skipped";
+
+    /**
+     * 图片已保存事件，imageId 为 null 表示病历主图（medical_records.file_path）
+     */
+    public record ImageStored(Long recordId, Long imageId) {
+    }
+
+    private final MedicalRecordMapper medicalRecordMapper;
+    private final MedicalRecordImageMapper medicalRecordImageMapper;
+    private final UserProfileMapper userProfileMapper;
+    private final ImageAnalysisService imageAnalysisService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.image-analysis.pipeline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.image-analysis.pipeline.concurrency:2}")
+    private int concurrency;
+
+    @Value("${ai.image-analysis.pipeline.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${ai.image-analysis.pipeline.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${ai.image-analysis.pipeline.retry-backoff:30000}")
+    private long retryBackoffMillis;
+
+    @Value("${ai.image-analysis.pipeline.sweep-batch:50}")
+    private int sweepBatch;
+
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService retryScheduler;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-analysis-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "image-analysis-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("ai.image.analysis.pipeline.queue", workers, executor -> executor.getQueue().size())
+                .description("等待预分析的图片数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * 上传事务提交后入队；不在事务中发布时立即入队
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onImageStored(ImageStored event) {
+        submit(event);
+    }
+
+    /**
+     * 启动时把上次停机时正在处理的任务恢复为 pending，交给补偿扫描
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInterrupted() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            medicalRecordMapper.update(null, new LambdaUpdateWrapper<MedicalRecord>()
+                    .eq(MedicalRecord::getAnalysisStatus, PROCESSING)
+                    .set(MedicalRecord::getAnalysisStatus, PENDING));
+            medicalRecordImageMapper.update(null, new LambdaUpdateWrapper<MedicalRecordImage>()
+                    .eq(MedicalRecordImage::getAnalysisStatus, PROCESSING)
+                    .set(MedicalRecordImage::getAnalysisStatus, PENDING));
+        } catch (Exception e) {
+            log.warn("恢复未完成的图片预分析任务失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 补偿扫描：把仍为 pending 的图片重新入队（队列满被丢弃、重启丢失的任务）
+     */
+    @Scheduled(initialDelayString = "${ai.image-analysis.pipeline.sweep-initial-delay:60000}",
+               fixedDelayString = "${ai.image-analysis.pipeline.sweep-interval:300000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        int room = queueCapacity - workers.getQueue().size();
+        if (room <= 0) {
+            return;
+        }
+        int batch = Math.min(room, sweepBatch);
+        try {
+            List<MedicalRecord> records = medicalRecordMapper.selectList(new LambdaQueryWrapper<MedicalRecord>()
+                    .select(MedicalRecord::getId)
+                    .eq(MedicalRecord::getAnalysisStatus, PENDING)
+                    .orderByAsc(MedicalRecord::getId)
+                    .last("LIMIT " + batch));
+            records.forEach(record -> submit(new ImageStored(record.getId(), null)));
+
+            List<MedicalRecordImage> images = medicalRecordImageMapper.selectList(new LambdaQueryWrapper<MedicalRecordImage>()
+                    .select(MedicalRecordImage::getId, MedicalRecordImage::getRecordId)
+                    .eq(MedicalRecordImage::getAnalysisStatus, PENDING)
+                    .orderByAsc(MedicalRecordImage::getId)
+                    .last("LIMIT " + batch));
+            images.forEach(image -> submit(new ImageStored(image.getRecordId(), image.getId())));
+
+            if (!records.isEmpty() || !images.isEmpty()) {
+                log.info("图片预分析补偿扫描：重新入队 {} 张主图、{} 张附加图片", records.size(), images.size());
+            }
+        } catch (Exception e) {
+            log.warn("图片预分析补偿扫描失败: {}", e.getMessage());
+        }
+    }
+
+    private void submit(ImageStored target) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            workers.execute(() -> process(target));
+        } catch (RejectedExecutionException e) {
+            // 保持 pending，等待补偿扫描
+            count("rejected");
+            log.debug("图片预分析队列已满，稍后补偿: {}", target);
+        }
+    }
+
+    private void process(ImageStored target) {
+        if (!claim(target)) {
+            return;
+        }
+
+        MedicalRecord record = medicalRecordMapper.selectById(target.recordId());
+        MedicalRecordImage image = target.imageId() != null ? medicalRecordImageMapper.selectById(target.imageId()) : null;
+        if (record == null || (target.imageId() != null && image == null)) {
+            skip(target);
+            return;
+        }
+        String filePath = image != null ? image.getFilePath() : record.getFilePath();
+        String contentHash = image != null ? image.getContentHash() : record.getContentHash();
+        Integer attemptCount = image != null ? image.getAnalysisAttempts() : record.getAnalysisAttempts();
+        int attempts = attemptCount != null ? attemptCount : 1;
+        if (filePath == null || filePath.isEmpty()) {
+            skip(target);
+            return;
+        }
+
+        try {
+            UserProfile profile = userProfileMapper.selectOne(new LambdaQueryWrapper<UserProfile>()
+                    .eq(UserProfile::getUserId, record.getUserId()));
+            String result = imageAnalysisService.analyze(record.getUserId(), ImageAnalysisService.DEFAULT_PROMPT, filePath, contentHash,
+                    profile, false);
+            complete(target, filePath, DONE, result);
+            count("success");
+        } catch (AiOverloadedException e) {
+            // 准入被拒绝，视觉模型没有被调用：退回这次认领计入的尝试次数
+            defer(target, filePath);
+            retryScheduler.schedule(() -> submit(target), retryBackoffMillis, TimeUnit.MILLISECONDS);
+            count("deferred");
+            log.debug("图片预分析准入被拒绝，{} ms 后重新入队: {} - {}", retryBackoffMillis, target, e.getMessage());
+        } catch (Exception e) {
+            if (attempts < maxAttempts) {
+                complete(target, filePath, PENDING, null);
+                long delay = retryBackoffMillis << (attempts - 1);
+                retryScheduler.schedule(() -> submit(target), delay, TimeUnit.MILLISECONDS);
+                count("retry");
+                log.warn("图片预分析失败，{} ms 后重试（第 {} 次）: {}", delay, attempts, e.getMessage());
+            } else {
+                complete(target, filePath, FAILED, null);
+                count("failed");
+                log.error("图片预分析失败，已达最大重试次数: {} - {}", target, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * pending → processing 条件更新，同时累计尝试次数；返回 false 表示已被其他线程处理或状态已变化
+     */
+    private boolean claim(ImageStored target) {
+        if (target.imageId() != null) {
+            return medicalRecordImageMapper.update(null, new LambdaUpdateWrapper<MedicalRecordImage>()
+                    .eq(MedicalRecordImage::getId, target.imageId())
+                    .eq(MedicalRecordImage::getAnalysisStatus, PENDING)
+                    .set(MedicalRecordImage::getAnalysisStatus, PROCESSING)
+                    .setSql("analysis_attempts = analysis_attempts + 1")) > 0;
+        }
+        return medicalRecordMapper.update(null, new LambdaUpdateWrapper<MedicalRecord>()
+                .eq(MedicalRecord::getId, target.recordId())
+                .eq(MedicalRecord::getAnalysisStatus, PENDING)
+                .set(MedicalRecord::getAnalysisStatus, PROCESSING)
+                .setSql("analysis_attempts = analysis_attempts + 1")) > 0;
+    }
+
+    /**
+     * 认领后没有可分析的图片（病历或图片已删除、没有图片路径）：processing → skipped，补偿扫描不再处理
+     */
+    private void skip(ImageStored target) {
+        if (target.imageId() != null) {
+            medicalRecordImageMapper.update(null, new LambdaUpdateWrapper<MedicalRecordImage>()
+                    .eq(MedicalRecordImage::getId, target.imageId())
+                    .eq(MedicalRecordImage::getAnalysisStatus, PROCESSING)
+                    .set(MedicalRecordImage::getAnalysisStatus, SKIPPED));
+        } else {
+            medicalRecordMapper.update(null, new LambdaUpdateWrapper<MedicalRecord>()
+                    .eq(MedicalRecord::getId, target.recordId())
+                    .eq(MedicalRecord::getAnalysisStatus, PROCESSING)
+                    .set(MedicalRecord::getAnalysisStatus, SKIPPED));
+        }
+        count("skipped");
+        log.debug("图片预分析跳过，没有可分析的图片: {}", target);
+    }
+
+    /**
+     * 准入被拒绝：processing → pending，并退回认领时累加的尝试次数（图片已被替换时不生效）
+     */
+    private void defer(ImageStored target, String filePath) {
+        if (target.imageId() != null) {
+            medicalRecordImageMapper.update(null, new LambdaUpdateWrapper<MedicalRecordImage>()
+                    .eq(MedicalRecordImage::getId, target.imageId())
+                    .eq(MedicalRecordImage::getFilePath, filePath)
+                    .eq(MedicalRecordImage::getAnalysisStatus, PROCESSING)
+                    .set(MedicalRecordImage::getAnalysisStatus, PENDING)
+                    .setSql("analysis_attempts = GREATEST(analysis_attempts - 1, 0)"));
+            return;
+        }
+        medicalRecordMapper.update(null, new LambdaUpdateWrapper<MedicalRecord>()
+                .eq(MedicalRecord::getId, target.recordId())
+                .eq(MedicalRecord::getFilePath, filePath)
+                .eq(MedicalRecord::getAnalysisStatus, PROCESSING)
+                .set(MedicalRecord::getAnalysisStatus, PENDING)
+                .setSql("analysis_attempts = GREATEST(analysis_attempts - 1, 0)"));
+    }
+
+    /**
+     * 写回结果；只有图片未被替换（file_path 不变且仍为 processing）时才生效
+     */
+    private void complete(ImageStored target, String filePath, String status, String result) {
+        if (target.imageId() != null) {
+            medicalRecordImageMapper.update(null, new LambdaUpdateWrapper<MedicalRecordImage>()
+                    .eq(MedicalRecordImage::getId, target.imageId())
+                    .eq(MedicalRecordImage::getFilePath, filePath)
+                    .eq(MedicalRecordImage::getAnalysisStatus, PROCESSING)
+                    .set(MedicalRecordImage::getAnalysisStatus, status)
+                    .set(DONE.equals(status), MedicalRecordImage::getAnalysisResult, result)
+                    .set(DONE.equals(status), MedicalRecordImage::getAnalyzedAt, LocalDateTime.now()));
+            return;
+        }
+        medicalRecordMapper.update(null, new LambdaUpdateWrapper<MedicalRecord>()
+                .eq(MedicalRecord::getId, target.recordId())
+                .eq(MedicalRecord::getFilePath, filePath)
+                .eq(MedicalRecord::getAnalysisStatus, PROCESSING)
+                .set(MedicalRecord::getAnalysisStatus, status)
+                .set(DONE.equals(status), MedicalRecord::getAnalysisResult, result)
+                .set(DONE.equals(status), MedicalRecord::getAnalyzedAt, LocalDateTime.now()));
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("ai.image.analysis.pipeline.jobs", "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,102 @@
+package com.health.service;
+
+import com.health.client.AiAdmissionScheduler;
+import com.health.client.AiGatewayClient;
+import com.health.client.AiOperation;
+import com.health.client.SingleFlight;
+import com.health.dto.ai.AiImageAnalysisRequest;
+import com.health.dto.ai.AiResponse;
+import com.health.entity.UserProfile;
+import com.health.exception.AiServiceException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+/**
+ * 图片分析服务 - 对话中的即时分析与上传后的预分析共用，结果经 ImageAnalysisCache 缓存
+ *
+ * 同一用户对同一图片、同一提示词和档案的并发请求（重复点击、客户端重试）合并为一次视觉模型调用；
+ * 合并键包含 userId 和是否计量，因此准入排队、配额和用量始终属于发起调用的用户，不会把他人的失败传给跟随者
+ * 对话中的即时分析按用户计量：缓存未命中时先检查配额再加入合并，只有实际调用视觉模型时才记录用量，缓存命中和合并到其他请求的调用不计
+ */
+@Service
+public class ImageAnalysisService {
+    
+    /**
+     * 未指定问题时的默认提示词（预分析也使用它，因此默认分析可以直接命中预分析结果）
+     */
+    public static final String DEFAULT_PROMPT = "请分析这张医疗图片";
+    
+    private final AiGatewayClient aiGatewayClient;
+    private final AiAdmissionScheduler admissionScheduler;
+    private final ImageAnalysisCache imageAnalysisCache;
+    private final AiUsageMeter aiUsageMeter;
+    private final SingleFlight<String, String> inFlight;
+    
+    public ImageAnalysisService(AiGatewayClient aiGatewayClient, AiAdmissionScheduler admissionScheduler,
+                                ImageAnalysisCache imageAnalysisCache, AiUsageMeter aiUsageMeter,
+                                MeterRegistry meterRegistry) {
+        this.aiGatewayClient = aiGatewayClient;
+        this.admissionScheduler = admissionScheduler;
+        this.imageAnalysisCache = imageAnalysisCache;
+        this.aiUsageMeter = aiUsageMeter;
+        this.inFlight = new SingleFlight<>("image_analysis", meterRegistry);
+    }
+    
+    /**
+     * 分析图片，失败时抛出 AiServiceException（只缓存成功的结果）
+     * 缓存未命中时按 userId 经准入调度排队，排队已满或超时抛出 AiOverloadedException
+     *
+     * @param metered 是否计入用户的 AI 用量（对话中的即时分析为 true；上传后的预分析为 false）。
+     *                为 true 时缓存未命中才检查配额，超出抛出 AiQuotaExceededException
+     */
+    public String analyze(Long userId, String message, String imageUrl, String contentHash, UserProfile profile,
+                          boolean metered) {
+        AiImageAnalysisRequest request = new AiImageAnalysisRequest(
+                message != null && !message.isBlank() ? message : DEFAULT_PROMPT,
+                imageUrl,
+                imageAnalysisCache.getModel(),
+                AiImageAnalysisRequest.Profile.from(profile));
+        
+        String imageKey = ImageAnalysisCache.imageKey(contentHash, imageUrl);
+        String promptKey = imageAnalysisCache.promptKey(request.message(), request.userProfile());
+        String cached = imageAnalysisCache.get(imageKey, promptKey);
+        if (cached != null) {
+            return cached;
+        }
+        if (metered) {
+            aiUsageMeter.checkQuota(userId);
+        }
+        return inFlight.execute(userId + "|" + metered + "|" + imageKey + "|" + promptKey, () -> {
+            String result = imageAnalysisCache.get(imageKey, promptKey);
+            if (result != null) {
+                return result;
+            }
+            try (AiAdmissionScheduler.Permit permit = admissionScheduler.acquire(userId, AiOperation.IMAGE_ANALYSIS)) {
+                if (!metered) {
+                    return callVisionModel(request, imageKey, promptKey);
+                }
+                long start = System.nanoTime();
+                try {
+                    result = callVisionModel(request, imageKey, promptKey);
+                    return result;
+                } finally {
+                    aiUsageMeter.record(userId, AiOperation.IMAGE_ANALYSIS, ChatContextBuilder.estimateTokens(request.message()),
+                            ChatContextBuilder.estimateTokens(result), System.nanoTime() - start);
+                }
+            }
+        });
+    }
+    
+    private String callVisionModel(AiImageAnalysisRequest request, String imageKey, String promptKey) {
+        AiResponse response = aiGatewayClient.post(AiOperation.IMAGE_ANALYSIS, request);
+        if (response == null || response.response() == null) {
+            throw new AiServiceException("图片分析服务返回为空");
+        }
+        
+        if (!response.succeeded()) {
+            throw new AiServiceException(response.response());
+        }
+        imageAnalysisCache.put(imageKey, promptKey, response.response());
+        return response.response();
+    }
+}
@@ -1,8 +1,10 @@
 package com.health.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.health.dto.record.RecordRequest;
 import com.health.dto.record.RecordResponse;
+import com.health.dto.record.ToolRecordView;
 import com.health.entity.MedicalRecord;
 import com.health.entity.MedicalRecordImage;
 import com.health.entity.User;
@@ -11,11 +13,14 @@ import com.health.mapper.MedicalRecordMapper;
 import com.health.mapper.UserMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -32,6 +37,8 @@ public class MedicalRecordService {
     private final MedicalRecordImageMapper medicalRecordImageMapper;
     private final UserMapper userMapper;
     private final OssService ossService;
+    private final ImageAnalysisCache imageAnalysisCache;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * 获取用户的所有病历
@@ -46,6 +53,64 @@ public class MedicalRecordService {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * 智能体工具：病历列表（按创建时间倒序，可按类型筛选、限制条数）
+     */
+    @Transactional(readOnly = true)
+    public List<ToolRecordView> listRecordsForTools(Long userId, String recordType, Integer limit) {
+        LambdaQueryWrapper<MedicalRecord> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(MedicalRecord::getUserId, userId)
+               .like(StringUtils.hasText(recordType), MedicalRecord::getRecordType, recordType)
+               .orderByDesc(MedicalRecord::getCreatedAt)
+               .last(limit != null && limit > 0, "LIMIT " + limit);
+        return medicalRecordMapper.selectList(wrapper).stream()
+                .map(ToolRecordView::from)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 智能体工具：单个病历（含全部图片）
+     */
+    @Transactional(readOnly = true)
+    public ToolRecordView getRecordForTools(Long userId, Long recordId) {
+        return ToolRecordView.from(findOwnedRecord(userId, recordId), getRecordImages(userId, recordId));
+    }
+    
+    /**
+     * 智能体工具：按关键词（标题/描述/医生）、医院、类型、年份搜索病历
+     */
+    @Transactional(readOnly = true)
+    public List<ToolRecordView> searchRecordsForTools(Long userId, String keyword, String hospital,
+                                                      String recordType, Integer year) {
+        LambdaQueryWrapper<MedicalRecord> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(MedicalRecord::getUserId, userId)
+               .and(StringUtils.hasText(keyword), w -> w
+                       .like(MedicalRecord::getTitle, keyword)
+                       .or().like(MedicalRecord::getDescription, keyword)
+                       .or().like(MedicalRecord::getDoctor, keyword))
+               .like(StringUtils.hasText(hospital), MedicalRecord::getHospital, hospital)
+               .like(StringUtils.hasText(recordType), MedicalRecord::getRecordType, recordType)
+               .between(year != null, MedicalRecord::getRecordDate,
+                       year != null ? LocalDate.of(year, 1, 1) : null,
+                       year != null ? LocalDate.of(year, 12, 31) : null)
+               .orderByDesc(MedicalRecord::getCreatedAt);
+        return medicalRecordMapper.selectList(wrapper).stream()
+                .map(ToolRecordView::from)
+                .collect(Collectors.toList());
+    }
+    
+    private MedicalRecord findOwnedRecord(Long userId, Long recordId) {
+        MedicalRecord record = medicalRecordMapper.selectById(recordId);
+        if (record == null) {
+            throw new RuntimeException("病历记录不存在");
+        }
+        
+        if (!record.getUserId().equals(userId)) {
+            throw new RuntimeException("无权访问此病历");
+        }
+        return record;
+    }
+    
     /**
      * 获取单个病历
      */
@@ -102,9 +167,10 @@ public class MedicalRecordService {
             throw new RuntimeException("无权操作此病历");
         }
         
-        // 删除旧文件
+        // 删除旧文件及其分析结果缓存
         if (record.getFilePath() != null) {
             ossService.deleteFile(record.getFilePath());
+            imageAnalysisCache.invalidate(record.getContentHash(), record.getFilePath());
         }
         
         // 上传新文件到 OSS
@@ -116,9 +182,14 @@ public class MedicalRecordService {
         record.setFileName(file.getOriginalFilename());
         record.setFileType(file.getContentType());
         record.setFileSize(file.getSize());
+        record.setContentHash(ImageAnalysisCache.sha256Hex(file.getBytes()));
         
         medicalRecordMapper.updateById(record);
         
+        // 新主图进入后台预分析（事务提交后入队）
+        resetRecordAnalysis(recordId, ImageAnalysisPipeline.PENDING);
+        eventPublisher.publishEvent(new ImageAnalysisPipeline.ImageStored(recordId, null));
+        
         return RecordResponse.fromEntity(record);
     }
     
@@ -179,6 +250,7 @@ public class MedicalRecordService {
         // 删除 OSS 文件（主文件）
         if (record.getFilePath() != null) {
             ossService.deleteFile(record.getFilePath());
+            imageAnalysisCache.invalidate(record.getContentHash(), record.getFilePath());
         }
         
         // 删除所有关联图片
@@ -187,6 +259,7 @@ public class MedicalRecordService {
         List<MedicalRecordImage> images = medicalRecordImageMapper.selectList(wrapper);
         for (MedicalRecordImage image : images) {
             ossService.deleteFile(image.getFilePath());
+            imageAnalysisCache.invalidate(image.getContentHash(), image.getFilePath());
         }
         
         medicalRecordMapper.deleteById(recordId);
@@ -225,11 +298,15 @@ public class MedicalRecordService {
                         .fileName(file.getOriginalFilename())
                         .fileType(file.getContentType())
                         .fileSize(file.getSize())
+                        .contentHash(ImageAnalysisCache.sha256Hex(file.getBytes()))
                         .sortOrder(currentOrder++)
+                        .analysisStatus(ImageAnalysisPipeline.PENDING)
+                        .analysisAttempts(0)
                         .build();
                 
                 medicalRecordImageMapper.insert(image);
                 newImages.add(image);
+                eventPublisher.publishEvent(new ImageAnalysisPipeline.ImageStored(recordId, image.getId()));
             }
         }
         
@@ -240,7 +317,10 @@ public class MedicalRecordService {
             record.setFileName(firstImage.getFileName());
             record.setFileType(firstImage.getFileType());
             record.setFileSize(firstImage.getFileSize());
+            record.setContentHash(firstImage.getContentHash());
             medicalRecordMapper.updateById(record);
+            // 主图来自图片表，预分析结果在对应图片行上
+            resetRecordAnalysis(recordId, null);
         }
         
         return RecordResponse.fromEntity(record);
@@ -265,8 +345,9 @@ public class MedicalRecordService {
             throw new RuntimeException("图片不存在");
         }
         
-        // 删除 OSS 文件
+        // 删除 OSS 文件及其分析结果缓存
         ossService.deleteFile(imageToDelete.getFilePath());
+        imageAnalysisCache.invalidate(imageToDelete.getContentHash(), imageToDelete.getFilePath());
         
         // 从数据库中删除
         medicalRecordImageMapper.deleteById(imageId);
@@ -284,18 +365,33 @@ public class MedicalRecordService {
                 record.setFileName(newMain.getFileName());
                 record.setFileType(newMain.getFileType());
                 record.setFileSize(newMain.getFileSize());
+                record.setContentHash(newMain.getContentHash());
             } else {
                 record.setFilePath(null);
                 record.setFileName(null);
                 record.setFileType(null);
                 record.setFileSize(null);
+                record.setContentHash(null);
             }
             medicalRecordMapper.updateById(record);
+            resetRecordAnalysis(recordId, null);
         }
         
         return RecordResponse.fromEntity(record);
     }
     
+    /**
+     * 重置病历主图的预分析状态（status 为 null 表示主图不单独预分析）
+     */
+    private void resetRecordAnalysis(Long recordId, String status) {
+        medicalRecordMapper.update(null, new LambdaUpdateWrapper<MedicalRecord>()
+                .eq(MedicalRecord::getId, recordId)
+                .set(MedicalRecord::getAnalysisStatus, status)
+                .set(MedicalRecord::getAnalysisResult, null)
+                .set(MedicalRecord::getAnalysisAttempts, 0)
+                .set(MedicalRecord::getAnalyzedAt, null));
+    }
+    
     /**
      * 获取病历的所有图片
      */
@@ -0,0 +1,128 @@
+package com.health.service;
+
+import com.health.config.ModelRoutingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 对话模型分级路由
+ *
+ * 按消息长度、是否看图或多步推理、会话长度把每次对话分到 fast / standard / large 三档，
+ * 随请求发给 AI 服务，由 AI 服务换成具体模型。"谢谢""好的"这类寒暄占多数，走小模型且不带工具，
+ * 一次往返即可返回；fast 档没有工具，因此只接受白名单内的寒暄短语，其余短句（症状、用药、数据）都走 standard；
+ * 多份病历对比等复杂问题走大模型。
+ *
+ * 指标：chat.model.route{tier} 为各档位请求数，chat.model.latency{tier} 为各档位 AI 调用耗时
+ */
+@Component
+@RequiredArgsConstructor
+public class ModelRouter {
+
+    private static final Pattern NON_WORD = Pattern.compile("[\\s\\p{P}\\p{S}]+");
+
+    private final ModelRoutingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 模型档位，tag 为发给 AI 服务的 modelTier
+     */
+    public enum Tier {
+        FAST("fast"),
+        STANDARD("standard"),
+        LARGE("large");
+
+        private final String tag;
+
+        Tier(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    /**
+     * 为一次对话选择档位
+     *
+     * @param historySize 上下文窗口内的消息数
+     * @param summarized  会话是否已有滚动摘要（更早的消息已被折叠）
+     */
+    public Tier route(String message, int historySize, boolean summarized) {
+        Tier tier = classify(message == null ? "" : message.trim(), historySize, summarized);
+        Counter.builder("chat.model.route")
+                .description("对话按模型档位的分流次数")
+                .tag("tier", tier.tag())
+                .register(meterRegistry)
+                .increment();
+        return tier;
+    }
+
+    private Tier classify(String message, int historySize, boolean summarized) {
+        if (!properties.isEnabled()) {
+            return Tier.STANDARD;
+        }
+        int length = message.codePointCount(0, message.length());
+        if (length >= properties.getLargeMinChars() || containsAny(message, properties.getLargeKeywords())) {
+            return Tier.LARGE;
+        }
+        boolean shortSession = !summarized && historySize <= properties.getFastMaxHistory();
+        if (shortSession && length <= properties.getFastMaxChars() && isSmallTalk(message)) {
+            return Tier.FAST;
+        }
+        return Tier.STANDARD;
+    }
+
+    /**
+     * 记录一次 AI 调用在对应档位上的耗时
+     */
+    public void recordLatency(Tier tier, long elapsedNanos) {
+        Timer.builder("chat.model.latency")
+                .description("对话按模型档位的 AI 调用耗时")
+                .tag("tier", tier.tag())
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 去掉空白和标点后，消息能否完全由白名单短语拼成（每次取最长匹配的前缀）
+     */
+    private boolean isSmallTalk(String message) {
+        String rest = NON_WORD.matcher(message).replaceAll("").toLowerCase(Locale.ROOT);
+        if (rest.isEmpty()) {
+            return false;
+        }
+        while (!rest.isEmpty()) {
+            int matched = 0;
+            for (String phrase : properties.getSmallTalkPhrases()) {
+                String normalized = phrase.toLowerCase(Locale.ROOT);
+                if (normalized.length() > matched && rest.startsWith(normalized)) {
+                    matched = normalized.length();
+                }
+            }
+            if (matched == 0) {
+                return false;
+            }
+            rest = rest.substring(matched);
+        }
+        return true;
+    }
+
+    private static boolean containsAny(String message, List<String> keywords) {
+        for (String keyword : keywords) {
+            if (!keyword.isEmpty() && message.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
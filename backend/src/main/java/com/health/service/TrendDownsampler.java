@@ -0,0 +1,320 @@
+package com.health.service;
+
+import com.health.dto.health.HealthTrendPoint;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 趋势点服务端降采样，按时间顺序逐个接收点，单次遍历，只缓存当前和下一个桶
+ *
+ * - lttb：Largest-Triangle-Three-Buckets，保留首尾点，中间每个桶选出与上一选中点、下一桶均值构成三角形面积最大的点，
+ *   保留峰谷形状（血压按收缩压计算）
+ * - envelope：每个桶合并为一个点，min / max、systolicMin / systolicMax、diastolicMin / diastolicMax 为桶内包络，
+ *   value / systolicPressure / diastolicPressure 为桶内均值（按各字段非空条数加权），recordDate 为桶内第一个点的日期（血压默认使用）
+ *
+ * 桶按总数 total 预先划分；total 只用于分桶（实际点数偏少时输出也相应变少），输出始终不超过 maxPoints 个
+ */
+abstract class TrendDownsampler {
+
+    static final String LTTB = "lttb";
+    static final String ENVELOPE = "envelope";
+
+    // 早晨 / 下午 / 晚上 / 夜间记录在横轴上的位置（当天分钟数），顺序同 HealthColumnStore.encodeTime 的 -2..-5
+    private static final int[] PERIOD_MINUTES = {8 * 60, 14 * 60, 19 * 60, 22 * 60};
+    private static final int NOON = 12 * 60;
+
+    protected final List<HealthTrendPoint> result = new ArrayList<>();
+
+    /**
+     * @param mode lttb / envelope，为空时血压使用 envelope，其他类型使用 lttb
+     */
+    static TrendDownsampler create(String mode, String dataType, long total, int maxPoints) {
+        if (maxPoints < 3) {
+            throw new RuntimeException("maxPoints 不能小于 3");
+        }
+        boolean bloodPressure = "blood_pressure".equals(dataType);
+        String resolved = mode != null && !mode.isEmpty() ? mode : bloodPressure ? ENVELOPE : LTTB;
+        return switch (resolved) {
+            case LTTB -> new Lttb(total, maxPoints, bloodPressure);
+            case ENVELOPE -> new Envelope(total, maxPoints);
+            default -> throw new RuntimeException("不支持的降采样方式: " + resolved);
+        };
+    }
+
+    /**
+     * 横轴坐标：记录日期的分钟数，加上记录时间（HH:MM 或时段，缺省按中午）
+     */
+    static long x(LocalDate date, String recordTime) {
+        int code = HealthColumnStore.encodeTime(recordTime);
+        int minute = code >= 0 ? code
+                : code <= -2 && code >= -1 - PERIOD_MINUTES.length ? PERIOD_MINUTES[-2 - code] : NOON;
+        return date.toEpochDay() * 24 * 60 + minute;
+    }
+
+    /**
+     * 按时间顺序加入一个点
+     */
+    abstract void add(HealthTrendPoint point, long x);
+
+    /**
+     * 输出降采样结果（按时间正序）
+     */
+    abstract List<HealthTrendPoint> finish();
+
+    private static final class Lttb extends TrendDownsampler {
+
+        private final int maxPoints;
+        private final double every;
+        private final boolean bloodPressure;
+        private long seen;
+        // 已选中的上一个点
+        private double selectedX;
+        private double selectedY;
+        private boolean started;
+        // 延迟一个点分桶：流结束前无法确定哪个是最后一点
+        private Sample pending;
+        private Bucket current;
+        private Bucket next;
+
+        Lttb(long total, int maxPoints, boolean bloodPressure) {
+            this.maxPoints = maxPoints;
+            this.every = Math.max(1.0, (double) (total - 2) / (maxPoints - 2));
+            this.bloodPressure = bloodPressure;
+        }
+
+        @Override
+        void add(HealthTrendPoint point, long x) {
+            long index = seen++;
+            Double y = bloodPressure ? toDouble(point.getSystolicPressure()) : toDouble(point.getValue());
+            if (y == null) {
+                return;
+            }
+            Sample sample = new Sample(point, x, y, index);
+            if (!started) {
+                emit(sample);
+                started = true;
+                return;
+            }
+            if (pending != null) {
+                assign(pending);
+            }
+            pending = sample;
+        }
+
+        @Override
+        List<HealthTrendPoint> finish() {
+            if (pending == null) {
+                return result;
+            }
+            if (current != null) {
+                if (next != null) {
+                    emit(current.select(selectedX, selectedY, next.avgX(), next.avgY()));
+                    current = next;
+                }
+                emit(current.select(selectedX, selectedY, pending.x, pending.y));
+            }
+            emit(pending);
+            return result;
+        }
+
+        private void assign(Sample sample) {
+            int bucket = (int) Math.min((sample.index - 1) / every, maxPoints - 3);
+            if (current == null) {
+                current = new Bucket(bucket);
+            } else if (bucket != current.index) {
+                if (next == null) {
+                    next = new Bucket(bucket);
+                } else if (bucket != next.index) {
+                    emit(current.select(selectedX, selectedY, next.avgX(), next.avgY()));
+                    current = next;
+                    next = new Bucket(bucket);
+                }
+            }
+            (next != null ? next : current).add(sample);
+        }
+
+        private void emit(Sample sample) {
+            result.add(sample.point);
+            selectedX = sample.x;
+            selectedY = sample.y;
+        }
+    }
+
+    private static final class Envelope extends TrendDownsampler {
+
+        private final int maxPoints;
+        private final double every;
+        private long seen;
+        private int index = -1;
+        private HealthTrendPoint first;
+        private int count;
+        private BigDecimal min;
+        private BigDecimal max;
+        private BigDecimal sum;
+        private BigDecimal last;
+        private int valueCount;
+        private long systolicSum;
+        private long diastolicSum;
+        private int systolicCount;
+        private int diastolicCount;
+        private Integer systolicMin;
+        private Integer systolicMax;
+        private Integer diastolicMin;
+        private Integer diastolicMax;
+
+        Envelope(long total, int maxPoints) {
+            this.maxPoints = maxPoints;
+            this.every = Math.max(1.0, (double) total / maxPoints);
+        }
+
+        @Override
+        void add(HealthTrendPoint point, long x) {
+            int bucket = (int) Math.min(seen++ / every, maxPoints - 1);
+            if (bucket != index) {
+                flush();
+                index = bucket;
+            }
+            if (first == null) {
+                first = point;
+            }
+            count += point.getCount() != null ? point.getCount() : 1;
+            min = lesser(min, point.getMin());
+            max = greater(max, point.getMax());
+            if (point.getSum() != null) {
+                sum = sum == null ? point.getSum() : sum.add(point.getSum());
+                valueCount += weight(point.getValueCount(), point.getCount());
+            }
+            if (point.getLast() != null) {
+                last = point.getLast();
+            }
+            // 各点的血压是点内平均值，按该点非空条数加权
+            if (point.getSystolicPressure() != null) {
+                int weight = weight(point.getSystolicCount(), point.getCount());
+                systolicSum += (long) point.getSystolicPressure() * weight;
+                systolicCount += weight;
+            }
+            if (point.getDiastolicPressure() != null) {
+                int weight = weight(point.getDiastolicCount(), point.getCount());
+                diastolicSum += (long) point.getDiastolicPressure() * weight;
+                diastolicCount += weight;
+            }
+            systolicMin = lesser(systolicMin, point.getSystolicMin());
+            systolicMax = greater(systolicMax, point.getSystolicMax());
+            diastolicMin = lesser(diastolicMin, point.getDiastolicMin());
+            diastolicMax = greater(diastolicMax, point.getDiastolicMax());
+        }
+
+        @Override
+        List<HealthTrendPoint> finish() {
+            flush();
+            return result;
+        }
+
+        private void flush() {
+            if (first == null) {
+                return;
+            }
+            result.add(HealthTrendPoint.builder()
+                    .dataType(first.getDataType())
+                    .resolution(first.getResolution())
+                    .recordDate(first.getRecordDate())
+                    .value(sum == null || valueCount == 0 ? null
+                            : sum.divide(BigDecimal.valueOf(valueCount), 2, RoundingMode.HALF_UP))
+                    .systolicPressure(systolicCount == 0 ? null : Math.round((float) systolicSum / systolicCount))
+                    .diastolicPressure(diastolicCount == 0 ? null : Math.round((float) diastolicSum / diastolicCount))
+                    .unit(first.getUnit())
+                    .count(count)
+                    .min(min)
+                    .max(max)
+                    .sum(sum)
+                    .last(last)
+                    .systolicMin(systolicMin)
+                    .systolicMax(systolicMax)
+                    .diastolicMin(diastolicMin)
+                    .diastolicMax(diastolicMax)
+                    .valueCount(valueCount)
+                    .systolicCount(systolicCount)
+                    .diastolicCount(diastolicCount)
+                    .build());
+            first = null;
+            count = 0;
+            min = max = sum = last = null;
+            valueCount = 0;
+            systolicSum = diastolicSum = 0;
+            systolicCount = diastolicCount = 0;
+            systolicMin = systolicMax = diastolicMin = diastolicMax = null;
+        }
+    }
+
+    private record Sample(HealthTrendPoint point, double x, double y, long index) {
+    }
+
+    private static final class Bucket {
+
+        private final int index;
+        private final List<Sample> samples = new ArrayList<>();
+        private double sumX;
+        private double sumY;
+
+        Bucket(int index) {
+            this.index = index;
+        }
+
+        void add(Sample sample) {
+            samples.add(sample);
+            sumX += sample.x;
+            sumY += sample.y;
+        }
+
+        double avgX() {
+            return sumX / samples.size();
+        }
+
+        double avgY() {
+            return sumY / samples.size();
+        }
+
+        /**
+         * 与 (ax, ay)、(cx, cy) 构成三角形面积最大的点
+         */
+        Sample select(double ax, double ay, double cx, double cy) {
+            Sample best = samples.get(0);
+            double bestArea = -1;
+            for (Sample sample : samples) {
+                double area = Math.abs((ax - cx) * (sample.y - ay) - (ax - sample.x) * (cy - ay));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = sample;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 点内非空条数；旧数据没有该字段时退回点的明细条数
+     */
+    private static int weight(Integer nonNullCount, Integer count) {
+        return nonNullCount != null ? nonNullCount : count != null ? count : 1;
+    }
+
+    private static Double toDouble(BigDecimal value) {
+        return value == null ? null : value.doubleValue();
+    }
+
+    private static Double toDouble(Integer value) {
+        return value == null ? null : value.doubleValue();
+    }
+
+    private static <T extends Comparable<T>> T lesser(T a, T b) {
+        return a == null ? b : b == null || a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static <T extends Comparable<T>> T greater(T a, T b) {
+        return a == null ? b : b == null || a.compareTo(b) >= 0 ? a : b;
+    }
+}
@@ -0,0 +1,13 @@
+-- 对话上下文滚动摘要：每个会话一行，记录已折叠进摘要的最后一条消息 ID
+CREATE TABLE IF NOT EXISTS chat_context_summaries (
+    session_id          VARCHAR(64) PRIMARY KEY,
+    user_id             BIGINT      NOT NULL,
+    summary             TEXT        NOT NULL,
+    summarized_until_id BIGINT      NOT NULL,
+    summarized_turns    INTEGER     NOT NULL DEFAULT 0,
+    updated_at          TIMESTAMP   NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 上下文窗口按 (user_id, session_id) 倒序取最近消息
+CREATE INDEX IF NOT EXISTS idx_chat_histories_user_session_id
+    ON chat_histories (user_id, session_id, id DESC);
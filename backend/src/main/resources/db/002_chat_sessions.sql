@@ -0,0 +1,16 @@
+-- 会话摘要：每个会话一行，随消息写入增量维护，替代按 chat_histories 分组 + 相关子查询的会话列表
+CREATE TABLE IF NOT EXISTS chat_sessions (
+    session_id        VARCHAR(64)  PRIMARY KEY,
+    user_id           BIGINT       NOT NULL,
+    title             VARCHAR(64)  NOT NULL DEFAULT '新对话',
+    first_message     TEXT,
+    last_message_time TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    message_count     INTEGER      NOT NULL DEFAULT 0,
+    created_at        TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 会话列表：按用户取、按最后消息时间倒序，单次索引范围扫描
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_user_last_time
+    ON chat_sessions (user_id, last_message_time DESC);
+
+-- 历史数据回填见 chat.sessions.backfill-on-startup（ChatSessionBackfillRunner）
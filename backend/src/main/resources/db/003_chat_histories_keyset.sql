@@ -0,0 +1,3 @@
+-- 对话历史游标分页：按 (created_at, id) 行值比较定位，正反两个方向都可用同一索引扫描
+CREATE INDEX IF NOT EXISTS idx_chat_histories_user_session_created_id
+    ON chat_histories (user_id, session_id, created_at DESC, id DESC);
@@ -0,0 +1,13 @@
+-- 图片内容哈希：上传时计算，作为图片分析结果缓存的键（旧数据为空，回退为按 URL 计算）
+ALTER TABLE medical_records ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+ALTER TABLE medical_record_images ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+-- 图片分析结果缓存：同一图片 + 同一提示词 + 同一模型只调用一次视觉模型
+CREATE TABLE IF NOT EXISTS image_analysis_cache (
+    content_hash VARCHAR(80)  NOT NULL,
+    prompt_hash  CHAR(64)     NOT NULL,
+    model        VARCHAR(64)  NOT NULL,
+    result       TEXT         NOT NULL,
+    created_at   TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (content_hash, prompt_hash, model)
+);
@@ -0,0 +1,16 @@
+-- 上传后后台预分析：分析状态与结果存放在图片所在行（病历主图在 medical_records，附加图片在 medical_record_images）
+ALTER TABLE medical_records ADD COLUMN IF NOT EXISTS analysis_status VARCHAR(16);
+ALTER TABLE medical_records ADD COLUMN IF NOT EXISTS analysis_result TEXT;
+ALTER TABLE medical_records ADD COLUMN IF NOT EXISTS analysis_attempts INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE medical_records ADD COLUMN IF NOT EXISTS analyzed_at TIMESTAMP;
+
+ALTER TABLE medical_record_images ADD COLUMN IF NOT EXISTS analysis_status VARCHAR(16);
+ALTER TABLE medical_record_images ADD COLUMN IF NOT EXISTS analysis_result TEXT;
+ALTER TABLE medical_record_images ADD COLUMN IF NOT EXISTS analysis_attempts INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE medical_record_images ADD COLUMN IF NOT EXISTS analyzed_at TIMESTAMP;
+
+-- 补偿扫描只查未完成的行
+CREATE INDEX IF NOT EXISTS idx_medical_records_analysis_pending
+    ON medical_records (id) WHERE analysis_status IN ('pending', 'processing', 'failed');
+CREATE INDEX IF NOT EXISTS idx_medical_record_images_analysis_pending
+    ON medical_record_images (id) WHERE analysis_status IN ('pending', 'processing', 'failed');
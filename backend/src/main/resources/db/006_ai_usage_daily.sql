@@ -0,0 +1,12 @@
+-- AI 用量按用户、日期、操作汇总（内存计数定期批量累加写入）
+CREATE TABLE IF NOT EXISTS ai_usage_daily (
+    user_id           BIGINT       NOT NULL,
+    usage_date        DATE         NOT NULL,
+    operation         VARCHAR(32)  NOT NULL,
+    request_count     BIGINT       NOT NULL DEFAULT 0,
+    prompt_tokens     BIGINT       NOT NULL DEFAULT 0,
+    completion_tokens BIGINT       NOT NULL DEFAULT 0,
+    latency_ms        BIGINT       NOT NULL DEFAULT 0,
+    updated_at        TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, usage_date, operation)
+);
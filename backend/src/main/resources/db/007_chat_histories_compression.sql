@@ -0,0 +1,10 @@
+-- 对话内容压缩存储：超过阈值的消息以字典 deflate 压缩后存入 content_blob，content 置空，content_codec 记录编码
+ALTER TABLE chat_histories ADD COLUMN IF NOT EXISTS content_blob BYTEA;
+ALTER TABLE chat_histories ADD COLUMN IF NOT EXISTS content_codec VARCHAR(32);
+ALTER TABLE chat_histories ALTER COLUMN content DROP NOT NULL;
+
+-- 已压缩的数据不再交给 TOAST 的 pglz 重复压缩
+ALTER TABLE chat_histories ALTER COLUMN content_blob SET STORAGE EXTERNAL;
+
+-- 存量数据由后端在 chat.history.compression.migrate-on-startup=true 时分批压缩（见 ChatContentCompactionRunner），
+-- 完成后执行 VACUUM FULL chat_histories（或 pg_repack）归还空间
@@ -0,0 +1,32 @@
+-- 冷会话归档：整段会话的消息序列化后以字典 deflate 压缩为一行，按 user_id 哈希分区
+CREATE TABLE IF NOT EXISTS chat_session_archives (
+    user_id            BIGINT       NOT NULL,
+    session_id         VARCHAR(64)  NOT NULL,
+    message_count      INTEGER      NOT NULL,
+    first_message_time TIMESTAMP,
+    last_message_time  TIMESTAMP,
+    codec              VARCHAR(32)  NOT NULL,
+    payload            BYTEA        NOT NULL,
+    archived_at        TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, session_id)
+) PARTITION BY HASH (user_id);
+
+-- payload 已压缩，不再交给 TOAST 的 pglz 重复压缩（分区创建时继承）
+ALTER TABLE chat_session_archives ALTER COLUMN payload SET STORAGE EXTERNAL;
+
+CREATE TABLE IF NOT EXISTS chat_session_archives_p0 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 0);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p1 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 1);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p2 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 2);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p3 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 3);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p4 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 4);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p5 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 5);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p6 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 6);
+CREATE TABLE IF NOT EXISTS chat_session_archives_p7 PARTITION OF chat_session_archives FOR VALUES WITH (MODULUS 8, REMAINDER 7);
+
+-- 会话是否已归档；restored_at 为最近一次恢复到热表的时间
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS archived BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS restored_at TIMESTAMP;
+
+-- 归档任务按最后消息时间找未归档的冷会话
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_cold
+    ON chat_sessions (last_message_time) WHERE archived = FALSE;
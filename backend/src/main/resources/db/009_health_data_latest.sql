@@ -0,0 +1,3 @@
+-- 各类型最新数据：DISTINCT ON (data_type) 直接按该索引顺序读取该用户的数据，不再排序整段历史
+CREATE INDEX IF NOT EXISTS idx_health_data_user_type_date
+    ON health_data (user_id, data_type, record_date DESC, id DESC);
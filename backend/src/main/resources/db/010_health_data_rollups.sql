@@ -0,0 +1,26 @@
+-- 健康数据按日/周/月汇总：新增记录时增量累加，删除记录时按受影响的桶从明细重算，可整体回填
+CREATE TABLE IF NOT EXISTS health_data_rollups (
+    user_id          BIGINT        NOT NULL,
+    data_type        VARCHAR(32)   NOT NULL,
+    granularity      VARCHAR(8)    NOT NULL,   -- day / week（周一开始）/ month
+    bucket_start     DATE          NOT NULL,
+    sample_count     INTEGER       NOT NULL,
+    value_min        NUMERIC(12, 2),
+    value_max        NUMERIC(12, 2),
+    value_sum        NUMERIC(16, 2),
+    last_value       NUMERIC(12, 2),
+    -- 血压
+    systolic_min     INTEGER,
+    systolic_max     INTEGER,
+    systolic_sum     BIGINT,
+    last_systolic    INTEGER,
+    diastolic_min    INTEGER,
+    diastolic_max    INTEGER,
+    diastolic_sum    BIGINT,
+    last_diastolic   INTEGER,
+    -- 桶内最新一条明细（按 record_date, id），用于判断新记录是否替换 last_*
+    last_record_date DATE          NOT NULL,
+    last_id          BIGINT        NOT NULL,
+    updated_at       TIMESTAMP     NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, data_type, granularity, bucket_start)
+);
@@ -0,0 +1,3 @@
+-- 会话 ID 由客户端提供，只在同一用户内唯一：摘要主键改为 (user_id, session_id)，避免读取或覆盖其他用户同名会话的摘要
+ALTER TABLE chat_context_summaries DROP CONSTRAINT IF EXISTS chat_context_summaries_pkey;
+ALTER TABLE chat_context_summaries ADD PRIMARY KEY (user_id, session_id);
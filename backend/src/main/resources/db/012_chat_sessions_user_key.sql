@@ -0,0 +1,4 @@
+-- 会话 ID 由客户端提供，只在同一用户内唯一：会话摘要主键改为 (user_id, session_id)，
+-- 避免其他用户同名会话的新消息累加到本行。旧主键下被合并掉的会话行可开启 chat.sessions.backfill-on-startup 补齐
+ALTER TABLE chat_sessions DROP CONSTRAINT IF EXISTS chat_sessions_pkey;
+ALTER TABLE chat_sessions ADD PRIMARY KEY (user_id, session_id);
@@ -0,0 +1,7 @@
+-- 消息数超过 chat.archive.max-messages-per-session 的会话留在热表：记录跳过时间，归档任务不再把它们选为候选，
+-- 避免这些最早的冷会话一直占据候选批次。调大上限后可执行 UPDATE chat_sessions SET archive_skipped_at = NULL 重新参与归档
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS archive_skipped_at TIMESTAMP;
+
+DROP INDEX IF EXISTS idx_chat_sessions_cold;
+CREATE INDEX IF NOT EXISTS idx_chat_sessions_cold
+    ON chat_sessions (last_message_time) WHERE archived = FALSE AND archive_skipped_at IS NULL;
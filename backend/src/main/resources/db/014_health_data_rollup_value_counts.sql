@@ -0,0 +1,24 @@
+-- 汇总桶的平均值按各字段非空的条数计算：sample_count 包含取值无法解析、血压格式错误（字段为 NULL）的明细，
+-- 用它做分母会拉低日/周/月平均值
+ALTER TABLE health_data_rollups ADD COLUMN IF NOT EXISTS value_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE health_data_rollups ADD COLUMN IF NOT EXISTS systolic_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE health_data_rollups ADD COLUMN IF NOT EXISTS diastolic_count INTEGER NOT NULL DEFAULT 0;
+
+-- 已有的桶从明细补齐计数（也可开启 health.rollup.backfill-on-startup 整体重算）
+UPDATE health_data_rollups r
+SET value_count = c.value_count,
+    systolic_count = c.systolic_count,
+    diastolic_count = c.diastolic_count
+FROM (
+    SELECT d.user_id, d.data_type, g.granularity,
+           date_trunc(g.granularity, d.record_date::timestamp)::date AS bucket_start,
+           COUNT(d.value) AS value_count,
+           COUNT(d.systolic_pressure) AS systolic_count,
+           COUNT(d.diastolic_pressure) AS diastolic_count
+    FROM health_data d
+    CROSS JOIN (VALUES ('day'), ('week'), ('month')) AS g(granularity)
+    WHERE d.record_date IS NOT NULL
+    GROUP BY d.user_id, d.data_type, g.granularity, bucket_start
+) c
+WHERE r.user_id = c.user_id AND r.data_type = c.data_type
+  AND r.granularity = c.granularity AND r.bucket_start = c.bucket_start;
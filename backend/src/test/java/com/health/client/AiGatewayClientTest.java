@@ -0,0 +1,182 @@
+package com.health.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.config.AiGatewayProperties;
+import com.health.dto.ai.AiResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 调用被取消（SSE 客户端断开、对冲落败）时：底层 HTTP 交换被中止，舱壁许可和副本在途名额全部归还
+ */
+class AiGatewayClientTest {
+
+    private static final int MAX_CONCURRENT_CALLS = 2;
+    private static final AiRequest REQUEST = generator -> {
+        generator.writeStartObject();
+        generator.writeStringField("message", "你好");
+        generator.writeEndObject();
+    };
+
+    private final AtomicInteger disconnected = new AtomicInteger();
+    private final AtomicBoolean hangNextChat = new AtomicBoolean();
+    private final List<HttpServer> servers = new ArrayList<>();
+    private ExecutorService serverExecutor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        serverExecutor = Executors.newCachedThreadPool();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(server -> server.stop(0));
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void cancellingStreamReturnsPermitsAndAbortsExchange() throws Exception {
+        AiGatewayProperties properties = new AiGatewayProperties();
+        properties.setMaxConcurrentCalls(MAX_CONCURRENT_CALLS);
+        AiGatewayClient client = client(properties, 1);
+
+        // 取消次数超过舱壁上限：任何一次泄漏都会让后续调用被拒绝
+        int calls = MAX_CONCURRENT_CALLS * 3;
+        for (int i = 0; i < calls; i++) {
+            CountDownLatch firstDelta = new CountDownLatch(1);
+            CompletableFuture<String> stream = client.stream(AiOperation.CHAT_STREAM, REQUEST,
+                    delta -> firstDelta.countDown());
+            assertTrue(firstDelta.await(5, TimeUnit.SECONDS), "未收到增量，第 " + (i + 1) + " 次调用");
+            stream.cancel(true);
+
+            awaitValue(() -> gauge("resilience4j.bulkhead.available.concurrent.calls"), MAX_CONCURRENT_CALLS);
+            awaitValue(this::totalOutstanding, 0);
+        }
+
+        awaitValue(disconnected::get, calls);
+        assertEquals(calls, meterRegistry.get("ai.gateway.requests").tag("outcome", "cancelled").timer().count());
+    }
+
+    @Test
+    void hedgeLoserIsAbortedAndReleased() throws Exception {
+        AiGatewayProperties properties = new AiGatewayProperties();
+        properties.setHedgeEnabled(true);
+        properties.setHedgeMinDelay(Duration.ofMillis(100));
+        AiGatewayClient client = client(properties, 2);
+
+        // 积累足够的耗时样本后才会对冲
+        for (int i = 0; i < 20; i++) {
+            assertTrue(client.post(AiOperation.CHAT, REQUEST).succeeded());
+        }
+
+        // 下一个到达的请求一直不返回，对冲请求发往另一个副本并胜出
+        hangNextChat.set(true);
+        AiResponse response = client.post(AiOperation.CHAT, REQUEST);
+
+        assertTrue(response.succeeded());
+        assertEquals(1, meterRegistry.get("ai.gateway.hedged").counter().count());
+        awaitValue(disconnected::get, 1);
+        awaitValue(this::totalOutstanding, 0);
+    }
+
+    private AiGatewayClient client(AiGatewayProperties properties, int replicas) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < replicas; i++) {
+            urls.add(startServer());
+        }
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        AiEndpointPool endpointPool = new AiEndpointPool(httpClient, properties, meterRegistry, urls, urls.get(0));
+        return new AiGatewayClient(httpClient, new ObjectMapper(), properties, endpointPool, meterRegistry);
+    }
+
+    private String startServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        // 先发一段增量，然后持续发送 SSE 注释行，直到客户端断开
+        server.createContext(AiOperation.CHAT_STREAM.getPath(), exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            holdOpen(exchange, "data: {\"delta\": \"你好\"}\n\n", ": ping\n\n");
+        });
+        server.createContext(AiOperation.CHAT.getPath(), exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            byte[] body = "{\"response\": \"你好\", \"success\": true}".getBytes(StandardCharsets.UTF_8);
+            if (hangNextChat.compareAndSet(true, false)) {
+                // JSON 允许前导空白：持续写空格直到客户端断开
+                exchange.sendResponseHeaders(200, 0);
+                holdOpen(exchange, " ", " ");
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void holdOpen(HttpExchange exchange, String first, String keepAlive) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(first.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            for (int i = 0; i < 600; i++) {
+                Thread.sleep(50);
+                out.write(keepAlive.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            disconnected.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private double totalOutstanding() {
+        return meterRegistry.get("ai.gateway.endpoint.outstanding").gauges().stream()
+                .mapToDouble(Gauge::value)
+                .sum();
+    }
+
+    private static void awaitValue(DoubleSupplier actual, double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (actual.getAsDouble() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, actual.getAsDouble());
+    }
+}
@@ -0,0 +1,229 @@
+package com.health.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.health.config.AiGatewayProperties;
+import com.health.dto.ai.AiChatRequest;
+import com.health.entity.ChatHistory;
+import com.health.entity.MedicalRecord;
+import com.health.entity.UserProfile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.health.client.AiRequest.writeNumber;
+import static com.health.client.AiRequest.writeString;
+
+/**
+ * AI 对话请求体构建基准：200 轮对话、100 条病历的用户
+ *
+ * hashMapReflection 为原实现（嵌套 HashMap + ObjectMapper 反射序列化，病历逐条内嵌）；
+ * generatorJson / generatorCbor 用 AiGatewayClient.encode 的流式生成器写出内容完全相同的请求体；
+ * chatRequestJson / chatRequestCbor 为当前实际发送的 AiChatRequest（病历改为引用）
+ *
+ * 运行：mvn test-compile 后执行 main，或
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main AiRequestEncodingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AiRequestEncodingBenchmark {
+
+    private static final int TURNS = 200;
+    private static final int RECORDS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AiGatewayClient client;
+    private String message;
+    private UserProfile profile;
+    private List<MedicalRecord> records;
+    private List<ChatHistory> history;
+    private AiRequest fullPayload;
+    private AiChatRequest chatRequest;
+
+    @Setup
+    public void setUp() {
+        client = new AiGatewayClient(null, objectMapper, new AiGatewayProperties(), null, new SimpleMeterRegistry());
+        message = "最近血压偏高，需要调整用药吗？";
+        profile = UserProfile.builder()
+                .realName("张三")
+                .gender("男")
+                .birthDate(LocalDate.of(1965, 3, 12))
+                .height(172.0)
+                .weight(78.5)
+                .bloodType("A")
+                .allergies("青霉素")
+                .medicalHistory("高血压十年，2 型糖尿病五年")
+                .familyHistory("父亲冠心病")
+                .build();
+        records = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            records.add(MedicalRecord.builder()
+                    .id((long) i + 1)
+                    .title("复查报告 " + i)
+                    .recordType(i % 3 == 0 ? "检查报告" : i % 3 == 1 ? "处方" : "病历")
+                    .description("血压 " + (130 + i % 20) + "/" + (80 + i % 10) + " mmHg，空腹血糖 " + (6 + i % 3) + ".2 mmol/L，建议继续随访")
+                    .hospital("市第一人民医院")
+                    .doctor("李医生")
+                    .recordDate(LocalDate.of(2024, 1, 1).plusDays(i * 3L))
+                    .fileName("report-" + i + ".jpg")
+                    .filePath("https://oss.example.com/records/" + i + "/report-" + i + ".jpg")
+                    .build());
+        }
+        history = new ArrayList<>(TURNS * 2);
+        for (int i = 0; i < TURNS; i++) {
+            history.add(ChatHistory.builder().role("user")
+                    .content("第 " + i + " 次提问：今天早上测的血压是 " + (130 + i % 20) + "/" + (85 + i % 10) + "，饭后血糖 8.1，这样正常吗？").build());
+            history.add(ChatHistory.builder().role("assistant")
+                    .content("根据您的档案和近期记录，这个血压略高于目标范围。建议继续按时服药、低盐饮食，并在一周内复测；"
+                            + "如果出现头晕、胸闷等症状请及时就医。第 " + i + " 轮回复。").build());
+        }
+        fullPayload = new FullPayload(message, profile, records, history);
+        chatRequest = new AiChatRequest(message, AiChatRequest.Profile.from(profile),
+                new AiChatRequest.RecordsRef(RECORDS, "tool-token"), history, null, "standard");
+    }
+
+    @Benchmark
+    public byte[] hashMapReflection() throws IOException {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("message", message);
+
+        Map<String, Object> profileData = new HashMap<>();
+        profileData.put("realName", profile.getRealName());
+        profileData.put("gender", profile.getGender());
+        profileData.put("birthDate", profile.getBirthDate() != null ? profile.getBirthDate().toString() : null);
+        profileData.put("height", profile.getHeight());
+        profileData.put("weight", profile.getWeight());
+        profileData.put("bloodType", profile.getBloodType());
+        profileData.put("allergies", profile.getAllergies());
+        profileData.put("medicalHistory", profile.getMedicalHistory());
+        profileData.put("familyHistory", profile.getFamilyHistory());
+        requestBody.put("userProfile", profileData);
+
+        List<Map<String, Object>> recordsData = records.stream()
+                .map(r -> {
+                    Map<String, Object> record = new HashMap<>();
+                    record.put("id", r.getId());
+                    record.put("title", r.getTitle());
+                    record.put("recordType", r.getRecordType());
+                    record.put("description", r.getDescription());
+                    record.put("hospital", r.getHospital());
+                    record.put("doctor", r.getDoctor());
+                    record.put("recordDate", r.getRecordDate() != null ? r.getRecordDate().toString() : null);
+                    record.put("fileName", r.getFileName());
+                    record.put("imageUrl", r.getFilePath());
+                    return record;
+                })
+                .collect(Collectors.toList());
+        requestBody.put("medicalRecords", recordsData);
+
+        List<Map<String, String>> historyData = history.stream()
+                .map(h -> {
+                    Map<String, String> msg = new HashMap<>();
+                    msg.put("role", h.getRole());
+                    msg.put("content", h.getContent());
+                    return msg;
+                })
+                .collect(Collectors.toList());
+        requestBody.put("history", historyData);
+
+        return objectMapper.writeValueAsBytes(requestBody);
+    }
+
+    @Benchmark
+    public byte[] generatorJson() throws IOException {
+        return client.encode(fullPayload, false);
+    }
+
+    @Benchmark
+    public byte[] generatorCbor() throws IOException {
+        return client.encode(fullPayload, true);
+    }
+
+    @Benchmark
+    public byte[] chatRequestJson() throws IOException {
+        return client.encode(chatRequest, false);
+    }
+
+    @Benchmark
+    public byte[] chatRequestCbor() throws IOException {
+        return client.encode(chatRequest, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AiRequestEncodingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * 与 hashMapReflection 内容相同的请求体（病历内嵌），用流式生成器写出
+     */
+    private record FullPayload(String message, UserProfile profile, List<MedicalRecord> records,
+                               List<ChatHistory> history) implements AiRequest {
+
+        @Override
+        public void writeTo(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            writeString(generator, "message", message);
+            generator.writeObjectFieldStart("userProfile");
+            writeString(generator, "realName", profile.getRealName());
+            writeString(generator, "gender", profile.getGender());
+            writeString(generator, "birthDate", profile.getBirthDate() != null ? profile.getBirthDate().toString() : null);
+            writeNumber(generator, "height", profile.getHeight());
+            writeNumber(generator, "weight", profile.getWeight());
+            writeString(generator, "bloodType", profile.getBloodType());
+            writeString(generator, "allergies", profile.getAllergies());
+            writeString(generator, "medicalHistory", profile.getMedicalHistory());
+            writeString(generator, "familyHistory", profile.getFamilyHistory());
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("medicalRecords");
+            for (MedicalRecord r : records) {
+                generator.writeStartObject();
+                generator.writeNumberField("id", r.getId());
+                writeString(generator, "title", r.getTitle());
+                writeString(generator, "recordType", r.getRecordType());
+                writeString(generator, "description", r.getDescription());
+                writeString(generator, "hospital", r.getHospital());
+                writeString(generator, "doctor", r.getDoctor());
+                writeString(generator, "recordDate", r.getRecordDate() != null ? r.getRecordDate().toString() : null);
+                writeString(generator, "fileName", r.getFileName());
+                writeString(generator, "imageUrl", r.getFilePath());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("history");
+            for (ChatHistory h : history) {
+                generator.writeStartObject();
+                writeString(generator, "role", h.getRole());
+                writeString(generator, "content", h.getContent());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.health.service;
+
+import com.health.entity.ChatContextSummary;
+import com.health.entity.ChatHistory;
+import com.health.mapper.ChatContextSummaryMapper;
+import com.health.mapper.ChatHistoryMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未摘要消息超过 maxTurns 时，窗口之前的消息必须全部折叠进摘要，不能被跳过
+ */
+class ChatContextBuilderTest {
+
+    private static final Long USER_ID = 1L;
+    private static final String SESSION_ID = "s1";
+    private static final int MAX_TURNS = 40;
+
+    private final List<ChatHistory> messages = new ArrayList<>();
+    private final AtomicReference<ChatContextSummary> stored = new AtomicReference<>();
+    private ChatContextSummaryMapper summaryMapper;
+    private ChatContextBuilder builder;
+
+    @BeforeEach
+    void setUp() {
+        ChatHistoryMapper historyMapper = mock(ChatHistoryMapper.class);
+        when(historyMapper.findByIdRange(eq(USER_ID), eq(SESSION_ID), anyLong(), any(), anyBoolean(), anyInt()))
+                .thenAnswer(invocation -> findByIdRange(invocation.getArgument(2), invocation.getArgument(3),
+                        invocation.getArgument(4), invocation.getArgument(5)));
+        summaryMapper = mock(ChatContextSummaryMapper.class);
+        when(summaryMapper.selectOne(any())).thenAnswer(invocation -> stored.get());
+        when(summaryMapper.upsert(any())).thenAnswer(invocation -> {
+            stored.set(invocation.getArgument(0));
+            return 1;
+        });
+        ChatHistoryWriter writer = mock(ChatHistoryWriter.class);
+        when(writer.pendingFor(eq(USER_ID), anyString())).thenReturn(List.of());
+
+        builder = new ChatContextBuilder(historyMapper, summaryMapper, writer, mock(ChatContentCodec.class));
+        ReflectionTestUtils.setField(builder, "tokenBudget", 100_000);
+        ReflectionTestUtils.setField(builder, "maxTurns", MAX_TURNS);
+        ReflectionTestUtils.setField(builder, "summaryTokenBudget", 1_000_000);
+        ReflectionTestUtils.setField(builder, "summaryLineChars", 80);
+    }
+
+    @Test
+    void messagesOlderThanWindowAreFoldedIntoSummary() {
+        addMessages(100);
+
+        ChatContextBuilder.ContextWindow context = builder.build(USER_ID, SESSION_ID, null);
+
+        // 窗口为最近 40 条，其余 60 条全部进入摘要
+        assertEquals(MAX_TURNS, context.history().size());
+        assertEquals(61L, context.history().get(0).getId());
+        assertEquals(100L, context.history().get(MAX_TURNS - 1).getId());
+        assertEquals(60L, stored.get().getSummarizedUntilId());
+        assertEquals(60, stored.get().getSummarizedTurns());
+        assertEquals(60, context.summary().split("\n").length);
+        assertTrue(context.summary().startsWith("用户: 消息 1\n"));
+        assertTrue(context.summary().endsWith("消息 60"));
+    }
+
+    @Test
+    void backlogIsFoldedInBatchesWithoutGaps() {
+        addMessages(1_200);
+
+        builder.build(USER_ID, SESSION_ID, null);
+        assertEquals(1_160L, stored.get().getSummarizedUntilId());
+        assertEquals(1_160, stored.get().getSummarizedTurns());
+        verify(summaryMapper, atLeast(3)).upsert(any());
+
+        // 再来 10 条：只有新滑出窗口的 10 条进入摘要，已折叠的不会重复
+        addMessages(10);
+        ChatContextBuilder.ContextWindow context = builder.build(USER_ID, SESSION_ID, null);
+        assertEquals(1_170L, stored.get().getSummarizedUntilId());
+        assertEquals(1_170, stored.get().getSummarizedTurns());
+        assertEquals(1_171L, context.history().get(0).getId());
+        assertEquals(1_170, context.summary().split("\n").length);
+    }
+
+    private void addMessages(int count) {
+        for (int i = 0; i < count; i++) {
+            long id = messages.size() + 1;
+            messages.add(ChatHistory.builder()
+                    .id(id)
+                    .userId(USER_ID)
+                    .sessionId(SESSION_ID)
+                    .role(id % 2 == 1 ? "user" : "assistant")
+                    .content("消息 " + id)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+        }
+    }
+
+    private List<ChatHistory> findByIdRange(long afterId, Long beforeId, boolean asc, int limit) {
+        Comparator<ChatHistory> order = Comparator.comparing(ChatHistory::getId);
+        return messages.stream()
+                .filter(message -> message.getId() > afterId && (beforeId == null || message.getId() < beforeId))
+                .sorted(asc ? order : order.reversed())
+                .limit(limit)
+                .toList();
+    }
+}
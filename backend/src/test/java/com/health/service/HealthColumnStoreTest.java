@@ -0,0 +1,99 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.health.dto.health.HealthTrendPoint;
+import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
+import com.health.mapper.HealthDataMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 列式存储分桶聚合：取值为空的明细计入条数，但不参与平均值
+ */
+class HealthColumnStoreTest {
+
+    private static final Long USER_ID = 1L;
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 4);
+
+    @TempDir
+    Path dir;
+
+    private final List<HealthData> rows = new ArrayList<>();
+    private HealthColumnStore store;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // 重建序列时使用 LambdaQueryWrapper，需要实体的列映射
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), HealthData.class);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        HealthDataMapper mapper = mock(HealthDataMapper.class);
+        when(mapper.selectList(any())).thenAnswer(invocation -> rows);
+        store = new HealthColumnStore(mapper, new SimpleMeterRegistry(), 100);
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "dir", dir.toString());
+        store.init();
+    }
+
+    @Test
+    void bucketAverageIgnoresNullValues() {
+        rows.add(row(1, "weight", new BigDecimal("60"), null, null));
+        rows.add(row(2, "weight", new BigDecimal("62"), null, null));
+        rows.add(row(3, "weight", null, null, null));
+
+        List<HealthDataRollup> buckets = store.aggregate(USER_ID, "weight", "day", DAY, DAY);
+
+        assertEquals(1, buckets.size());
+        assertEquals(3, buckets.get(0).getSampleCount());
+        assertEquals(2, buckets.get(0).getValueCount());
+        HealthTrendPoint point = HealthTrendPoint.from(buckets.get(0), "kg");
+        assertEquals(new BigDecimal("61.00"), point.getValue());
+        assertEquals(3, point.getCount());
+    }
+
+    @Test
+    void bloodPressureAverageIgnoresMalformedRows() {
+        rows.add(row(1, "blood_pressure", null, 120, 80));
+        rows.add(row(2, "blood_pressure", null, 140, 90));
+        rows.add(row(3, "blood_pressure", null, null, null));
+
+        HealthTrendPoint point = HealthTrendPoint.from(
+                store.aggregate(USER_ID, "blood_pressure", "day", DAY, DAY).get(0), "mmHg");
+
+        assertEquals(130, point.getSystolicPressure());
+        assertEquals(85, point.getDiastolicPressure());
+        assertEquals(3, point.getCount());
+    }
+
+    private static HealthData row(long id, String dataType, BigDecimal value, Integer systolic, Integer diastolic) {
+        return HealthData.builder()
+                .id(id)
+                .userId(USER_ID)
+                .dataType(dataType)
+                .recordDate(DAY)
+                .value(value)
+                .systolicPressure(systolic)
+                .diastolicPressure(diastolic)
+                .build();
+    }
+}
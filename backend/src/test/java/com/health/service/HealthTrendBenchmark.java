@@ -0,0 +1,253 @@
+package com.health.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.health.dto.health.HealthTrendPoint;
+import com.health.entity.HealthData;
+import com.health.entity.HealthDataRollup;
+import com.health.mapper.HealthDataMapper;
+import com.health.mapper.HealthDataRollupMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 趋势 / 历史查询基准：HealthColumnStore 与 MyBatis 路径（HealthDataMapper、HealthDataRollupMapper）在同一份数据上对比
+ *
+ * 数据放在 H2 内存库（PostgreSQL 模式），三年、每天三条体重记录；列式序列由 HealthColumnStore 从同一张表重建，
+ * 日汇总表由列式聚合结果写入，因此两条路径返回相同的点。各基准与 HealthDataService.getTrend / getHistory 的对应分支一致：
+ * rawTrend 为近 90 天明细，dailyTrend 为近一年按日汇总，history 为最近 50 条
+ *
+ * H2 进程内访问没有网络往返，MyBatis 路径的结果是下限；对真实 PostgreSQL 的差距更大
+ *
+ * 运行：mvn test-compile 后执行 main，或
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; org.openjdk.jmh.Main HealthTrendBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HealthTrendBenchmark {
+
+    private static final Long USER_ID = 1L;
+    private static final String DATA_TYPE = "weight";
+    private static final String UNIT = "kg";
+    private static final int DAYS = 3 * 365;
+    private static final int SAMPLES_PER_DAY = 3;
+    private static final int HISTORY_LIMIT = 50;
+
+    private final LocalDate today = LocalDate.now();
+    private HikariDataSource dataSource;
+    private HealthDataMapper healthDataMapper;
+    private HealthDataRollupMapper rollupMapper;
+    private HealthColumnStore columnStore;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:health_trend;MODE=PostgreSQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(2);
+        createSchema();
+        insertSamples();
+
+        MybatisConfiguration configuration = new MybatisConfiguration(
+                new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(HealthDataMapper.class);
+        configuration.addMapper(HealthDataRollupMapper.class);
+        SqlSessionManager sessions = SqlSessionManager.newInstance(new MybatisSqlSessionFactoryBuilder().build(configuration));
+        healthDataMapper = sessions.getMapper(HealthDataMapper.class);
+        rollupMapper = sessions.getMapper(HealthDataRollupMapper.class);
+
+        dir = Files.createTempDirectory("health-columns");
+        columnStore = new HealthColumnStore(healthDataMapper, new SimpleMeterRegistry(), 100);
+        ReflectionTestUtils.setField(columnStore, "enabled", true);
+        ReflectionTestUtils.setField(columnStore, "dir", dir.toString());
+        columnStore.init();
+        if (columnStore.latest(USER_ID, DATA_TYPE, HISTORY_LIMIT).isEmpty()) {
+            throw new IllegalStateException("列式序列未能提供历史记录");
+        }
+        columnStore.aggregate(USER_ID, DATA_TYPE, "day", today.minusDays(DAYS), today).forEach(rollupMapper::insert);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        columnStore.shutdown();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        dataSource.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<HealthTrendPoint> rawTrendMapper() {
+        LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(HealthData::getUserId, USER_ID)
+               .eq(HealthData::getDataType, DATA_TYPE)
+               .between(HealthData::getRecordDate, today.minusDays(90), today)
+               .orderByAsc(HealthData::getRecordDate);
+        return healthDataMapper.selectList(wrapper).stream()
+                .map(HealthTrendPoint::from)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<HealthTrendPoint> rawTrendColumnStore() {
+        return columnStore.range(USER_ID, DATA_TYPE, today.minusDays(90), today).stream()
+                .map(data -> {
+                    data.setUnit(UNIT);
+                    return HealthTrendPoint.from(data);
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<HealthTrendPoint> dailyTrendMapper() {
+        LambdaQueryWrapper<HealthDataRollup> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(HealthDataRollup::getUserId, USER_ID)
+               .eq(HealthDataRollup::getDataType, DATA_TYPE)
+               .eq(HealthDataRollup::getGranularity, "day")
+               .between(HealthDataRollup::getBucketStart, today.minusDays(365), today)
+               .orderByAsc(HealthDataRollup::getBucketStart);
+        return rollupMapper.selectList(wrapper).stream()
+                .map(rollup -> HealthTrendPoint.from(rollup, UNIT))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<HealthTrendPoint> dailyTrendColumnStore() {
+        return columnStore.aggregate(USER_ID, DATA_TYPE, "day", today.minusDays(365), today).stream()
+                .map(rollup -> HealthTrendPoint.from(rollup, UNIT))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<HealthData> historyMapper() {
+        LambdaQueryWrapper<HealthData> wrapper = new LambdaQueryWrapper<>();
+        wrapper.eq(HealthData::getUserId, USER_ID)
+               .eq(HealthData::getDataType, DATA_TYPE)
+               .orderByDesc(HealthData::getRecordDate)
+               .last("LIMIT " + HISTORY_LIMIT);
+        return healthDataMapper.selectList(wrapper);
+    }
+
+    @Benchmark
+    public List<HealthData> historyColumnStore() {
+        List<HealthData> rows = columnStore.latest(USER_ID, DATA_TYPE, HISTORY_LIMIT).orElseThrow();
+        rows.forEach(data -> data.setUnit(UNIT));
+        return rows;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HealthTrendBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private void createSchema() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE health_data (
+                        id                 BIGSERIAL PRIMARY KEY,
+                        user_id            BIGINT NOT NULL,
+                        data_type          VARCHAR(32) NOT NULL,
+                        value              NUMERIC(10, 2),
+                        systolic_pressure  INTEGER,
+                        diastolic_pressure INTEGER,
+                        unit               VARCHAR(20),
+                        record_date        DATE NOT NULL,
+                        record_time        VARCHAR(20),
+                        note               VARCHAR(500),
+                        created_at         TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )""");
+            statement.execute("CREATE INDEX idx_health_data_user_type_date ON health_data (user_id, data_type, record_date)");
+            statement.execute("""
+                    CREATE TABLE health_data_rollups (
+                        user_id          BIGINT NOT NULL,
+                        data_type        VARCHAR(32) NOT NULL,
+                        granularity      VARCHAR(8) NOT NULL,
+                        bucket_start     DATE NOT NULL,
+                        sample_count     INTEGER NOT NULL,
+                        value_count      INTEGER NOT NULL DEFAULT 0,
+                        systolic_count   INTEGER NOT NULL DEFAULT 0,
+                        diastolic_count  INTEGER NOT NULL DEFAULT 0,
+                        value_min        NUMERIC(12, 2),
+                        value_max        NUMERIC(12, 2),
+                        value_sum        NUMERIC(16, 2),
+                        last_value       NUMERIC(12, 2),
+                        systolic_min     INTEGER,
+                        systolic_max     INTEGER,
+                        systolic_sum     BIGINT,
+                        last_systolic    INTEGER,
+                        diastolic_min    INTEGER,
+                        diastolic_max    INTEGER,
+                        diastolic_sum    BIGINT,
+                        last_diastolic   INTEGER,
+                        last_record_date DATE NOT NULL,
+                        last_id          BIGINT NOT NULL,
+                        updated_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                        PRIMARY KEY (user_id, data_type, granularity, bucket_start)
+                    )""");
+        }
+    }
+
+    private void insertSamples() throws SQLException {
+        String sql = "INSERT INTO health_data (user_id, data_type, value, unit, record_date, record_time) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int day = DAYS; day >= 0; day--) {
+                for (int i = 0; i < SAMPLES_PER_DAY; i++) {
+                    statement.setLong(1, USER_ID);
+                    statement.setString(2, DATA_TYPE);
+                    statement.setBigDecimal(3, BigDecimal.valueOf(7000 + (day * 7 + i * 13) % 800, 2));
+                    statement.setString(4, UNIT);
+                    statement.setDate(5, Date.valueOf(today.minusDays(day)));
+                    statement.setString(6, String.format("%02d:30", 7 + i * 6));
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+}
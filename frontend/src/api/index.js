@@ -70,7 +70,7 @@ export const recordApi = {
 // 聊天相关 API
 export const chatApi = {
   send: (data) => api.post('/chat', data),
-  getHistory: (sessionId) => api.get(`/chat/history/${sessionId}`),
+  getHistory: (sessionId, cursor, limit = 50) => api.get(`/chat/history/${sessionId}`, { params: { cursor, limit } }),
   getSessions: () => api.get('/chat/sessions'),
   deleteSession: (sessionId) => api.delete(`/chat/sessions/${sessionId}`),
   analyzeRecordImage: (recordId, message) => api.post(`/chat/analyze-image/${recordId}`, { message }),
@@ -82,8 +82,8 @@ export const healthDataApi = {
   record: (data) => api.post('/health-data', data),
   // 获取最新数据
   getLatest: () => api.get('/health-data/latest'),
-  // 获取趋势数据
-  getTrend: (dataType, days = 30) => api.get(`/health-data/trend/${dataType}?days=${days}`),
+  // 获取趋势数据（服务端降采样到最多 maxPoints 个点）
+  getTrend: (dataType, days = 30, maxPoints = 120) => api.get(`/health-data/trend/${dataType}?days=${days}&maxPoints=${maxPoints}`),
   // 获取某天数据
   getDaily: (date) => api.get(`/health-data/daily?date=${date}`),
   // 获取历史数据
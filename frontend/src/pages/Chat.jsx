@@ -29,7 +29,11 @@ function Chat() {
   const [records, setRecords] = useState([])
   const [showRecordPicker, setShowRecordPicker] = useState(false)
   const [selectedRecord, setSelectedRecord] = useState(null)
+  const [historyCursor, setHistoryCursor] = useState(null)
+  const [loadingOlder, setLoadingOlder] = useState(false)
   const messagesEndRef = useRef(null)
+  const messagesContainerRef = useRef(null)
+  const keepScrollRef = useRef(null)
   
   // 初始化：获取会话列表和病历列表
   useEffect(() => {
@@ -87,7 +91,14 @@ function Chat() {
     }
   }
   
-  // 加载指定会话的历史消息
+  // 历史接口按最新在前分页返回，转换为时间正序展示
+  const toChronological = (items) => (items || []).slice().reverse().map(msg => ({
+    role: msg.role,
+    content: msg.content,
+    createdAt: msg.createdAt
+  }))
+  
+  // 加载指定会话的历史消息（只取最近一页）
   const loadSessionHistory = async (sid) => {
     if (!sid) return
     
@@ -95,11 +106,8 @@ function Chat() {
     try {
       const response = await chatApi.getHistory(sid)
       if (response.success && response.data) {
-        setMessages(response.data.map(msg => ({
-          role: msg.role,
-          content: msg.content,
-          createdAt: msg.createdAt
-        })))
+        setMessages(toChronological(response.data.items))
+        setHistoryCursor(response.data.hasMore ? response.data.nextCursor : null)
         setSessionId(sid)
       }
     } catch (err) {
@@ -109,6 +117,33 @@ function Chat() {
     }
   }
   
+  // 向上滚动到顶部时加载更早的消息
+  const loadOlderMessages = async () => {
+    if (!sessionId || !historyCursor || loadingOlder) return
+    
+    setLoadingOlder(true)
+    try {
+      const response = await chatApi.getHistory(sessionId, historyCursor)
+      if (response.success && response.data) {
+        const container = messagesContainerRef.current
+        // 记录插入前的滚动高度，插入后保持当前可视位置
+        keepScrollRef.current = container ? container.scrollHeight - container.scrollTop : null
+        setMessages(prev => [...toChronological(response.data.items), ...prev])
+        setHistoryCursor(response.data.hasMore ? response.data.nextCursor : null)
+      }
+    } catch (err) {
+      console.error('加载更早消息失败:', err)
+    } finally {
+      setLoadingOlder(false)
+    }
+  }
+  
+  const handleMessagesScroll = (e) => {
+    if (e.currentTarget.scrollTop < 40) {
+      loadOlderMessages()
+    }
+  }
+  
   // 删除会话
   const deleteSession = async (sid, e) => {
     e.stopPropagation()
@@ -130,6 +165,12 @@ function Chat() {
   }
   
   useEffect(() => {
+    const container = messagesContainerRef.current
+    if (keepScrollRef.current !== null && container) {
+      container.scrollTop = container.scrollHeight - keepScrollRef.current
+      keepScrollRef.current = null
+      return
+    }
     scrollToBottom()
   }, [messages])
   
@@ -213,6 +254,7 @@ function Chat() {
   const handleNewChat = () => {
     setMessages([])
     setSessionId(null)
+    setHistoryCursor(null)
   }
   
   const quickQuestions = [
@@ -358,7 +400,25 @@ function Chat() {
               <Loader2 className="animate-spin text-primary-500" size={32} />
             </div>
           ) : (
-            <div className="flex-1 overflow-y-auto p-4 space-y-4">
+            <div
+              ref={messagesContainerRef}
+              onScroll={handleMessagesScroll}
+              className="flex-1 overflow-y-auto p-4 space-y-4"
+            >
+              {/* 加载更早的消息 */}
+              {historyCursor && (
+                <div className="flex justify-center">
+                  <button
+                    onClick={loadOlderMessages}
+                    disabled={loadingOlder}
+                    className="text-xs text-gray-400 hover:text-primary-500 flex items-center gap-1"
+                  >
+                    {loadingOlder && <Loader2 className="animate-spin" size={12} />}
+                    {loadingOlder ? '加载中...' : '加载更早的消息'}
+                  </button>
+                </div>
+              )}
+              
               {messages.map((message, index) => (
                 <div
                   key={index}
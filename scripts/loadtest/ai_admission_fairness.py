@@ -0,0 +1,63 @@
+"""AI 准入公平性压测：一个重度用户持续并发请求时，其他用户的对话延迟应基本不受影响
+
+重度用户以远超 ai.admission.max-concurrent 的并发发起对话，多个普通用户各自串行对话。
+预期：重度用户大量收到 429（Retry-After），普通用户的 p95 接近 AI 替身服务本身的延迟。
+
+    python ai-service/stub_server.py --port 8001 --latency-ms 2000 --tokens 1 --token-delay-ms 0
+    python scripts/loadtest/ai_admission_fairness.py --heavy-concurrency 100 --light-users 5 --duration 60
+"""
+import argparse
+import asyncio
+import time
+from collections import Counter
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+
+async def chat(client, token):
+    start = time.perf_counter()
+    resp = await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token), json={"message": "你好"})
+    return resp.status_code, (time.perf_counter() - start) * 1000
+
+
+async def worker(client, token, deadline, samples, statuses):
+    while time.perf_counter() < deadline:
+        try:
+            status, elapsed = await chat(client, token)
+        except Exception:
+            statuses["error"] += 1
+            continue
+        statuses[status] += 1
+        if status == 200:
+            samples.append(elapsed)
+        elif status == 429:
+            await asyncio.sleep(0.2)
+
+
+async def main(heavy_concurrency, light_users, duration):
+    limits = httpx.Limits(max_connections=heavy_concurrency + light_users + 10)
+    async with httpx.AsyncClient(timeout=120, limits=limits) as client:
+        heavy_token = await login(client, "loadtest-heavy")
+        light_tokens = [await login(client, f"loadtest-light-{i}") for i in range(light_users)]
+
+        deadline = time.perf_counter() + duration
+        heavy_samples, heavy_statuses = [], Counter()
+        light_samples, light_statuses = [], Counter()
+        await asyncio.gather(
+            *(worker(client, heavy_token, deadline, heavy_samples, heavy_statuses) for _ in range(heavy_concurrency)),
+            *(worker(client, token, deadline, light_samples, light_statuses) for token in light_tokens),
+        )
+
+        print(summarize("重度用户", heavy_samples), dict(heavy_statuses))
+        print(summarize("普通用户", light_samples), dict(light_statuses))
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--heavy-concurrency", type=int, default=100)
+    parser.add_argument("--light-users", type=int, default=5)
+    parser.add_argument("--duration", type=int, default=60, help="压测时长（秒）")
+    args = parser.parse_args()
+    asyncio.run(main(args.heavy_concurrency, args.light_users, args.duration))
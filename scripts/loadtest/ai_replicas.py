@@ -0,0 +1,69 @@
+"""多副本负载均衡验证：对话请求应按在途最少分摊到各 AI 副本，故障副本被摘除，慢副本触发对冲
+
+启动多个替身副本（第三个随机变慢，第四个持续失败），后端配置全部副本：
+    python ai-service/stub_server.py --port 8001 --latency-ms 200 --tokens 1
+    python ai-service/stub_server.py --port 8002 --latency-ms 200 --tokens 1
+    python ai-service/stub_server.py --port 8003 --latency-ms 200 --latency-jitter-ms 3000 --tokens 1
+    python ai-service/stub_server.py --port 8004 --fail-rate 1.0
+    AI_SERVICE_URLS=http://localhost:8001,http://localhost:8002,http://localhost:8003,http://localhost:8004 \\
+        java -jar backend.jar --ai.gateway.hedge-enabled=true
+    python scripts/loadtest/ai_replicas.py --replicas http://localhost:8001,http://localhost:8002,http://localhost:8003,http://localhost:8004
+"""
+import argparse
+import asyncio
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+
+async def served_counts(client, replicas):
+    counts = {}
+    for replica in replicas:
+        try:
+            resp = await client.get(f"{replica}/health", timeout=2)
+            counts[replica] = resp.json().get("served", 0) if resp.status_code == 200 else "不可用"
+        except Exception:
+            counts[replica] = "不可达"
+    return counts
+
+
+async def main(replicas, total, concurrency):
+    limits = httpx.Limits(max_connections=concurrency + 10)
+    async with httpx.AsyncClient(timeout=120, limits=limits) as client:
+        token = await login(client)
+        before = await served_counts(client, replicas)
+
+        samples, errors = [], 0
+        semaphore = asyncio.Semaphore(concurrency)
+
+        async def one():
+            nonlocal errors
+            async with semaphore:
+                start = time.perf_counter()
+                try:
+                    resp = await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token),
+                                             json={"message": "你好"})
+                    resp.raise_for_status()
+                    samples.append((time.perf_counter() - start) * 1000)
+                except Exception:
+                    errors += 1
+
+        await asyncio.gather(*(one() for _ in range(total)))
+        after = await served_counts(client, replicas)
+
+        print(summarize("/api/chat", samples), f"失败: {errors}")
+        for replica in replicas:
+            b, a = before[replica], after[replica]
+            handled = a - b if isinstance(a, int) and isinstance(b, int) else a
+            print(f"  {replica}: 处理 {handled}")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--replicas", required=True, help="逗号分隔的替身副本地址（与后端 ai.service.urls 一致）")
+    parser.add_argument("--requests", type=int, default=500)
+    parser.add_argument("--concurrency", type=int, default=20)
+    args = parser.parse_args()
+    asyncio.run(main([r.strip() for r in args.replicas.split(",") if r.strip()], args.requests, args.concurrency))
@@ -0,0 +1,92 @@
+"""对话快速通道压测：结构化指令与普通问题混合发送，对比两类消息的延迟并读取快速通道占比
+
+指令类消息（"记录体重70kg"、"提醒我8点吃药"）应在本地识别后直接写入并返回，延迟为毫秒级；
+普通问题照常调用 AI。结束时读取 /actuator/metrics/chat.fast.path 与 chat.fast.path.ratio。
+
+    python ai-service/stub_server.py --port 8001 --latency-ms 2000 --tokens 20
+    python scripts/loadtest/chat_fast_path.py --requests 200 --concurrency 10
+"""
+import argparse
+import asyncio
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+COMMANDS = [
+    "记录体重70kg",
+    "体重140斤",
+    "今天血压130/80",
+    "记一下血糖6.2",
+    "睡了7个小时",
+    "今天走了8000步",
+    "量了体温36.8度",
+    "提醒我8点吃药",
+    "每天晚上9点半提醒我吃药",
+    "提醒我下午3点去复查",
+]
+
+QUESTIONS = [
+    "我最近总是头疼，需要注意什么？",
+    "体重70kg正常吗",
+    "血压130/80算高吗",
+    "帮我制定一个一周的运动计划",
+    "明天8点提醒我吃药",
+]
+
+
+async def fetch_metric(client, token, name, tag=None):
+    params = {"tag": tag} if tag else None
+    resp = await client.get(f"{BACKEND_URL}/actuator/metrics/{name}", headers=auth_headers(token), params=params)
+    if resp.status_code != 200:
+        return None
+    return resp.json()["measurements"][0]["value"]
+
+
+async def main(total, concurrency, command_share):
+    limits = httpx.Limits(max_connections=concurrency + 5)
+    async with httpx.AsyncClient(timeout=120, limits=limits) as client:
+        token = await login(client)
+        samples = {"指令": [], "问题": []}
+        errors = 0
+        semaphore = asyncio.Semaphore(concurrency)
+        command_every = max(1, round(1 / command_share)) if command_share > 0 else 0
+
+        async def one(i):
+            nonlocal errors
+            is_command = command_every and i % command_every == 0
+            kind = "指令" if is_command else "问题"
+            pool = COMMANDS if is_command else QUESTIONS
+            async with semaphore:
+                start = time.perf_counter()
+                try:
+                    resp = await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token),
+                                             json={"message": pool[i % len(pool)]})
+                    resp.raise_for_status()
+                    samples[kind].append((time.perf_counter() - start) * 1000)
+                except Exception:
+                    errors += 1
+
+        await asyncio.gather(*(one(i) for i in range(total)))
+
+        for kind, values in samples.items():
+            print(summarize(kind, values))
+        print(f"失败: {errors}")
+
+        served = await fetch_metric(client, token, "chat.fast.path", "result:served")
+        fallthrough = await fetch_metric(client, token, "chat.fast.path", "result:fallthrough")
+        ratio = await fetch_metric(client, token, "chat.fast.path.ratio")
+        if ratio is None:
+            print("无法读取 /actuator/metrics（确认 management.endpoints 已暴露 metrics）")
+        else:
+            print(f"快速通道: served={served:.0f} fallthrough={fallthrough:.0f} 占比={ratio:.1%}（服务启动以来累计）")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--requests", type=int, default=200)
+    parser.add_argument("--concurrency", type=int, default=10)
+    parser.add_argument("--command-share", type=float, default=0.5, help="指令类消息占比")
+    args = parser.parse_args()
+    asyncio.run(main(args.requests, args.concurrency, args.command_share))
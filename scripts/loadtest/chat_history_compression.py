@@ -0,0 +1,143 @@
+"""对话内容压缩基准：存储节省与编解码 / 历史分页延迟
+
+离线模式：对导出的消息样本（每行一个 JSON 字符串，导出方法见 scripts/train_chat_dictionary.py）分别用
+无字典 deflate 和预置字典 deflate 压缩（与后端 ChatContentCodec 相同的 zlib 格式），输出存储比例和单条编解码耗时：
+
+    python scripts/loadtest/chat_history_compression.py offline sample.jsonl --threshold 1024
+
+在线模式：用长回复的替身服务写入一批对话，再压历史分页接口，并读取后端 chat.history.codec.* 指标：
+
+    python ai-service/stub_server.py --port 8001 --latency-ms 0 --tokens 800 --token-delay-ms 0
+    python scripts/loadtest/chat_history_compression.py online --chats 50 --pages 300
+
+分别在 chat.history.compression.enabled=true / false 下运行在线模式，对比分页延迟；
+存储大小可在两次运行之间执行 SELECT pg_total_relation_size('chat_histories') 对比。
+注意替身服务的回复由少量 token 重复组成，在线模式的压缩率偏乐观，存储比例以离线模式的真实样本为准。
+"""
+import argparse
+import asyncio
+import json
+import os
+import statistics
+import time
+import uuid
+import zlib
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+DEFAULT_DICTIONARY = os.path.join(os.path.dirname(__file__), "..", "..", "backend", "src", "main", "resources",
+                                  "chat-dictionary", "v1.txt")
+
+
+def offline(sample, dictionary_path, threshold, level):
+    with open(dictionary_path, "rb") as f:
+        zdict = f.read()
+    with open(sample, encoding="utf-8") as f:
+        messages = [json.loads(line) for line in f if line.strip()]
+
+    raw_total = plain_total = dict_total = 0
+    encode_us, decode_us = [], []
+    compressed_count = 0
+    for message in messages:
+        raw = message.encode("utf-8")
+        raw_total += len(raw)
+        if len(raw) < threshold:
+            plain_total += len(raw)
+            dict_total += len(raw)
+            continue
+
+        plain_total += min(len(raw), len(zlib.compress(raw, level)))
+
+        start = time.perf_counter()
+        compressor = zlib.compressobj(level, zlib.DEFLATED, 15, 8, zlib.Z_DEFAULT_STRATEGY, zdict)
+        blob = compressor.compress(raw) + compressor.flush()
+        encode_us.append((time.perf_counter() - start) * 1e6)
+
+        # 与后端一致：至少省下 10% 才压缩
+        if len(blob) > len(raw) * 0.9:
+            dict_total += len(raw)
+            continue
+        compressed_count += 1
+        dict_total += len(blob)
+
+        start = time.perf_counter()
+        decompressor = zlib.decompressobj(15, zdict)
+        assert decompressor.decompress(blob) + decompressor.flush() == raw
+        decode_us.append((time.perf_counter() - start) * 1e6)
+
+    print(f"样本 {len(messages)} 条，超过阈值并压缩 {compressed_count} 条")
+    print(f"原始: {raw_total / 1024:.1f} KB")
+    print(f"无字典 deflate: {plain_total / 1024:.1f} KB（{plain_total / max(raw_total, 1):.1%}）")
+    print(f"字典 deflate:   {dict_total / 1024:.1f} KB（{dict_total / max(raw_total, 1):.1%}）")
+    if encode_us:
+        print(f"单条编码: mean={statistics.mean(encode_us):.1f}us  单条解码: mean={statistics.mean(decode_us or [0]):.1f}us")
+
+
+async def fetch_metric(client, token, name, tag):
+    resp = await client.get(f"{BACKEND_URL}/actuator/metrics/{name}", headers=auth_headers(token),
+                            params={"tag": tag})
+    if resp.status_code != 200:
+        return {}
+    return {m["statistic"]: m["value"] for m in resp.json()["measurements"]}
+
+
+async def online(chats, pages, concurrency):
+    limits = httpx.Limits(max_connections=concurrency + 5)
+    async with httpx.AsyncClient(timeout=120, limits=limits) as client:
+        token = await login(client)
+        session_id = f"compression-{uuid.uuid4().hex[:8]}"
+
+        for i in range(chats):
+            resp = await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token),
+                                     json={"message": f"请详细介绍一下高血压的饮食和运动建议（{i}）", "sessionId": session_id})
+            resp.raise_for_status()
+
+        samples, errors = [], 0
+        semaphore = asyncio.Semaphore(concurrency)
+
+        async def one():
+            nonlocal errors
+            async with semaphore:
+                start = time.perf_counter()
+                try:
+                    resp = await client.get(f"{BACKEND_URL}/api/chat/history/{session_id}", headers=auth_headers(token),
+                                            params={"limit": 50})
+                    resp.raise_for_status()
+                    samples.append((time.perf_counter() - start) * 1000)
+                except Exception:
+                    errors += 1
+
+        await asyncio.gather(*(one() for _ in range(pages)))
+        print(summarize("历史分页（50 条/页）", samples), f"失败: {errors}")
+
+        raw = await fetch_metric(client, token, "chat.history.codec.bytes", "kind:raw")
+        stored = await fetch_metric(client, token, "chat.history.codec.bytes", "kind:stored")
+        if raw.get("TOTAL"):
+            print(f"压缩消息 {raw.get('COUNT', 0):.0f} 条：原始 {raw['TOTAL'] / 1024:.1f} KB -> "
+                  f"存储 {stored.get('TOTAL', 0) / 1024:.1f} KB（{stored.get('TOTAL', 0) / raw['TOTAL']:.1%}）")
+        for op in ("encode", "decode"):
+            timer = await fetch_metric(client, token, "chat.history.codec", f"op:{op}")
+            if timer.get("COUNT"):
+                print(f"{op}: n={timer['COUNT']:.0f} mean={timer['TOTAL_TIME'] / timer['COUNT'] * 1e6:.1f}us")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    sub = parser.add_subparsers(dest="mode", required=True)
+    off = sub.add_parser("offline")
+    off.add_argument("sample")
+    off.add_argument("--dictionary", default=DEFAULT_DICTIONARY)
+    off.add_argument("--threshold", type=int, default=1024)
+    off.add_argument("--level", type=int, default=6)
+    on = sub.add_parser("online")
+    on.add_argument("--chats", type=int, default=50)
+    on.add_argument("--pages", type=int, default=300)
+    on.add_argument("--concurrency", type=int, default=10)
+    args = parser.parse_args()
+
+    if args.mode == "offline":
+        offline(args.sample, args.dictionary, args.threshold, args.level)
+    else:
+        asyncio.run(online(args.chats, args.pages, args.concurrency))
@@ -0,0 +1,76 @@
+"""对话消息写入吞吐压测：对比 chat.history.write-mode=sync 与 write-behind
+
+AI 替身服务零延迟，使 /api/chat 的耗时主要落在 chat_histories 写入上。分别以两种模式启动后端各跑一次：
+    python ai-service/stub_server.py --port 8001 --latency-ms 0 --tokens 1 --token-delay-ms 0
+    java -jar backend.jar --chat.history.write-mode=sync
+    python scripts/loadtest/chat_history_write.py --label sync --concurrency 50 --requests 2000
+    java -jar backend.jar --chat.history.write-mode=write-behind
+    python scripts/loadtest/chat_history_write.py --label write-behind --concurrency 50 --requests 2000
+
+每轮结束后立即读取各会话的历史，校验读己之写（每个会话应有 2 × 轮数 条消息）。
+"""
+import argparse
+import asyncio
+import time
+import uuid
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+
+async def run(client, token, total, concurrency, turns):
+    samples, errors = [], 0
+    sessions = [str(uuid.uuid4()) for _ in range(max(1, total // turns))]
+    semaphore = asyncio.Semaphore(concurrency)
+
+    async def session_worker(session_id):
+        nonlocal errors
+        for turn in range(turns):
+            async with semaphore:
+                start = time.perf_counter()
+                try:
+                    resp = await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token),
+                                             json={"message": f"第 {turn} 轮：今天血压 120/80", "sessionId": session_id})
+                    resp.raise_for_status()
+                    samples.append((time.perf_counter() - start) * 1000)
+                except Exception:
+                    errors += 1
+
+    start = time.perf_counter()
+    await asyncio.gather(*(session_worker(s) for s in sessions))
+    elapsed = time.perf_counter() - start
+    return sessions, samples, errors, elapsed
+
+
+async def check_read_your_writes(client, token, sessions, turns):
+    missing = 0
+    for session_id in sessions:
+        resp = await client.get(f"{BACKEND_URL}/api/chat/history/{session_id}", headers=auth_headers(token),
+                                params={"limit": 200})
+        resp.raise_for_status()
+        items = resp.json()["data"]["items"]
+        missing += max(0, 2 * turns - len(items))
+    return missing
+
+
+async def main(label, total, concurrency, turns):
+    limits = httpx.Limits(max_connections=concurrency + 10)
+    async with httpx.AsyncClient(timeout=60, limits=limits) as client:
+        token = await login(client)
+        sessions, samples, errors, elapsed = await run(client, token, total, concurrency, turns)
+        messages = 2 * len(samples)
+        print(summarize(f"[{label}] /api/chat", samples), f"失败: {errors}")
+        print(f"[{label}] 写入吞吐: {messages / elapsed:.0f} 条消息/秒（{messages} 条，{elapsed:.1f}s）")
+        missing = await check_read_your_writes(client, token, sessions, turns)
+        print(f"[{label}] 读己之写校验: {'通过' if missing == 0 else f'缺少 {missing} 条'}")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--label", default="sync", help="本轮对应的写入模式，仅用于输出")
+    parser.add_argument("--requests", type=int, default=2000)
+    parser.add_argument("--concurrency", type=int, default=50)
+    parser.add_argument("--turns", type=int, default=10, help="每个会话的对话轮数")
+    args = parser.parse_args()
+    asyncio.run(main(args.label, args.requests, args.concurrency, args.turns))
@@ -0,0 +1,85 @@
+"""对话模型分级压测：短句与复杂问题混合发送，对比各类消息延迟，并读取各档位的 AI 调用耗时
+
+替身服务按请求体 modelTier 模拟不同模型的首 token 延迟：
+
+    python ai-service/stub_server.py --port 8001 --latency-ms 1500 --fast-latency-ms 300 --large-latency-ms 4000 --tokens 20
+    python scripts/loadtest/chat_model_routing.py --requests 200 --concurrency 10
+
+将后端 ai.routing.enabled 设为 false 再跑一次即可得到不分级时的基线（全部走 standard）。
+"""
+import argparse
+import asyncio
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+# 按实际对话分布构造：大多数是寒暄、确认等短句
+MESSAGES = [
+    ("短句", "谢谢"),
+    ("短句", "好的，明白了"),
+    ("短句", "你好"),
+    ("短句", "嗯嗯"),
+    ("短句", "早上好"),
+    ("短句", "多喝水有好处吗"),
+    ("工具", "帮我看看最近的血压趋势"),
+    ("工具", "布洛芬怎么吃"),
+    ("复杂", "帮我对比一下所有病历里的血常规指标变化"),
+    ("复杂", "综合我的档案和检查结果给一个详细分析"),
+]
+
+
+async def fetch_tier_latency(client, token, tier):
+    resp = await client.get(f"{BACKEND_URL}/actuator/metrics/chat.model.latency",
+                            headers=auth_headers(token), params={"tag": f"tier:{tier}"})
+    if resp.status_code != 200:
+        return None
+    values = {m["statistic"]: m["value"] for m in resp.json()["measurements"]}
+    return values
+
+
+async def main(total, concurrency):
+    limits = httpx.Limits(max_connections=concurrency + 5)
+    async with httpx.AsyncClient(timeout=120, limits=limits) as client:
+        token = await login(client)
+        samples = {kind: [] for kind, _ in MESSAGES}
+        everything, errors = [], 0
+        semaphore = asyncio.Semaphore(concurrency)
+
+        async def one(i):
+            nonlocal errors
+            kind, message = MESSAGES[i % len(MESSAGES)]
+            async with semaphore:
+                start = time.perf_counter()
+                try:
+                    # 每条消息新开会话，避免会话变长后不再走 fast
+                    resp = await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token),
+                                             json={"message": message})
+                    resp.raise_for_status()
+                    elapsed = (time.perf_counter() - start) * 1000
+                    samples[kind].append(elapsed)
+                    everything.append(elapsed)
+                except Exception:
+                    errors += 1
+
+        await asyncio.gather(*(one(i) for i in range(total)))
+
+        for kind, values in samples.items():
+            print(summarize(kind, values))
+        print(summarize("全部", everything), f"失败: {errors}")
+
+        for tier in ("fast", "standard", "large"):
+            values = await fetch_tier_latency(client, token, tier)
+            if values:
+                count = values.get("COUNT", 0)
+                mean = values.get("TOTAL_TIME", 0) / count * 1000 if count else 0
+                print(f"档位 {tier}: n={count:.0f} mean={mean:.1f}ms（chat.model.latency，服务启动以来累计）")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--requests", type=int, default=200)
+    parser.add_argument("--concurrency", type=int, default=10)
+    args = parser.parse_args()
+    asyncio.run(main(args.requests, args.concurrency))
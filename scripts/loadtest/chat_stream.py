@@ -0,0 +1,60 @@
+"""流式对话压测：并发调用 /api/chat/stream，统计首 token 时间和完整响应时间
+
+先启动 AI 替身服务与后端：
+    python ai-service/stub_server.py --port 8001 --latency-ms 300 --tokens 100 --token-delay-ms 20
+    python scripts/loadtest/chat_stream.py --concurrency 50 --requests 500
+"""
+import argparse
+import asyncio
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+
+async def one_stream(client, token, first_token_ms, total_ms, errors):
+    start = time.perf_counter()
+    got_first = False
+    try:
+        async with client.stream("POST", f"{BACKEND_URL}/api/chat/stream",
+                                 headers={**auth_headers(token), "Accept": "text/event-stream"},
+                                 json={"message": "最近总是失眠怎么办"}) as resp:
+            resp.raise_for_status()
+            async for line in resp.aiter_lines():
+                if not got_first and line.startswith("event:delta"):
+                    first_token_ms.append((time.perf_counter() - start) * 1000)
+                    got_first = True
+                if line.startswith("event:done"):
+                    break
+        total_ms.append((time.perf_counter() - start) * 1000)
+    except Exception as e:
+        errors.append(str(e))
+
+
+async def main(concurrency: int, requests: int):
+    limits = httpx.Limits(max_connections=concurrency, max_keepalive_connections=concurrency)
+    async with httpx.AsyncClient(timeout=300, limits=limits) as client:
+        token = await login(client)
+        first_token_ms, total_ms, errors = [], [], []
+        semaphore = asyncio.Semaphore(concurrency)
+
+        async def guarded():
+            async with semaphore:
+                await one_stream(client, token, first_token_ms, total_ms, errors)
+
+        start = time.perf_counter()
+        await asyncio.gather(*(guarded() for _ in range(requests)))
+        elapsed = time.perf_counter() - start
+
+        print(summarize("首 token", first_token_ms))
+        print(summarize("完整响应", total_ms))
+        print(f"吞吐: {len(total_ms) / elapsed:.1f} req/s, 失败: {len(errors)}")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--concurrency", type=int, default=50)
+    parser.add_argument("--requests", type=int, default=500)
+    args = parser.parse_args()
+    asyncio.run(main(args.concurrency, args.requests))
@@ -0,0 +1,38 @@
+"""压测脚本公共工具：登录获取 Token、统计延迟分位数"""
+import os
+import statistics
+import uuid
+
+import httpx
+
+BACKEND_URL = os.getenv("BACKEND_URL", "http://localhost:8081")
+
+
+async def login(client: httpx.AsyncClient, username: str = None, password: str = "loadtest123") -> str:
+    """注册（已存在则忽略）并登录压测用户，返回 Bearer Token"""
+    username = username or os.getenv("LOADTEST_USER", "loadtest")
+    await client.post(f"{BACKEND_URL}/api/auth/register", json={
+        "username": username,
+        "email": f"{username}-{uuid.uuid4().hex[:6]}@loadtest.local",
+        "password": password,
+    })
+    resp = await client.post(f"{BACKEND_URL}/api/auth/login", json={"username": username, "password": password})
+    resp.raise_for_status()
+    return resp.json()["data"]["token"]
+
+
+def auth_headers(token: str) -> dict:
+    return {"Authorization": f"Bearer {token}"}
+
+
+def summarize(name: str, samples_ms: list) -> str:
+    """输出 p50 / p95 / p99 / max"""
+    if not samples_ms:
+        return f"{name}: 无数据"
+    ordered = sorted(samples_ms)
+
+    def pct(p):
+        return ordered[min(len(ordered) - 1, int(len(ordered) * p))]
+
+    return (f"{name}: n={len(ordered)} mean={statistics.mean(ordered):.1f}ms "
+            f"p50={pct(0.50):.1f}ms p95={pct(0.95):.1f}ms p99={pct(0.99):.1f}ms max={ordered[-1]:.1f}ms")
@@ -0,0 +1,105 @@
+"""健康数据批量导入基准：逐条 POST /api/health-data 与 POST /api/health-data/bulk（JSON 数组 / NDJSON）的写入速率
+
+模拟可穿戴设备同步一天的分钟级心率（1440 条）：
+
+    python scripts/loadtest/health_bulk_ingest.py --rows 1440 --single-concurrency 10 --chunk 1440
+
+逐条路径按 --single-concurrency 并发发送；批量路径每次请求 --chunk 条。输出各路径的 行/秒，
+并校验批量接口对非法条目的逐条报错（未知类型、无法解析的数值、缺少血压）。
+"""
+import argparse
+import asyncio
+import datetime
+import json
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login
+
+INVALID = [
+    {"dataType": "mood", "value": "5"},
+    {"dataType": "heart_rate", "value": "abc"},
+    {"dataType": "blood_pressure", "value": "120"},
+]
+
+
+def readings(rows, day):
+    """分钟级心率；同一天内 recordTime 为 HH:MM"""
+    for i in range(rows):
+        yield {
+            "dataType": "heart_rate",
+            "value": str(60 + (i * 7) % 40),
+            "recordDate": (day - datetime.timedelta(days=i // 1440)).isoformat(),
+            "recordTime": f"{(i % 1440) // 60:02d}:{i % 60:02d}",
+        }
+
+
+async def single(client, token, items, concurrency):
+    semaphore = asyncio.Semaphore(concurrency)
+    errors = 0
+
+    async def one(item):
+        nonlocal errors
+        async with semaphore:
+            resp = await client.post(f"{BACKEND_URL}/api/health-data", headers=auth_headers(token), json=item)
+            if resp.status_code != 200 or not resp.json().get("success"):
+                errors += 1
+
+    start = time.perf_counter()
+    await asyncio.gather(*(one(item) for item in items))
+    return time.perf_counter() - start, errors
+
+
+async def bulk(client, token, items, chunk, ndjson):
+    accepted = 0
+    start = time.perf_counter()
+    for i in range(0, len(items), chunk):
+        part = items[i:i + chunk]
+        if ndjson:
+            body = "\n".join(json.dumps(item, ensure_ascii=False) for item in part).encode("utf-8")
+            content_type = "application/x-ndjson"
+        else:
+            body = json.dumps(part, ensure_ascii=False).encode("utf-8")
+            content_type = "application/json"
+        resp = await client.post(f"{BACKEND_URL}/api/health-data/bulk", content=body,
+                                 headers={**auth_headers(token), "Content-Type": content_type})
+        resp.raise_for_status()
+        data = resp.json()
+        assert data.get("success"), data
+        accepted += data["data"]["accepted"]
+    return time.perf_counter() - start, accepted
+
+
+async def main(rows, single_concurrency, chunk):
+    async with httpx.AsyncClient(timeout=300, limits=httpx.Limits(max_connections=single_concurrency + 5)) as client:
+        token = await login(client, "bulk-ingest")
+        day = datetime.date.today()
+        items = list(readings(rows, day))
+
+        elapsed, errors = await single(client, token, items, single_concurrency)
+        print(f"逐条 POST（并发 {single_concurrency}）: {rows} 行 {elapsed:.2f}s  {rows / elapsed:.0f} 行/秒  失败 {errors}")
+
+        for ndjson in (False, True):
+            elapsed, accepted = await bulk(client, token, items, chunk, ndjson)
+            name = "NDJSON" if ndjson else "JSON 数组"
+            print(f"批量 {name}（每次 {chunk} 条）: {accepted} 行 {elapsed:.2f}s  {accepted / elapsed:.0f} 行/秒")
+
+        # 逐条报错：非法条目夹在合法条目之间，序号应与位置一致
+        mixed = [items[0], *INVALID, items[1]]
+        resp = await client.post(f"{BACKEND_URL}/api/health-data/bulk", headers=auth_headers(token), json=mixed)
+        result = resp.json()["data"]
+        assert result["accepted"] == 2 and result["rejected"] == len(INVALID), result
+        assert [e["index"] for e in result["errors"]] == [1, 2, 3], result
+        for error in result["errors"]:
+            print(f"  #{error['index']}: {error['message']}")
+        print("逐条报错校验通过")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--rows", type=int, default=1440)
+    parser.add_argument("--single-concurrency", type=int, default=10)
+    parser.add_argument("--chunk", type=int, default=1440)
+    args = parser.parse_args()
+    asyncio.run(main(args.rows, args.single_concurrency, args.chunk))
@@ -0,0 +1,98 @@
+"""仪表盘「各类型最新数据」压测：写入一段历史后反复请求 /api/health-data/latest，并校验新增、删除后结果即时更新
+
+    python scripts/loadtest/health_latest.py --days 365 --requests 2000 --concurrency 20
+
+对比 health.latest-cache.enabled=true / false 两次运行的延迟；结束时读取 health.latest.cache 命中指标。
+--days 决定每种类型的历史条数（每天一条），改造前接口返回整段历史，延迟随天数线性增长。
+"""
+import argparse
+import asyncio
+import datetime
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+TYPES = ["weight", "blood_sugar", "heart_rate", "sleep", "steps"]
+
+
+async def record(client, token, data_type, value, record_date):
+    resp = await client.post(f"{BACKEND_URL}/api/health-data", headers=auth_headers(token), json={
+        "dataType": data_type, "value": str(value), "recordDate": record_date.isoformat()})
+    resp.raise_for_status()
+    return resp.json()["data"]
+
+
+async def latest(client, token):
+    resp = await client.get(f"{BACKEND_URL}/api/health-data/latest", headers=auth_headers(token))
+    resp.raise_for_status()
+    return {item["dataType"]: item for item in resp.json()["data"]}
+
+
+async def fetch_metric(client, token, name, tag):
+    resp = await client.get(f"{BACKEND_URL}/actuator/metrics/{name}", headers=auth_headers(token),
+                            params={"tag": tag})
+    if resp.status_code != 200:
+        return 0
+    return resp.json()["measurements"][0]["value"]
+
+
+async def main(days, total, concurrency):
+    limits = httpx.Limits(max_connections=concurrency + 5)
+    async with httpx.AsyncClient(timeout=60, limits=limits) as client:
+        token = await login(client, f"latest-{days}d")
+        today = datetime.date.today()
+
+        # 已有足够历史时跳过写入（同一用户重复运行）
+        if len(await latest(client, token)) < len(TYPES):
+            semaphore = asyncio.Semaphore(concurrency)
+
+            async def seed(data_type, day):
+                async with semaphore:
+                    await record(client, token, data_type, 60 + day % 10, today - datetime.timedelta(days=day))
+
+            await asyncio.gather(*(seed(t, d) for t in TYPES for d in range(1, days + 1)))
+            print(f"已写入 {len(TYPES)} 种类型 x {days} 天")
+
+        samples, errors = [], 0
+        semaphore = asyncio.Semaphore(concurrency)
+
+        async def one():
+            nonlocal errors
+            async with semaphore:
+                start = time.perf_counter()
+                try:
+                    await latest(client, token)
+                    samples.append((time.perf_counter() - start) * 1000)
+                except Exception:
+                    errors += 1
+
+        await asyncio.gather(*(one() for _ in range(total)))
+        print(summarize("GET /latest", samples), f"失败: {errors}")
+
+        # 正确性：每种类型一条；新增今天的记录后立即可见，删除后回到之前的最新值
+        before = await latest(client, token)
+        assert all(t in before for t in TYPES), f"缺少类型: {set(TYPES) - before.keys()}"
+        added = await record(client, token, "weight", 99.5, today)
+        after_add = await latest(client, token)
+        assert after_add["weight"]["id"] == added["id"], "新增记录未出现在最新数据中"
+        resp = await client.delete(f"{BACKEND_URL}/api/health-data/{added['id']}", headers=auth_headers(token))
+        resp.raise_for_status()
+        after_delete = await latest(client, token)
+        assert after_delete["weight"]["id"] == before["weight"]["id"], "删除后未回到之前的最新记录"
+        print("新增 / 删除后结果校验通过")
+
+        hit = await fetch_metric(client, token, "health.latest.cache", "result:hit")
+        miss = await fetch_metric(client, token, "health.latest.cache", "result:miss")
+        if hit + miss:
+            print(f"快照命中 {hit:.0f} 次，未命中 {miss:.0f} 次（命中率 {hit / (hit + miss):.1%}）")
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--days", type=int, default=365)
+    parser.add_argument("--requests", type=int, default=2000)
+    parser.add_argument("--concurrency", type=int, default=20)
+    args = parser.parse_args()
+    asyncio.run(main(args.days, args.requests, args.concurrency))
@@ -0,0 +1,142 @@
+"""健康数据趋势压测：长范围趋势使用汇总（日/周/月）与逐条明细的延迟和响应大小对比，并校验汇总与明细一致
+
+    python scripts/loadtest/health_trend.py --days 365 --per-day 3 --requests 500 --concurrency 20 --max-points 120
+
+写入 --days 天、每天 --per-day 条心率记录，分别以 resolution=raw、raw + maxPoints（服务端 LTTB 降采样）和自动粒度
+请求 /api/health-data/trend，然后用明细在本地计算周汇总与接口返回对比，最后删除一条记录验证所在桶被重算。
+"""
+import argparse
+import asyncio
+import datetime
+import json
+import time
+from collections import defaultdict
+from decimal import Decimal
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+DATA_TYPE = "heart_rate"
+
+
+async def trend(client, token, days, resolution=None, max_points=None):
+    params = {"days": days}
+    if resolution:
+        params["resolution"] = resolution
+    if max_points:
+        params["maxPoints"] = max_points
+    resp = await client.get(f"{BACKEND_URL}/api/health-data/trend/{DATA_TYPE}", headers=auth_headers(token),
+                            params=params)
+    resp.raise_for_status()
+    return resp
+
+
+async def bench(client, token, days, resolution, total, concurrency, max_points=None):
+    samples, sizes, errors = [], [], 0
+    semaphore = asyncio.Semaphore(concurrency)
+
+    async def one():
+        nonlocal errors
+        async with semaphore:
+            start = time.perf_counter()
+            try:
+                resp = await trend(client, token, days, resolution, max_points)
+                samples.append((time.perf_counter() - start) * 1000)
+                sizes.append(len(resp.content))
+            except Exception:
+                errors += 1
+
+    await asyncio.gather(*(one() for _ in range(total)))
+    points = len((await trend(client, token, days, resolution, max_points)).json()["data"])
+    if max_points:
+        assert points <= max_points, f"降采样后 {points} 个点超过 maxPoints={max_points}"
+    print(summarize(f"趋势 {days} 天 resolution={resolution or '自动'} maxPoints={max_points or '-'}", samples),
+          f"点数: {points} 响应: {sum(sizes) / max(len(sizes), 1) / 1024:.1f} KB 失败: {errors}")
+
+
+def week_start(day):
+    return day - datetime.timedelta(days=day.weekday())
+
+
+async def verify(client, token, days):
+    raw = (await trend(client, token, days, "raw")).json()["data"]
+    weekly = {p["recordDate"]: p for p in (await trend(client, token, days, "week")).json()["data"]}
+
+    expected = defaultdict(list)
+    for p in raw:
+        expected[week_start(datetime.date.fromisoformat(p["recordDate"])).isoformat()].append(Decimal(str(p["value"])))
+    # 第一周可能只有部分明细在 raw 范围内，跳过
+    for bucket in sorted(expected)[1:]:
+        values = expected[bucket]
+        point = weekly.get(bucket)
+        assert point, f"缺少周汇总 {bucket}"
+        assert point["count"] == len(values), f"{bucket} 条数 {point['count']} != {len(values)}"
+        assert Decimal(str(point["min"])) == min(values) and Decimal(str(point["max"])) == max(values), bucket
+        assert Decimal(str(point["sum"])) == sum(values), bucket
+    print(f"周汇总与明细一致（{len(expected) - 1} 周）")
+
+
+async def verify_downsample(client, token, days, max_points):
+    raw = (await trend(client, token, days, "raw")).json()["data"]
+    sampled = (await trend(client, token, days, "raw", max_points)).json()["data"]
+    if len(raw) <= max_points:
+        assert len(sampled) == len(raw), "点数不超过 maxPoints 时应原样返回"
+        return
+    # LTTB 保留首尾点，其余点都来自原始明细
+    assert len(sampled) == max_points, f"降采样后 {len(sampled)} != {max_points}"
+    assert sampled[0]["recordDate"] == raw[0]["recordDate"] and sampled[-1]["recordDate"] == raw[-1]["recordDate"]
+    originals = {(p["recordDate"], str(p["value"])) for p in raw}
+    assert all((p["recordDate"], str(p["value"])) in originals for p in sampled)
+    print(f"降采样校验通过：{len(raw)} -> {len(sampled)} 个点")
+
+
+async def main(days, per_day, total, concurrency, max_points):
+    limits = httpx.Limits(max_connections=concurrency + 5)
+    async with httpx.AsyncClient(timeout=60, limits=limits) as client:
+        token = await login(client, f"trend-{days}d-{per_day}")
+        today = datetime.date.today()
+
+        if not (await trend(client, token, days, "raw")).json()["data"]:
+            semaphore = asyncio.Semaphore(concurrency)
+
+            async def seed(day, i):
+                async with semaphore:
+                    resp = await client.post(f"{BACKEND_URL}/api/health-data", headers=auth_headers(token), json={
+                        "dataType": DATA_TYPE, "value": str(60 + (day * 7 + i * 13) % 40),
+                        "recordDate": (today - datetime.timedelta(days=day)).isoformat()})
+                    resp.raise_for_status()
+
+            await asyncio.gather(*(seed(d, i) for d in range(days) for i in range(per_day)))
+            print(f"已写入 {days} 天 x {per_day} 条")
+
+        await bench(client, token, days, "raw", total, concurrency)
+        await bench(client, token, days, "raw", total, concurrency, max_points)
+        await bench(client, token, days, None, total, concurrency)
+        await verify(client, token, days)
+        await verify_downsample(client, token, days, max_points)
+
+        # 删除一条记录后，所在的日汇总应从明细重算
+        target = (await trend(client, token, 7, "raw")).json()["data"][-1]
+        history = await client.get(f"{BACKEND_URL}/api/health-data/daily", headers=auth_headers(token),
+                                   params={"date": target["recordDate"]})
+        rows = [r for r in history.json()["data"] if r["dataType"] == DATA_TYPE]
+        before = {p["recordDate"]: p for p in (await trend(client, token, 7, "day")).json()["data"]}
+        resp = await client.delete(f"{BACKEND_URL}/api/health-data/{rows[0]['id']}", headers=auth_headers(token))
+        resp.raise_for_status()
+        after = {p["recordDate"]: p for p in (await trend(client, token, 7, "day")).json()["data"]}
+        expected_count = before[target["recordDate"]]["count"] - 1
+        actual = after.get(target["recordDate"], {"count": 0})["count"]
+        assert actual == expected_count, f"删除后日汇总条数 {actual} != {expected_count}"
+        print("删除后汇总重算校验通过", json.dumps(after.get(target["recordDate"]), ensure_ascii=False))
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--days", type=int, default=365)
+    parser.add_argument("--per-day", type=int, default=3)
+    parser.add_argument("--requests", type=int, default=500)
+    parser.add_argument("--concurrency", type=int, default=20)
+    parser.add_argument("--max-points", type=int, default=120)
+    args = parser.parse_args()
+    asyncio.run(main(args.days, args.per_day, args.requests, args.concurrency, args.max_points))
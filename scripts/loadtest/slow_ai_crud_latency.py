@@ -0,0 +1,71 @@
+"""慢 AI 下的 CRUD 延迟压测：验证对话等待 AI 时不再占用数据库连接
+
+步骤：
+1. 只压 CRUD 接口，得到基线延迟
+2. 同时发起大量对话请求（AI 替身服务每次回复耗时数十秒），再次压 CRUD 接口
+两轮的 p95/p99 应基本一致；若对话期间持有连接，第二轮会在 Hikari connection-timeout 处排队或超时。
+
+    python ai-service/stub_server.py --port 8001 --latency-ms 20000 --tokens 10 --token-delay-ms 0
+    python scripts/loadtest/slow_ai_crud_latency.py --chats 30 --crud-requests 300
+"""
+import argparse
+import asyncio
+import time
+
+import httpx
+
+from common import BACKEND_URL, auth_headers, login, summarize
+
+CRUD_PATHS = ["/api/health-data/latest", "/api/records", "/api/profile", "/api/reminders"]
+
+
+async def crud_round(client, token, total, concurrency):
+    samples, errors = [], 0
+    semaphore = asyncio.Semaphore(concurrency)
+
+    async def one(i):
+        nonlocal errors
+        async with semaphore:
+            start = time.perf_counter()
+            try:
+                resp = await client.get(BACKEND_URL + CRUD_PATHS[i % len(CRUD_PATHS)], headers=auth_headers(token))
+                resp.raise_for_status()
+                samples.append((time.perf_counter() - start) * 1000)
+            except Exception:
+                errors += 1
+
+    await asyncio.gather(*(one(i) for i in range(total)))
+    return samples, errors
+
+
+async def slow_chat(client, token):
+    try:
+        await client.post(f"{BACKEND_URL}/api/chat", headers=auth_headers(token), json={"message": "你好"})
+    except Exception:
+        pass
+
+
+async def main(chats, crud_requests, concurrency):
+    limits = httpx.Limits(max_connections=chats + concurrency + 10)
+    async with httpx.AsyncClient(timeout=120, limits=limits) as client:
+        token = await login(client)
+
+        baseline, baseline_errors = await crud_round(client, token, crud_requests, concurrency)
+        print(summarize("基线 CRUD", baseline), f"失败: {baseline_errors}")
+
+        chat_tasks = [asyncio.create_task(slow_chat(client, token)) for _ in range(chats)]
+        await asyncio.sleep(2)  # 等待对话请求进入 AI 调用阶段
+        loaded, loaded_errors = await crud_round(client, token, crud_requests, concurrency)
+        print(summarize(f"{chats} 个慢对话进行中的 CRUD", loaded), f"失败: {loaded_errors}")
+
+        for task in chat_tasks:
+            task.cancel()
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--chats", type=int, default=30, help="并发慢对话数（应大于连接池大小）")
+    parser.add_argument("--crud-requests", type=int, default=300)
+    parser.add_argument("--concurrency", type=int, default=10)
+    args = parser.parse_args()
+    asyncio.run(main(args.chats, args.crud_requests, args.concurrency))
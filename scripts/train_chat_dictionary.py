@@ -0,0 +1,71 @@
+"""从对话消息样本生成 deflate 预置字典（backend/src/main/resources/chat-dictionary/{版本}.txt）
+
+字典就是一段"常见内容"：压缩时可直接引用其中的片段。这里按行和句子切分样本，统计在多条消息中重复出现的片段，
+按 出现次数 × 字节数 打分取前若干个，总长不超过 deflate 窗口（32KB），得分越高越放在末尾（距离越近编码越短）。
+
+导出样本（每行一个 JSON 字符串）：
+    psql -At -c "\\copy (SELECT to_json(content) FROM chat_histories WHERE role = 'assistant' AND content IS NOT NULL
+                 ORDER BY random() LIMIT 5000) TO 'sample.jsonl'"
+生成字典：
+    python scripts/train_chat_dictionary.py sample.jsonl -o backend/src/main/resources/chat-dictionary/v2.txt
+然后把 chat.history.compression.dictionary 改为 v2；v1 文件需保留，用于解码已经用 v1 压缩的消息。
+"""
+import argparse
+import json
+import re
+from collections import Counter
+
+MAX_DICTIONARY_BYTES = 32 * 1024
+SEGMENT_SPLIT = re.compile(r"(?<=[。！？!?\n])")
+
+
+def load_messages(path):
+    with open(path, encoding="utf-8") as f:
+        for line in f:
+            line = line.strip()
+            if line:
+                yield json.loads(line)
+
+
+def segments(message):
+    for part in SEGMENT_SPLIT.split(message):
+        part = part.strip(" \t")
+        if 4 <= len(part) <= 200:
+            yield part
+
+
+def train(messages, size, min_count):
+    counts = Counter()
+    for message in messages:
+        # 每条消息内的片段只计一次，避免单条超长回复主导结果
+        counts.update(set(segments(message)))
+
+    scored = [(count * len(seg.encode("utf-8")), seg) for seg, count in counts.items() if count >= min_count]
+    scored.sort(reverse=True)
+
+    chosen, used = [], 0
+    for _, seg in scored:
+        length = len(seg.encode("utf-8")) + 1
+        if used + length > size:
+            continue
+        chosen.append(seg)
+        used += length
+
+    # 得分最高的放在最后
+    chosen.reverse()
+    return "\n".join(chosen) + "\n"
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser()
+    parser.add_argument("sample", help="每行一个 JSON 字符串的消息样本")
+    parser.add_argument("-o", "--output", required=True)
+    parser.add_argument("--size", type=int, default=16 * 1024, help=f"字典字节数上限（不超过 {MAX_DICTIONARY_BYTES}）")
+    parser.add_argument("--min-count", type=int, default=5, help="片段至少出现在多少条消息中")
+    args = parser.parse_args()
+
+    messages = list(load_messages(args.sample))
+    dictionary = train(messages, min(args.size, MAX_DICTIONARY_BYTES), args.min_count)
+    with open(args.output, "w", encoding="utf-8") as f:
+        f.write(dictionary)
+    print(f"样本 {len(messages)} 条，字典 {len(dictionary.encode('utf-8'))} 字节 -> {args.output}")